@@ -305,6 +305,9 @@ public class CCNHandle implements CCNBase {
 	/**
 	 * Get a single piece of content from CCN. This is a blocking get, it will return
 	 * when matching content is found or it times out, whichever comes first.
+	 * If SystemConfiguration.CONTENT_STORE_SIZE is set, content this handle received recently
+	 * may answer without going to ccnd; leave Interest.ANSWER_CONTENT_STORE out of the interest's
+	 * answerOriginKind to always ask the network.
 	 * @param interest
 	 * @param timeout
 	 * @return the content object
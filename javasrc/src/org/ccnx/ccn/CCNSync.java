@@ -6,7 +6,7 @@ import java.util.Collection;
 
 import org.ccnx.ccn.config.ConfigurationException;
 import org.ccnx.ccn.impl.support.Log;
-import org.ccnx.ccn.impl.sync.FileBasedSyncMonitor;
+import org.ccnx.ccn.impl.sync.RepoFileSyncMonitor;
 import org.ccnx.ccn.impl.sync.SyncMonitor;
 import org.ccnx.ccn.io.content.ConfigSlice;
 import org.ccnx.ccn.io.content.ConfigSlice.Filter;
@@ -20,7 +20,7 @@ public class CCNSync {
 		try {
 			syncSlice.checkAndCreate(handle);
 			if (syncMon == null)
-				syncMon = new FileBasedSyncMonitor();
+				syncMon = new RepoFileSyncMonitor();
 			syncMon.registerCallback(syncCallback, syncSlice);
 		} catch (ConfigurationException e){
 			throw e;
@@ -41,7 +41,7 @@ public class CCNSync {
 		try {
 			ConfigSlice slice = ConfigSlice.checkAndCreate(topo, prefix, f, handle);
 			if (syncMon == null)
-				syncMon = new FileBasedSyncMonitor();
+				syncMon = new RepoFileSyncMonitor();
 			syncMon.registerCallback(syncCallback, slice);
 			return slice;
 		} catch (ConfigurationException e) {
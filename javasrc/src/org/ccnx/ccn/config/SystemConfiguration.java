@@ -196,6 +196,24 @@ public class SystemConfiguration {
 	protected static final String PIPELINE_STATS_PROPERTY = "org.ccnx.PipelineStats";
 	protected static final String PIPELINE_STATS_ENV_VAR = "JAVA_PIPELINE_STATS";
 	public static boolean PIPELINE_STATS = false;
+
+	/**
+	 * How CCNAbstractInputStream sizes its pipeline. FIXED always keeps PIPELINE_SIZE segments
+	 * requested or buffered; AIMD starts there and adapts to losses and round trip times, see PipelineWindow.
+	 * Default is AIMD
+	 */
+	public enum PIPELINE_WINDOW_MODE {FIXED, AIMD};
+	protected static final String PIPELINE_MODE_PROPERTY = "org.ccnx.PipelineMode";
+	protected static final String PIPELINE_MODE_ENV_VAR = "JAVA_PIPELINE_MODE";
+	public static PIPELINE_WINDOW_MODE PIPELINE_MODE = PIPELINE_WINDOW_MODE.AIMD;
+
+	/**
+	 * Largest pipeline window in AIMD mode
+	 * Default is 64
+	 */
+	protected static final String PIPELINE_MAX_WINDOW_PROPERTY = "org.ccnx.PipelineMaxWindow";
+	protected static final String PIPELINE_MAX_WINDOW_ENV_VAR = "JAVA_PIPELINE_MAX_WINDOW";
+	public static int PIPELINE_MAX_WINDOW = 64;
 	
 	/**
 	 * Default block size for IO
@@ -258,6 +276,159 @@ public class SystemConfiguration {
 	protected final static String DUMP_NETMANAGER_STATS_ENV_VAR = "CCNX_DUMP_NETMANAGER_STATS";
 	public static boolean DUMP_NETMANAGER_STATS = false;
 
+	/**
+	 * Number of threads CCNNetworkManager uses to run content and interest handlers.
+	 * Default is 0, which runs handlers directly on the network manager's reader thread.
+	 */
+	protected static final String NETMANAGER_DISPATCH_THREADS_PROPERTY = "org.ccnx.netmanager.dispatch.threads";
+	protected final static String NETMANAGER_DISPATCH_THREADS_ENV_VAR = "CCNX_NETMANAGER_DISPATCH_THREADS";
+	public static int NETMANAGER_DISPATCH_THREADS = 0;
+
+	/**
+	 * Whether handler callbacks dispatched to threads are run one at a time in order
+	 * for each handler. Default is true.
+	 */
+	protected static final String NETMANAGER_DISPATCH_ORDERED_PROPERTY = "org.ccnx.netmanager.dispatch.ordered";
+	protected final static String NETMANAGER_DISPATCH_ORDERED_ENV_VAR = "CCNX_NETMANAGER_DISPATCH_ORDERED";
+	public static boolean NETMANAGER_DISPATCH_ORDERED = true;
+
+	/**
+	 * Number of ContentObjects each network manager keeps from the content it receives, to answer
+	 * gets for them again without going to ccnd. 0 turns the store off. Default is 0.
+	 */
+	protected static final String CONTENT_STORE_SIZE_PROPERTY = "org.ccnx.content.store.size";
+	protected final static String CONTENT_STORE_SIZE_ENV_VAR = "CCNX_CONTENT_STORE_SIZE";
+	public static int CONTENT_STORE_SIZE = 0;
+
+	/**
+	 * Maximum number of handler callbacks waiting or running before the reader thread
+	 * waits for the handlers to catch up. Default is 1000.
+	 */
+	protected static final String NETMANAGER_DISPATCH_QUEUE_PROPERTY = "org.ccnx.netmanager.dispatch.queue";
+	protected final static String NETMANAGER_DISPATCH_QUEUE_ENV_VAR = "CCNX_NETMANAGER_DISPATCH_QUEUE";
+	public static int NETMANAGER_DISPATCH_QUEUE = 1000;
+
+	/**
+	 * Should decoded ContentObjects keep the bytes they were decoded from, so that their digest,
+	 * signature verification and re-encoding use those bytes rather than encoding the object
+	 * again. Costs a copy of each object's encoding. Default is false.
+	 */
+	protected static final String RETAIN_WIRE_ENCODING_PROPERTY = "org.ccnx.retain.encoding";
+	protected final static String RETAIN_WIRE_ENCODING_ENV_VAR = "CCNX_RETAIN_ENCODING";
+	public static boolean RETAIN_WIRE_ENCODING = false;
+
+	/**
+	 * Number of threads hashing the leaves and levels of a Merkle tree when signing a batch of
+	 * segments. 1 hashes on the writer's thread. Default is the number of processors.
+	 */
+	protected static final String MERKLE_THREADS_PROPERTY = "org.ccnx.merkle.threads";
+	protected final static String MERKLE_THREADS_ENV_VAR = "CCNX_MERKLE_THREADS";
+	public static int MERKLE_THREADS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Should CCNSegmenter sign and output a full batch of segments in the background while
+	 * the writer fills the next one. Final and explicit flushes are always done before
+	 * returning. Default is true.
+	 */
+	protected static final String BACKGROUND_SIGNING_PROPERTY = "org.ccnx.background.signing";
+	protected final static String BACKGROUND_SIGNING_ENV_VAR = "CCNX_BACKGROUND_SIGNING";
+	public static boolean BACKGROUND_SIGNING = true;
+
+	/**
+	 * Number of Merkle tree root signatures remembered as verified, so that the other segments
+	 * signed under the same root only need their path checked. 0 turns this off. Default is 1024.
+	 */
+	protected static final String VERIFIED_SIGNATURE_CACHE_SIZE_PROPERTY = "org.ccnx.verify.cache.size";
+	protected final static String VERIFIED_SIGNATURE_CACHE_SIZE_ENV_VAR = "CCNX_VERIFY_CACHE_SIZE";
+	public static int VERIFIED_SIGNATURE_CACHE_SIZE = 1024;
+
+	/**
+	 * Size at which a LogStructRepoStore starts writing a new repository file, in bytes.
+	 * 0 means never. Default is 1GB.
+	 */
+	protected static final String REPO_FILE_SIZE_PROPERTY = "org.ccnx.repo.file.size";
+	protected final static String REPO_FILE_SIZE_ENV_VAR = "CCNX_REPO_FILE_SIZE";
+	public static long REPO_FILE_SIZE = 1024L * 1024L * 1024L;
+
+	/**
+	 * Seconds between passes of the LogStructRepoStore compactor, which rewrites repository
+	 * files that are no longer written to without their unused objects. 0 disables compaction.
+	 * Default is 3600.
+	 */
+	protected static final String REPO_COMPACT_INTERVAL_PROPERTY = "org.ccnx.repo.compact.interval";
+	protected final static String REPO_COMPACT_INTERVAL_ENV_VAR = "CCNX_REPO_COMPACT_INTERVAL";
+	public static int REPO_COMPACT_INTERVAL = 3600;
+
+	/**
+	 * Percentage of a repository file that must be unused before it is compacted. Default is 25.
+	 */
+	protected static final String REPO_COMPACT_THRESHOLD_PROPERTY = "org.ccnx.repo.compact.threshold";
+	protected final static String REPO_COMPACT_THRESHOLD_ENV_VAR = "CCNX_REPO_COMPACT_THRESHOLD";
+	public static int REPO_COMPACT_THRESHOLD = 25;
+
+	/**
+	 * Maximum rate at which the compactor reads repository files, in bytes per second, so that it
+	 * leaves disk bandwidth for writes. Default is 8MB.
+	 */
+	protected static final String REPO_COMPACT_RATE_PROPERTY = "org.ccnx.repo.compact.rate";
+	protected final static String REPO_COMPACT_RATE_ENV_VAR = "CCNX_REPO_COMPACT_RATE";
+	public static long REPO_COMPACT_RATE = 8L * 1024L * 1024L;
+
+	/**
+	 * Should a LogStructRepoStore read repository files that are no longer written to
+	 * through a memory mapping, so that reads of the same file can run in parallel.
+	 * Default is false.
+	 */
+	protected static final String REPO_MMAP_PROPERTY = "org.ccnx.repo.mmap";
+	protected final static String REPO_MMAP_ENV_VAR = "CCNX_REPO_MMAP";
+	public static boolean REPO_MMAP = false;
+
+	/**
+	 * When a LogStructRepoStore forces the data it writes to disk. NONE leaves it to the
+	 * operating system, BATCH syncs after each batch of saves and INTERVAL syncs every
+	 * REPO_SYNC_INTERVAL milliseconds if anything has been written. Default is NONE.
+	 */
+	public enum REPO_SYNC_POLICY {NONE, BATCH, INTERVAL};
+	protected static final String REPO_SYNC_PROPERTY = "org.ccnx.repo.sync";
+	protected final static String REPO_SYNC_ENV_VAR = "CCNX_REPO_SYNC";
+	public static REPO_SYNC_POLICY REPO_SYNC = REPO_SYNC_POLICY.NONE;
+
+	/**
+	 * Milliseconds between syncs of repository data for the INTERVAL sync policy. Default is 1000.
+	 */
+	protected static final String REPO_SYNC_INTERVAL_PROPERTY = "org.ccnx.repo.sync.interval";
+	protected final static String REPO_SYNC_INTERVAL_ENV_VAR = "CCNX_REPO_SYNC_INTERVAL";
+	public static int REPO_SYNC_INTERVAL = 1000;
+
+	/**
+	 * Maximum number of objects the repository saves with a single write. Default is 100.
+	 */
+	protected static final String REPO_WRITE_BATCH_PROPERTY = "org.ccnx.repo.write.batch";
+	protected final static String REPO_WRITE_BATCH_ENV_VAR = "CCNX_REPO_WRITE_BATCH";
+	public static int REPO_WRITE_BATCH = 100;
+
+	/**
+	 * Size in bytes of the cache of recently read content kept by a LogStructRepoStore.
+	 * 0 disables the cache. Default is 16MB.
+	 */
+	protected static final String REPO_CACHE_SIZE_PROPERTY = "org.ccnx.repo.cache.size";
+	protected final static String REPO_CACHE_SIZE_ENV_VAR = "CCNX_REPO_CACHE_SIZE";
+	public static long REPO_CACHE_SIZE = 16L * 1024L * 1024L;
+
+	/**
+	 * Number of threads the repository uses to answer interests for content in parallel.
+	 * 0 means answer them one at a time along with command interests. Default is 4.
+	 */
+	protected static final String REPO_READ_THREADS_PROPERTY = "org.ccnx.repo.read.threads";
+	protected final static String REPO_READ_THREADS_ENV_VAR = "CCNX_REPO_READ_THREADS";
+	public static int REPO_READ_THREADS = 4;
+
+	/**
+	 * Maximum number of interests for content waiting for a repository read thread. Default is 1000.
+	 */
+	protected static final String REPO_READ_QUEUE_PROPERTY = "org.ccnx.repo.read.queue";
+	protected final static String REPO_READ_QUEUE_ENV_VAR = "CCNX_REPO_READ_QUEUE";
+	public static int REPO_READ_QUEUE = 1000;
 
 	/**
 	 * Settable system default timeout.
@@ -418,6 +589,20 @@ public class SystemConfiguration {
 		// Allow printing of pipeline stats in CCNAbstractInputStream
 		PIPELINE_STATS = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(PIPELINE_STATS_PROPERTY, PIPELINE_STATS_ENV_VAR, STRING_FALSE));
 
+		// Allow override of pipeline window mode and size for CCNAbstractInputStream
+		try {
+			PIPELINE_MODE = PIPELINE_WINDOW_MODE.valueOf(retrievePropertyOrEnvironmentVariable(PIPELINE_MODE_PROPERTY, PIPELINE_MODE_ENV_VAR, PIPELINE_MODE.toString()).toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.err.println("The PipelineMode must be one of fixed or aimd.");
+			throw e;
+		}
+		try {
+			PIPELINE_MAX_WINDOW = Integer.parseInt(retrievePropertyOrEnvironmentVariable(PIPELINE_MAX_WINDOW_PROPERTY, PIPELINE_MAX_WINDOW_ENV_VAR, Integer.toString(PIPELINE_MAX_WINDOW)));
+		} catch (NumberFormatException e) {
+			System.err.println("The PipelineMaxWindow must be an integer.");
+			throw e;
+		}
+
 		// Allow override of default ccndID discovery timeout.
 		try {
 			CCNDID_DISCOVERY_TIMEOUT = Integer.parseInt(System.getProperty(CCNDID_DISCOVERY_TIMEOUT_PROPERTY, Integer.toString(CCNDID_DISCOVERY_TIMEOUT_DEFAULT)));
@@ -484,6 +669,83 @@ public class SystemConfiguration {
 		
 		// Dump netmanager statistics if requested
 		DUMP_NETMANAGER_STATS = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(DUMP_NETMANAGER_STATS_PROPERTY, DUMP_NETMANAGER_STATS_ENV_VAR, Boolean.toString(DUMP_NETMANAGER_STATS)));
+
+		// Allow handlers to be run on a dispatch pool rather than the netmanager reader thread
+		try {
+			NETMANAGER_DISPATCH_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(NETMANAGER_DISPATCH_THREADS_PROPERTY, NETMANAGER_DISPATCH_THREADS_ENV_VAR, Integer.toString(NETMANAGER_DISPATCH_THREADS)));
+			NETMANAGER_DISPATCH_QUEUE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(NETMANAGER_DISPATCH_QUEUE_PROPERTY, NETMANAGER_DISPATCH_QUEUE_ENV_VAR, Integer.toString(NETMANAGER_DISPATCH_QUEUE)));
+		} catch (NumberFormatException e) {
+			System.err.println("The netmanager dispatch threads and queue size must be integers.");
+			throw e;
+		}
+		NETMANAGER_DISPATCH_ORDERED = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(NETMANAGER_DISPATCH_ORDERED_PROPERTY, NETMANAGER_DISPATCH_ORDERED_ENV_VAR, Boolean.toString(NETMANAGER_DISPATCH_ORDERED)));
+
+		// Allow override of the in-process content store size
+		try {
+			CONTENT_STORE_SIZE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(CONTENT_STORE_SIZE_PROPERTY, CONTENT_STORE_SIZE_ENV_VAR, Integer.toString(CONTENT_STORE_SIZE)));
+		} catch (NumberFormatException e) {
+			System.err.println("The content store size must be an integer.");
+			throw e;
+		}
+
+		RETAIN_WIRE_ENCODING = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(RETAIN_WIRE_ENCODING_PROPERTY, RETAIN_WIRE_ENCODING_ENV_VAR, Boolean.toString(RETAIN_WIRE_ENCODING)));
+
+		// Allow override of Merkle tree hashing threads and background signing
+		try {
+			MERKLE_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(MERKLE_THREADS_PROPERTY, MERKLE_THREADS_ENV_VAR, Integer.toString(MERKLE_THREADS)));
+		} catch (NumberFormatException e) {
+			System.err.println("The number of Merkle tree hashing threads must be an integer.");
+			throw e;
+		}
+		BACKGROUND_SIGNING = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(BACKGROUND_SIGNING_PROPERTY, BACKGROUND_SIGNING_ENV_VAR, Boolean.toString(BACKGROUND_SIGNING)));
+
+		// Allow override of verified signature cache size
+		try {
+			VERIFIED_SIGNATURE_CACHE_SIZE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(VERIFIED_SIGNATURE_CACHE_SIZE_PROPERTY, VERIFIED_SIGNATURE_CACHE_SIZE_ENV_VAR, Integer.toString(VERIFIED_SIGNATURE_CACHE_SIZE)));
+		} catch (NumberFormatException e) {
+			System.err.println("The verified signature cache size must be an integer.");
+			throw e;
+		}
+
+		// Allow override of repository file size and compaction
+		try {
+			REPO_FILE_SIZE = Long.parseLong(retrievePropertyOrEnvironmentVariable(REPO_FILE_SIZE_PROPERTY, REPO_FILE_SIZE_ENV_VAR, Long.toString(REPO_FILE_SIZE)));
+			REPO_COMPACT_INTERVAL = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_COMPACT_INTERVAL_PROPERTY, REPO_COMPACT_INTERVAL_ENV_VAR, Integer.toString(REPO_COMPACT_INTERVAL)));
+			REPO_COMPACT_THRESHOLD = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_COMPACT_THRESHOLD_PROPERTY, REPO_COMPACT_THRESHOLD_ENV_VAR, Integer.toString(REPO_COMPACT_THRESHOLD)));
+			REPO_COMPACT_RATE = Long.parseLong(retrievePropertyOrEnvironmentVariable(REPO_COMPACT_RATE_PROPERTY, REPO_COMPACT_RATE_ENV_VAR, Long.toString(REPO_COMPACT_RATE)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository file size and compaction settings must be integers.");
+			throw e;
+		}
+		REPO_MMAP = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(REPO_MMAP_PROPERTY, REPO_MMAP_ENV_VAR, Boolean.toString(REPO_MMAP)));
+
+		// Allow override of repository write batching and sync policy
+		try {
+			REPO_SYNC = REPO_SYNC_POLICY.valueOf(retrievePropertyOrEnvironmentVariable(REPO_SYNC_PROPERTY, REPO_SYNC_ENV_VAR, REPO_SYNC.toString()).toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.err.println("The repository sync policy must be one of none, batch or interval.");
+			throw e;
+		}
+		try {
+			REPO_SYNC_INTERVAL = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_SYNC_INTERVAL_PROPERTY, REPO_SYNC_INTERVAL_ENV_VAR, Integer.toString(REPO_SYNC_INTERVAL)));
+			REPO_WRITE_BATCH = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_WRITE_BATCH_PROPERTY, REPO_WRITE_BATCH_ENV_VAR, Integer.toString(REPO_WRITE_BATCH)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository sync interval and write batch size must be integers.");
+			throw e;
+		}
+		try {
+			REPO_CACHE_SIZE = Long.parseLong(retrievePropertyOrEnvironmentVariable(REPO_CACHE_SIZE_PROPERTY, REPO_CACHE_SIZE_ENV_VAR, Long.toString(REPO_CACHE_SIZE)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository cache size must be an integer.");
+			throw e;
+		}
+		try {
+			REPO_READ_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_READ_THREADS_PROPERTY, REPO_READ_THREADS_ENV_VAR, Integer.toString(REPO_READ_THREADS)));
+			REPO_READ_QUEUE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_READ_QUEUE_PROPERTY, REPO_READ_QUEUE_ENV_VAR, Integer.toString(REPO_READ_QUEUE)));
+		} catch (NumberFormatException e) {
+			System.err.println("The repository read threads and queue size must be integers.");
+			throw e;
+		}
 	
 		// Allow override of block size
 		// TODO should we make sure its a reasonable number?
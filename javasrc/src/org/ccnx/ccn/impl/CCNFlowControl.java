@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.logging.Level;
 
@@ -58,6 +60,10 @@ import org.ccnx.ccn.protocol.MalformedContentNameStringException;
  *
  * Also implements a limited capacity for held interests.
  *
+ * An interest is matched against only the held content under its name, found as a range of the
+ * sorted holding area. Unmatched interests expire from a queue kept in order of arrival, so
+ * neither an interest nor a put costs time in proportion to what is held.
+ *
  * The buffer emptying policy in "afterPutAction" can be overridden by
  * subclasses to implement a different way of draining the buffer.
  */
@@ -102,16 +108,25 @@ public class CCNFlowControl implements CCNInterestHandler {
 	// Unmatched interests are purged from our table if they have remained there longer than this
 	//TODO need to normalize this with refresh time in CCNNetworkManager and put in SystemConfiguration
 	protected static final int PURGE = 4000;
-	protected static long _lastPurgeTime = 0;
 
 	protected TreeMap<ContentName, ContentObject> _holdingArea = new TreeMap<ContentName, ContentObject>();
 	protected InterestTable<UnmatchedInterest> _unmatchedInterests = new InterestTable<UnmatchedInterest>();
 
+	// Unmatched interests in order of arrival, which is the order they expire in.
+	// Guarded by _unmatchedInterests. Holds interests already matched or dropped from the table
+	// until they would have expired.
+	protected LinkedList<UnmatchedInterest> _unmatchedQueue = new LinkedList<UnmatchedInterest>();
+
 	// The namespaces served by this flow controller
 	protected HashSet<ContentName> _filteredNames = new HashSet<ContentName>();
 
 	private static class UnmatchedInterest {
+		final Interest interest;
 		long timestamp = System.currentTimeMillis();
+
+		UnmatchedInterest(Interest interest) {
+			this.interest = interest;
+		}
 	}
 
 	private boolean _flowControlEnabled = true;
@@ -424,12 +439,8 @@ public class CCNFlowControl implements CCNInterestHandler {
 				long ourTime = System.currentTimeMillis();
 
 				// purge old unmatched interests
-				// Don't do it too often as this is time consuming
-				if ((ourTime - _lastPurgeTime) > PURGE) {
-					synchronized (_unmatchedInterests) {
-						removeUnmatchedInterests(ourTime);
-						_lastPurgeTime = ourTime;
-					}
+				synchronized (_unmatchedInterests) {
+					removeUnmatchedInterests(ourTime);
 				}
 
 				// Now wait for space to be cleared or timeout
@@ -494,24 +505,28 @@ public class CCNFlowControl implements CCNInterestHandler {
 	 * @param ourTime current time for checking if interests are expired
 	 */
 	private void removeUnmatchedInterests(long ourTime) {
-		Entry<UnmatchedInterest> removeIt;
-		do {
-			removeIt = null;
-			for (Entry<UnmatchedInterest> uie : _unmatchedInterests.values()) {
-				if ((ourTime - uie.value().timestamp) > PURGE) {
-					removeIt = uie;
-					break;
-				} else {
-					//we add interests at the end...  so older interests are at the top
-					break;
-				}
-			}
-			if (removeIt != null) {
+		UnmatchedInterest oldest;
+		while (null != (oldest = _unmatchedQueue.peek()) && (ourTime - oldest.timestamp) > PURGE) {
+			_unmatchedQueue.remove();
+			if (null != _unmatchedInterests.remove(oldest.interest, oldest)) {
 				if (Log.isLoggable(Log.FAC_IO, Level.INFO))
-					Log.info(Log.FAC_IO, "Removing unmatched interest {0}", removeIt.interest().name());
-				_unmatchedInterests.remove(removeIt.interest(), removeIt.value());
+					Log.info(Log.FAC_IO, "Removing unmatched interest {0}", oldest.interest.name());
 			}
-		} while (removeIt != null);
+		}
+	}
+
+	/**
+	 * Hold an interest until content matching it is put or it expires
+	 * @param interest
+	 */
+	private void addUnmatchedInterest(Interest interest) {
+		synchronized (_unmatchedInterests) {
+			//check before we add so we don't check the new interest
+			removeUnmatchedInterests(System.currentTimeMillis());
+			UnmatchedInterest ui = new UnmatchedInterest(interest);
+			_unmatchedQueue.add(ui);
+			_unmatchedInterests.add(interest, ui);
+		}
 	}
 
 
@@ -544,12 +559,8 @@ public class CCNFlowControl implements CCNInterestHandler {
 
 			co = getBestMatch(i);
 			if (co == null) {
-				//only check if we are adding the interest, and check before we add so we don't check the new interest
-				if (_unmatchedInterests.size() > 0)
-					removeUnmatchedInterests(System.currentTimeMillis());
-
 				Log.finest(Log.FAC_IO, "No content matching pending interest: {0}, holding.", i);
-				_unmatchedInterests.add(i, new UnmatchedInterest());
+				addUnmatchedInterest(i);
 				return false;		// XXX is this the right thing to do?
 			}
 		}
@@ -586,31 +597,43 @@ public class CCNFlowControl implements CCNInterestHandler {
 	}
 
 	/**
+	 * Content matching an interest is either under the interest's name, or - if the last
+	 * component of the interest's name is a digest - named by the rest of it. The first is
+	 * a range of the holding area as names under a prefix sort together after it, and the
+	 * second is a single lookup, so only candidates are tested against the interest.
+	 *
 	 * Must be called with _holdingArea locked
 	 * @param interest
-	 * @param set
-	 * @return
+	 * @return the first matching content in name order, or the last if the interest asks
+	 * 	for the rightmost child. null if none matches.
 	 */
 	private ContentObject getBestMatch(Interest interest) {
 		ContentObject bestMatch = null;
 		if( Log.isLoggable(Log.FAC_IO, Level.FINEST))
 			Log.finest(Log.FAC_IO, "Looking for best match to {0} among {1} options.", interest, _holdingArea.size());
-		for ( java.util.Map.Entry<ContentName, ContentObject> entry :  _holdingArea.entrySet() ) {
-			ContentName name = entry.getKey();
-			ContentObject result = entry.getValue();
+		boolean rightmost = (null != interest.childSelector() && interest.childSelector() == Interest.CHILD_SELECTOR_RIGHT);
+		ContentName prefix = interest.name();
+
+		// The digest case sorts before everything under the interest's name
+		if (prefix.count() > 0) {
+			ContentObject result = _holdingArea.get(prefix.parent());
+			if (null != result && interest.matches(result)) {
+				if (!rightmost)
+					return result;
+				bestMatch = result;
+			}
+		}
 
-			// We only have to do something unusual here if the caller is looking for CHILD_SELECTOR_RIGHT
-			if (null != interest.childSelector() && interest.childSelector() == Interest.CHILD_SELECTOR_RIGHT) {
-				if (interest.matches(result)) {
-					if (bestMatch == null)
-						bestMatch = result;
-					if (name.compareTo(bestMatch.name()) > 0) {
-						bestMatch = result;
-					}
-				}
-			} else
-				if (interest.matches(result))
+		for (Map.Entry<ContentName, ContentObject> entry : _holdingArea.tailMap(prefix).entrySet()) {
+			if (!prefix.isPrefixOf(entry.getKey()))
+				break;
+			ContentObject result = entry.getValue();
+			if (interest.matches(result)) {
+				// Later matches sort after earlier ones, so the last one is the rightmost
+				if (!rightmost)
 					return result;
+				bestMatch = result;
+			}
 		}
 		return bestMatch;
 	}
@@ -713,7 +736,10 @@ public class CCNFlowControl implements CCNInterestHandler {
 	public void clearUnmatchedInterests() {
 		if( Log.isLoggable(Log.FAC_IO, Level.INFO))
 			Log.info(Log.FAC_IO, "Clearing {0} unmatched interests.", _unmatchedInterests.size());
-		_unmatchedInterests.clear();
+		synchronized (_unmatchedInterests) {
+			_unmatchedInterests.clear();
+			_unmatchedQueue.clear();
+		}
 	}
 
 	/**
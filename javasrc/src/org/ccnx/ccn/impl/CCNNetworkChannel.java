@@ -37,6 +37,7 @@ import org.ccnx.ccn.impl.CCNNetworkManager.NetworkProtocol;
 import org.ccnx.ccn.impl.encoding.BinaryXMLDecoder;
 import org.ccnx.ccn.impl.encoding.XMLEncodable;
 import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.content.ContentDecodingException;
 
 /**
  *  This guy manages all of the access to the network connection.
@@ -209,6 +210,10 @@ public class CCNNetworkChannel extends InputStream {
 	 * to us are complete ccn packets. This code does not have the ability to recover from
 	 * receiving a partial ccn packet followed by correctly formed ones.
 	 *
+	 * A packet that is already all in the buffer is parsed straight from it. Otherwise, or if
+	 * the data doesn't parse, we decode through the stream interface, which reads in more data
+	 * as needed and can resync.
+	 *
 	 * @return a ContentObject, an Interest, or null if there's no data waiting
 	 * @throws IOException
 	 */
@@ -221,7 +226,15 @@ public class CCNNetworkChannel extends InputStream {
 				if (ret <= 0 || !isConnected())
 					return null;
 			}
-			_decoder.beginDecoding(this);
+			boolean parsed = false;
+			try {
+				parsed = _decoder.beginDecoding(_datagram);
+			} catch (ContentDecodingException cde) {
+				if (Log.isLoggable(Log.FAC_NETMANAGER, Level.FINE))
+					Log.fine(Log.FAC_NETMANAGER, "NetworkChannel {0}: decoding from the buffer failed: {1}", _channelId, cde.getMessage());
+			}
+			if (! parsed)
+				_decoder.beginDecoding(this);
 			return _decoder.getPacket();
 		}
 		try {
@@ -327,6 +340,56 @@ public class CCNNetworkChannel extends InputStream {
 		return -1;
 	}
 
+	/**
+	 * Write several packets to ccnd. Over TCP they go in as few gathering writes as the socket
+	 * will take; over UDP each is still sent as its own datagram.
+	 * @param srcs - ByteBuffers to write, one per packet
+	 * @param offset - index of the first buffer to write
+	 * @param length - number of buffers to write
+	 * @return - number of bytes written, or -1 if the channel was closed
+	 * @throws IOException
+	 */
+	public long write(ByteBuffer [] srcs, int offset, int length) throws IOException {
+		if (! isConnected())
+			return -1;
+		if (Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST))
+			Log.finest(Log.FAC_NETMANAGER,
+					"NetworkChannel {0}: write() of {1} packets on port {2}", _channelId, length, _ncLocalPort);
+
+		if (_ncDGrmChannel != null) {
+			long written = 0;
+			for (int i = offset; i < offset + length; i++) {
+				int b = write(srcs[i]);
+				if (b < 0)
+					return -1;
+				written += b;
+			}
+			return written;
+		}
+		try {
+			// XXX -this depends on synchronization in caller, as for write(ByteBuffer)
+			long written = 0;
+			int last = offset + length - 1;
+			while (srcs[last].hasRemaining()) {
+				if (! isConnected())
+					return -1;
+				while (!srcs[offset].hasRemaining())
+					offset++;
+				long b = _ncSockChannel.write(srcs, offset, last - offset + 1);
+				if (b > 0) {
+					written += b;
+				} else {
+					_ncWriteSelector.selectedKeys().clear();
+					_ncWriteSelector.select();
+				}
+			}
+			return written;
+		} catch (ClosedChannelException cce) {}
+		Log.info(Log.FAC_NETMANAGER, "NetworkChannel {0}: closing due to error on write", _channelId);
+		close(true);
+		return -1;
+	}
+
 	/**
 	 * Force wakeup from a select
 	 * @return the selector
@@ -27,6 +27,9 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.NotYetConnectedException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeMap;
@@ -40,6 +43,7 @@ import org.ccnx.ccn.CCNInterestHandler;
 import org.ccnx.ccn.ContentVerifier;
 import org.ccnx.ccn.KeyManager;
 import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.CCNStats.CCNCategorizedStatistics;
 import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
 import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
 import org.ccnx.ccn.impl.InterestTable.Entry;
@@ -65,9 +69,11 @@ import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
  * CCNHandle API rather than directly.
  *
  * The read API is implemented in a thread that continuously reads from ccnd. Whenever the thread reads
- * a complete packet, it calls back a handler or handlers that have been previously setup by users. Since
- * there is only one callback thread, users must take care to avoid slow or blocking processing directly
- * within the callback. This is similar to the restrictions on the event dispatching thread in Swing. The
+ * a complete packet, it calls back a handler or handlers that have been previously setup by users. By
+ * default there is only one callback thread, so users must take care to avoid slow or blocking processing
+ * directly within the callback. This is similar to the restrictions on the event dispatching thread in Swing.
+ * Alternatively SystemConfiguration.NETMANAGER_DISPATCH_THREADS can be set to have a HandlerDispatcher run
+ * the callbacks on a pool of threads, either in order for each handler or unordered. The
  * setup of callback handlers should also normally be done via the CCNHandle API.
  *
  * The class also has a separate timer process which is used to refresh unsatisfied interests and to
@@ -139,6 +145,19 @@ public class CCNNetworkManager implements Runnable {
 	protected InterestTable<InterestRegistration> _myInterests = new InterestTable<InterestRegistration>();
 	protected InterestTable<Filter> _myFilters = new InterestTable<Filter>();
 
+	// Registered interests ordered by when they next need re-expressing, so the periodic writer
+	// only looks at the ones that are due rather than scanning all of _myInterests. Unregistered
+	// interests are left in the queue and dropped when they come to the top, or all at once by
+	// purgeRefreshQueue if they come to outnumber the live ones. Locks itself and the
+	// registered/queued fields of InterestRegistration.
+	protected PriorityQueue<InterestRegistration> _refreshQueue =
+		new PriorityQueue<InterestRegistration>(64, new Comparator<InterestRegistration>() {
+			public int compare(InterestRegistration r1, InterestRegistration r2) {
+				return (r1.nextRefresh < r2.nextRefresh) ? -1 : ((r1.nextRefresh == r2.nextRefresh) ? 0 : 1);
+			}
+		});
+	protected int _refreshQueueUnregistered = 0;
+
 	// Prefix registration handling. Only one registration change (add or remove a registration) with ccnd is
 	// allowed at once. To enforce this, before attempting a registration change, users must acquire
 	// _registrationChangeInProgress which locks access to ccnd registration across the entire face.
@@ -173,10 +192,16 @@ public class CCNNetworkManager implements Runnable {
 	protected long _currentHandler = 0;
 	protected long _lastHandler = -1;
 
-	// Atomic cancel
-	protected InterestRegistration _beingDelivered = null;
+	// Atomic cancel. With a dispatcher there may be several deliveries in progress at once.
+	protected ArrayList<InterestRegistration> _beingDelivered = new ArrayList<InterestRegistration>();
 	protected Object _beingDeliveredLock = new Object();
 
+	// Runs handler callbacks off the reader thread if configured, otherwise null
+	protected HandlerDispatcher _dispatcher = null;
+
+	// Content received for our interests, to answer later gets without going to ccnd
+	protected ContentStore _contentStore = new ContentStore(SystemConfiguration.CONTENT_STORE_SIZE);
+
 	/**
 	 * Keep track of prefixes that are actually registered with ccnd (as opposed to Filters used
 	 * to dispatch interests). There may be several filters for each registered prefix.
@@ -250,26 +275,35 @@ public class CCNNetworkManager implements Runnable {
             long minInterestRefreshTime = PERIOD + ourTime;
 
 			// Re-express interests that need to be re-expressed
+			ArrayList<InterestRegistration> due = new ArrayList<InterestRegistration>();
+			synchronized (_refreshQueue) {
+				InterestRegistration reg;
+				// allow some slop for scheduling
+				while (null != (reg = _refreshQueue.peek()) && ourTime + 20 > reg.nextRefresh) {
+					_refreshQueue.poll();
+					if (!reg.registered) {
+						reg.queued = false;
+						_refreshQueueUnregistered--;
+						continue;
+					}
+					reg.nextRefresh = ourTime + SystemConfiguration.INTEREST_REEXPRESSION_DEFAULT;
+					_refreshQueue.add(reg);
+					due.add(reg);
+				}
+				if (null != reg && minInterestRefreshTime > reg.nextRefresh)
+					minInterestRefreshTime = reg.nextRefresh;
+			}
 			try {
-				for (Entry<InterestRegistration> entry : _myInterests.values()) {
-					InterestRegistration reg = entry.value();
-					 // allow some slop for scheduling
-                    if (ourTime + 20 > reg.nextRefresh) {
-                            if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
-                                    Log.finer(Log.FAC_NETMANAGER, "Refresh interest: {0}", reg.interest);
-                            _lastHeartbeat = ourTime;
-                            reg.nextRefresh = ourTime + SystemConfiguration.INTEREST_REEXPRESSION_DEFAULT;
-;
-                            try {
-                                write(reg.interest);
-                        } catch (NotYetConnectedException nyce) {
-                                refreshError = true;
-                        }
-                    }
-					if (minInterestRefreshTime > reg.nextRefresh)
-						minInterestRefreshTime = reg.nextRefresh;
+				for (InterestRegistration reg : due) {
+					if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
+						Log.finer(Log.FAC_NETMANAGER, "Refresh interest: {0}", reg.interest);
+					_lastHeartbeat = ourTime;
+					try {
+						write(reg.interest);
+					} catch (NotYetConnectedException nyce) {
+						refreshError = true;
+					}
 				}
-
 			} catch (ContentEncodingException xmlex) {
                 Log.severe(Log.FAC_NETMANAGER, "PeriodicWriter interest refresh thread failure (Malformed datagram): {0}", xmlex.getMessage());
                 Log.warningStackTrace(xmlex);
@@ -471,6 +505,8 @@ public class CCNNetworkManager implements Runnable {
 	protected class InterestRegistration extends CallbackHandlerRegistration {
 		public final Interest interest;
 		protected long nextRefresh;		// next time to refresh the interest
+		protected boolean registered = false;	// in _myInterests
+		protected boolean queued = false;		// in _refreshQueue
 		protected ContentObject content;
 
 		// All internal client interests must have an owner
@@ -485,61 +521,99 @@ public class CCNNetworkManager implements Runnable {
 		}
 
 		/**
-		 * Deliver content to a registered handler
+		 * Deliver content to a registered handler. The registration is removed here
+		 * so it can't match more content while a dispatched callback is waiting to run,
+		 * and is tracked as being delivered from now so cancelInterest can still reach it.
 		 */
-		public void deliver(ContentObject co) {
-			synchronized (_beingDeliveredLock) {
-				_beingDelivered = this;
-			}
-			try {
-				if (null != this.handler) {
+		public void deliver(final ContentObject co) {
+			if (null != this.handler) {
+				unregisterInterest(this);
+				synchronized (_beingDeliveredLock) {
+					_beingDelivered.add(this);
+				}
+				if (null != _dispatcher) {
+					_dispatcher.dispatch(handler, new Runnable() {
+						public void run() {
+							callHandler(co);
+						}
+					});
+				} else {
+					callHandler(co);
+				}
+			} else {
+				// This is the "get" case
+				content = co;
+				synchronized (this) {
+					if (null != this.sema) {
+						if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
+							Log.finer(Log.FAC_NETMANAGER, "Data consumes pending get: {0}", this.interest.name());
+						// Waiting thread will pickup data -- wake it up
+						// If this interest came from net or waiting thread timed out,
+						// then no thread will be waiting but no harm is done
+						if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
+							Log.finest(Log.FAC_NETMANAGER, "releasing {0}", this.sema);
+						this.sema.release();
+					}
+				}
+				if (null == this.sema) {
+					// this is no longer valid registration
 					if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
-						Log.finer(Log.FAC_NETMANAGER, "Content callback (" + co + " data) for: {0}", this.interest.name());
+						Log.finer(Log.FAC_NETMANAGER, "Interest callback skipped (not valid) for: {0}", this.interest.name());
+				}
+			}
+		}
 
-					unregisterInterest(this);
+		/**
+		 * Call the user's content handler and express any interest it returns, unless
+		 * the interest was cancelled while the callback was waiting to run
+		 */
+		protected void callHandler(ContentObject co) {
+			if (isCancelled()) {
+				if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
+					Log.finer(Log.FAC_NETMANAGER, "Content callback skipped (cancelled) for: {0}", this.interest.name());
+				doneDelivering();
+				return;
+			}
+			long startTime = System.nanoTime();
+			try {
+				if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
+					Log.finer(Log.FAC_NETMANAGER, "Content callback (" + co + " data) for: {0}", this.interest.name());
 
-					// Callback the client - we can't hold any locks here!
-					Interest updatedInterest = ((CCNContentHandler)handler).handleContent(co, interest);
+				// Callback the client - we can't hold any locks here!
+				Interest updatedInterest = ((CCNContentHandler)handler).handleContent(co, interest);
 
-					// Possibly we should optimize here for the case where the same interest is returned back
-					// (now we would unregister it, then reregister it) but need to be careful that the timing
-					// behavior is right if we do that
-					if (null != updatedInterest && !cancelled) {
-						if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
-							Log.finer(Log.FAC_NETMANAGER, "Interest callback: updated interest to express: {0}", updatedInterest.name());
-						// if we want to cancel this one before we get any data, we need to remember the
-						// updated interest in the handler
-						expressInterest(this.owner, updatedInterest, handler);
-					}
-				} else {
-					// This is the "get" case
-					content = co;
-					synchronized (this) {
-						if (null != this.sema) {
-							if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
-								Log.finer(Log.FAC_NETMANAGER, "Data consumes pending get: {0}", this.interest.name());
-							// Waiting thread will pickup data -- wake it up
-							// If this interest came from net or waiting thread timed out,
-							// then no thread will be waiting but no harm is done
-							if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
-								Log.finest(Log.FAC_NETMANAGER, "releasing {0}", this.sema);
-							this.sema.release();
-						}
-					}
-					if (null == this.sema) {
-						// this is no longer valid registration
-						if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
-							Log.finer(Log.FAC_NETMANAGER, "Interest callback skipped (not valid) for: {0}", this.interest.name());
-					}
+				// Possibly we should optimize here for the case where the same interest is returned back
+				// (now we would unregister it, then reregister it) but need to be careful that the timing
+				// behavior is right if we do that
+				if (null != updatedInterest && !isCancelled()) {
+					if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
+						Log.finer(Log.FAC_NETMANAGER, "Interest callback: updated interest to express: {0}", updatedInterest.name());
+					// if we want to cancel this one before we get any data, we need to remember the
+					// updated interest in the handler
+					expressInterest(this.owner, updatedInterest, handler);
 				}
 			} catch (Exception ex) {
 				_stats.increment(StatsEnum.DeliverContentFailed);
 				Log.warning(Log.FAC_NETMANAGER, "failed to deliver data: {0}", ex);
 				Log.warningStackTrace(ex);
 			}
+			_stats.addSample(StatsEnum.ContentHandlerTime, System.nanoTime() - startTime);
+			doneDelivering();
+		}
+
+		/**
+		 * cancelled is set by cancelInterest under _beingDeliveredLock, possibly from
+		 * another thread than the one delivering
+		 */
+		protected boolean isCancelled() {
+			synchronized (_beingDeliveredLock) {
+				return cancelled;
+			}
+		}
 
+		protected void doneDelivering() {
 			synchronized (_beingDeliveredLock) {
-				_beingDelivered = null;
+				_beingDelivered.remove(this);
 			}
 		}
 
@@ -673,6 +747,23 @@ public class CCNNetworkManager implements Runnable {
 		_channel = new CCNNetworkChannel(_host, _port, _protocol, _tapStreamIn);
 		_ccndId = null;
 		_channel.open();
+
+		if (SystemConfiguration.NETMANAGER_DISPATCH_THREADS > 0) {
+			if( Log.isLoggable(Log.FAC_NETMANAGER, Level.INFO) )
+				Log.info(Log.FAC_NETMANAGER, formatMessage("Dispatching handlers on " + SystemConfiguration.NETMANAGER_DISPATCH_THREADS
+						+ (SystemConfiguration.NETMANAGER_DISPATCH_ORDERED ? " ordered" : " unordered") + " threads"));
+			_dispatcher = new HandlerDispatcher("CCNNetworkManager " + _managerId, SystemConfiguration.NETMANAGER_DISPATCH_THREADS,
+					SystemConfiguration.NETMANAGER_DISPATCH_QUEUE, SystemConfiguration.NETMANAGER_DISPATCH_ORDERED, _stats);
+		}
+		_contentStore.setStats(_stats);
+	}
+
+	/**
+	 * @return the store of content received by this network manager, used to answer gets
+	 * 	without going to ccnd. It is empty unless SystemConfiguration.CONTENT_STORE_SIZE is set.
+	 */
+	public ContentStore getContentStore() {
+		return _contentStore;
 	}
 
 	/**
@@ -686,6 +777,8 @@ public class CCNNetworkManager implements Runnable {
 			_periodicTimer.cancel();
 		if (_thread != null)
 			_thread.interrupt();
+		if (null != _dispatcher)
+			_dispatcher.shutdown();
 		if (null != _channel) {
 			try {
 				setTap(null);
@@ -840,6 +933,12 @@ public class CCNNetworkManager implements Runnable {
 
 		if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINE) )
 			Log.fine(Log.FAC_NETMANAGER, formatMessage("get: {0} with timeout: {1}"), interest, timeout);
+		ContentObject stored = _contentStore.get(interest);
+		if (null != stored) {
+			if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINE) )
+				Log.fine(Log.FAC_NETMANAGER, formatMessage("get: {0} answered from content store: {1}"), interest, stored.name());
+			return stored;
+		}
 		InterestRegistration reg = new InterestRegistration(interest, null, null);
 		expressInterest(reg);
 		if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
@@ -923,8 +1022,10 @@ public class CCNNetworkManager implements Runnable {
 
 		// Make sure potential remnants of cancelled interest are also cancelled
 		synchronized (_beingDeliveredLock) {
-			if (null != _beingDelivered  && _beingDelivered.equals(reg))
-				_beingDelivered.cancelled = true;
+			for (InterestRegistration delivering : _beingDelivered) {
+				if (delivering.equals(reg))
+					delivering.cancelled = true;
+			}
 		}
 	}
 
@@ -1181,31 +1282,89 @@ public class CCNNetworkManager implements Runnable {
 		writeInner(interest);
 	}
 
+	/**
+	 * An encoded packet waiting to be written to ccnd
+	 */
+	private static class PendingWrite {
+		final byte [] bytes;
+		boolean done = false;
+
+		PendingWrite(byte [] bytes) {
+			this.bytes = bytes;
+		}
+	}
+
+	// Packets encoded but not yet written. Whichever writer next gets the channel writes all
+	// of them, so a burst of writers shares a few gathering writes instead of one write each.
+	protected ArrayList<PendingWrite> _pendingWrites = new ArrayList<PendingWrite>();
+
+	// Most packets written to the channel at once
+	public static final int MAX_WRITE_BATCH = 64;
+
 	// DKS TODO unthrown exception
 	private void writeInner(GenericXMLEncodable packet) throws ContentEncodingException {
+		// Encode outside the channel lock, so other writers can encode while one writes
+		PendingWrite write;
 		try {
-			byte[] bytes = packet.encode();
-			ByteBuffer datagram = ByteBuffer.wrap(bytes);
-			synchronized (_channel) {
-				int result = _channel.write(datagram);
-				if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
-					Log.finest(Log.FAC_NETMANAGER, formatMessage("Wrote datagram (" + datagram.position() + " bytes, result " + result + ")"));
-
-				if( result < bytes.length ) {
-					_stats.increment(StatsEnum.WriteUnderflows);
-					if( Log.isLoggable(Log.FAC_NETMANAGER, Level.INFO) )
-						Log.info(Log.FAC_NETMANAGER,
-								formatMessage("Wrote datagram {0} bytes to channel, but packet was {1} bytes"),
-								result,
-								bytes.length);
-				}
+			write = new PendingWrite(packet.encode());
+		} catch (ContentEncodingException e) {
+			// Counted and dropped like any other packet we can't send
+			_stats.increment(StatsEnum.WriteErrors);
+			Log.warning(Log.FAC_NETMANAGER, formatMessage("Error encoding packet: " + e.toString()));
+			return;
+		}
+		synchronized (_pendingWrites) {
+			_pendingWrites.add(write);
+		}
+		synchronized (_channel) {
+			// Another writer may have written ours while we waited
+			while (!write.done)
+				writeBatch();
+		}
+	}
 
-				if (null != _tapStreamOut) {
-					try {
-						_tapStreamOut.write(bytes);
-					} catch (IOException io) {
-						Log.warning(Log.FAC_NETMANAGER, formatMessage("Unable to write packet to tap stream for debugging"));
-					}
+	/**
+	 * Write up to MAX_WRITE_BATCH pending packets to the channel. Must be called with the channel locked.
+	 */
+	private void writeBatch() {
+		PendingWrite [] batch;
+		synchronized (_pendingWrites) {
+			int count = Math.min(_pendingWrites.size(), MAX_WRITE_BATCH);
+			batch = new PendingWrite[count];
+			for (int i = 0; i < count; i++)
+				batch[i] = _pendingWrites.get(i);
+			_pendingWrites.subList(0, count).clear();
+		}
+		if (batch.length == 0)
+			return;
+		ByteBuffer [] buffers = new ByteBuffer[batch.length];
+		long length = 0;
+		for (int i = 0; i < batch.length; i++) {
+			buffers[i] = ByteBuffer.wrap(batch[i].bytes);
+			length += batch[i].bytes.length;
+		}
+		try {
+			long result = _channel.write(buffers, 0, buffers.length);
+			_stats.increment(StatsEnum.WriteBatches);
+			_stats.addSample(StatsEnum.WriteBatchSize, batch.length);
+			if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
+				Log.finest(Log.FAC_NETMANAGER, formatMessage("Wrote " + batch.length + " packets (" + length + " bytes, result " + result + ")"));
+
+			if( result < length ) {
+				_stats.increment(StatsEnum.WriteUnderflows);
+				if( Log.isLoggable(Log.FAC_NETMANAGER, Level.INFO) )
+					Log.info(Log.FAC_NETMANAGER,
+							formatMessage("Wrote {0} bytes to channel, but packets were {1} bytes"),
+							result,
+							length);
+			}
+
+			if (null != _tapStreamOut) {
+				try {
+					for (PendingWrite write : batch)
+						_tapStreamOut.write(write.bytes);
+				} catch (IOException io) {
+					Log.warning(Log.FAC_NETMANAGER, formatMessage("Unable to write packet to tap stream for debugging"));
 				}
 			}
 		} catch (IOException io) {
@@ -1214,6 +1373,10 @@ public class CCNNetworkManager implements Runnable {
 			// We do not see errors on send typically even if
 			// agent is gone, so log each but do not track
 			Log.warning(Log.FAC_NETMANAGER, formatMessage("Error sending packet: " + io.toString()));
+		} finally {
+			// As before, a packet that couldn't be written is dropped rather than retried
+			for (PendingWrite write : batch)
+				write.done = true;
 		}
 	}
 
@@ -1227,6 +1390,16 @@ public class CCNNetworkManager implements Runnable {
 		setupTimers();
 		if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
 			Log.finest(Log.FAC_NETMANAGER, formatMessage("registerInterest for {0}, and obj is " + _myInterests.hashCode()), reg.interest.name());
+		// Mark it registered first, so content arriving as soon as it's in the table can unregister it
+		synchronized (_refreshQueue) {
+			if (!reg.registered && reg.queued)
+				_refreshQueueUnregistered--;
+			reg.registered = true;
+			if (!reg.queued) {
+				reg.queued = true;
+				_refreshQueue.add(reg);
+			}
+		}
 		_myInterests.add(reg.interest, reg);
 		return reg;
 	}
@@ -1242,11 +1415,38 @@ public class CCNNetworkManager implements Runnable {
 	private InterestRegistration unregisterInterest(InterestRegistration reg) {
 		InterestRegistration result = reg;
 		Entry<InterestRegistration> entry = _myInterests.remove(reg.interest, reg);
-		if (null != entry)
+		if (null != entry) {
 			result = entry.value();
+			synchronized (_refreshQueue) {
+				if (result.registered && result.queued) {
+					_refreshQueueUnregistered++;
+					if (_refreshQueueUnregistered > 64 && _refreshQueueUnregistered > _refreshQueue.size() / 2)
+						purgeRefreshQueue();
+				}
+				result.registered = false;
+			}
+		}
 		return result;
 	}
 
+	/**
+	 * Drop unregistered interests from the refresh queue, so interests that come and go
+	 * quickly (gets in particular) don't build up there until they would have been due.
+	 * Must be called with _refreshQueue locked.
+	 */
+	private void purgeRefreshQueue() {
+		ArrayList<InterestRegistration> live = new ArrayList<InterestRegistration>(_refreshQueue.size() - _refreshQueueUnregistered);
+		for (InterestRegistration reg : _refreshQueue) {
+			if (reg.registered)
+				live.add(reg);
+			else
+				reg.queued = false;
+		}
+		_refreshQueue.clear();
+		_refreshQueue.addAll(live);
+		_refreshQueueUnregistered = 0;
+	}
+
 	/**
 	 * Reader thread: this thread will handle reading datagrams and perform callbacks after reading
 	 * complete packets.
@@ -1329,21 +1529,45 @@ public class CCNNetworkManager implements Runnable {
 	 * Internal delivery of interests to pending filter handlers
 	 * @param ireg
 	 */
-	protected void deliverInterest(InterestRegistration ireg, Interest interest) {
+	protected void deliverInterest(InterestRegistration ireg, final Interest interest) {
 		_stats.increment(StatsEnum.DeliverInterest);
 
-		// Call any handlers with matching filters
+		final ArrayList<Filter> filters = new ArrayList<Filter>();
 		for (Filter filter : _myFilters.getValues(ireg.interest.name())) {
-			if (filter.owner != ireg.owner) {
-				if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
-					Log.finer(Log.FAC_NETMANAGER, formatMessage("Schedule delivery for interest: {0}"), interest);
-				_stats.increment(StatsEnum.DeliverInterestMatchingFilters);
-				long startTime = System.nanoTime();
-				boolean succeeded = filter.deliver(interest);
-				_stats.addSample(StatsEnum.InterestHandlerTime, System.nanoTime() - startTime);
-				if (succeeded)
-					break;	// We only run interest handlers until one succeeds
-			}
+			if (filter.owner != ireg.owner)
+				filters.add(filter);
+		}
+		if (filters.size() == 0)
+			return;
+
+		// The handlers are tried in turn until one succeeds, so the whole chain is one callback
+		// queued for the handler of the longest matching filter
+		if (null != _dispatcher) {
+			_dispatcher.dispatch(filters.get(0).handler, new Runnable() {
+				public void run() {
+					deliverInterest(filters, interest);
+				}
+			});
+		} else {
+			deliverInterest(filters, interest);
+		}
+	}
+
+	/**
+	 * Call any handlers with matching filters
+	 * @param filters matching filters, longest first
+	 * @param interest
+	 */
+	protected void deliverInterest(List<Filter> filters, Interest interest) {
+		for (Filter filter : filters) {
+			if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
+				Log.finer(Log.FAC_NETMANAGER, formatMessage("Schedule delivery for interest: {0}"), interest);
+			_stats.increment(StatsEnum.DeliverInterestMatchingFilters);
+			long startTime = System.nanoTime();
+			boolean succeeded = filter.deliver(interest);
+			_stats.addSample(StatsEnum.InterestHandlerTime, System.nanoTime() - startTime);
+			if (succeeded)
+				break;	// We only run interest handlers until one succeeds
 		}
 	}
 
@@ -1354,12 +1578,15 @@ public class CCNNetworkManager implements Runnable {
 	protected void deliverContent(ContentObject co) {
 		_stats.increment(StatsEnum.DeliverContent);
 
+		boolean matched = false;
 		for (InterestRegistration ireg : _myInterests.getValues(co)) {
 			_stats.increment(StatsEnum.DeliverContentMatchingInterests);
-			long startTime = System.nanoTime();
 			ireg.deliver(co);
-			_stats.addSample(StatsEnum.ContentHandlerTime, System.nanoTime() - startTime);
+			matched = true;
 		}
+		// Only keep content we asked for
+		if (matched)
+			_contentStore.put(co);
 	}
 
 	/**
@@ -1450,6 +1677,14 @@ public class CCNNetworkManager implements Runnable {
 		return _stats;
 	}
 
+	/**
+	 * Get the per handler dispatch statistics, keyed by handler
+	 * @return the statistics, or null if handlers are run on the reader thread
+	 */
+	public CCNCategorizedStatistics getDispatchStats() {
+		return _dispatcher;
+	}
+
 	public enum StatsEnum implements IStatsEnum {
 		// ====================================
 		// Just edit this list, dont need to change anything else
@@ -1460,6 +1695,8 @@ public class CCNNetworkManager implements Runnable {
 		WriteObject ("calls", "The number of calls to write(ContentObject)"),
 		WriteErrors ("count", "Error count for writeInner()"),
 		WriteUnderflows ("count", "The count of times when the bytes written to the channel < buffer size"),
+		WriteBatches ("calls", "The number of writes of one or more packets to the channel"),
+		WriteBatchSize ("packets", "The average number of packets written to the channel at once"),
 
 		ExpressInterest ("calls", "The number of calls to expressInterest"),
 		CancelInterest ("calls", "The number of calls to cancelInterest"),
@@ -1473,12 +1710,21 @@ public class CCNNetworkManager implements Runnable {
 		InterestHandlerTime("nanos", "The average amount of time spent in interest handlers"),
 		ContentHandlerTime("nanos", "The average amount of time spent in content handlers"),
 
+		DispatchQueued ("calls", "The number of handler callbacks queued to the dispatch threads"),
+		DispatchQueueDepth ("callbacks", "The average number of callbacks waiting or running for a handler when one is queued"),
+		DispatchBlocked ("calls", "The number of times the reader thread waited for room in the dispatch queue"),
+
 		ReceiveObject ("objects", "Receive count of ContentObjects from channel"),
 		ReceiveInterest ("interests", "Receive count of Interests from channel"),
 		ReceiveUnknown ("calls", "Receive count of unknown type from channel"),
 		ReceiveErrors ("errors", "Number of errors from the channel in run() loop"),
 
 		ContentObjectsIgnored ("ContentObjects", "The number of ContentObjects that are never handled"),
+
+		ContentStoreHits ("gets", "The number of gets answered from the in-process content store"),
+		ContentStoreMisses ("gets", "The number of gets the in-process content store couldn't answer"),
+		ContentStoreBypassed ("gets", "The number of gets whose interest didn't allow a content store answer"),
+		ContentStoreEvictions ("ContentObjects", "The number of ContentObjects evicted from the in-process content store"),
 		;
 
 		// ====================================
@@ -26,6 +26,9 @@ import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.SignatureException;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import javax.crypto.BadPaddingException;
@@ -142,6 +145,11 @@ public class CCNSegmenter {
 	 */
 	protected ContentObject _firstSegment = null;
 
+	/**
+	 * The batch of segments being signed and output in the background, if any.
+	 */
+	protected volatile Future<Object> _pendingOutput = null;
+
 	/**
 	 * Create a segmenter with default (Merkle hash tree) bulk signing
 	 * behavior, making a new handle for it to use.
@@ -247,6 +255,17 @@ public class CCNSegmenter {
 	 * @return The first segment or null if no segments generated yet
 	 */
 	public ContentObject getFirstSegment() {
+		// It may be in the batch being signed
+		Future<Object> pending = _pendingOutput;
+		if (null != pending) {
+			try {
+				pending.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// Reported by the next output
+			}
+		}
 		return _firstSegment;
 	}
 
@@ -574,8 +593,11 @@ public class CCNSegmenter {
 			boolean flushNow) throws InvalidKeyException, SignatureException,
 			NoSuchAlgorithmException, IOException, InvalidAlgorithmParameterException {
 
-		if (!flushNow && blockCount == 0)
+		if (!flushNow && blockCount == 0) {
+			if (null != finalSegmentIndex)
+				waitForOutput();
 			return baseSegmentNumber;
+		}
 
 		if (null == publisher) {
 			publisher = getFlowControl().getHandle().keyManager().getDefaultKeyID();
@@ -615,7 +637,7 @@ public class CCNSegmenter {
 								contentBlocks[i], 0, (i < firstBlockIndex + blockCount - 1)
 								?  contentBlocks[i].length : lastBlockLength, keys);
 			if (_blocks.size() >= HOLD_COUNT) {
-				outputCurrentBlocks(signingKey);
+				outputCurrentBlocks(signingKey, SystemConfiguration.BACKGROUND_SIGNING);
 			}
 		}
 		if (flushNow || null != finalSegmentIndex) {
@@ -648,9 +670,40 @@ public class CCNSegmenter {
 	 * @throws IOException
 	 */
 	protected void outputCurrentBlocks(PrivateKey signingKey) throws InvalidKeyException, SignatureException, NoSuchAlgorithmException, IOException {
+		outputCurrentBlocks(signingKey, false);
+	}
+
+	/**
+	 * Sign and output all outstanding blocks to the flow controller, possibly in the background.
+	 * Only one batch is output in the background at a time, so this first waits for the previous
+	 * one. Batches therefore reach the flow controller in order, and a failure signing or
+	 * outputting a background batch is thrown by the next call.
+	 * @param signingKey
+	 * @param background if true, hand the blocks to a thread from the system thread pool and
+	 * 	return, so the caller can fill the next batch while this one is signed
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 * @throws NoSuchAlgorithmException
+	 * @throws IOException
+	 */
+	protected void outputCurrentBlocks(final PrivateKey signingKey, boolean background) throws InvalidKeyException, SignatureException, NoSuchAlgorithmException, IOException {
+		waitForOutput();
 		if (_blocks.size() == 0)
 			return;
 
+		if (background && _blocks.size() > 1) {
+			final ContentObject[] blocks = new ContentObject[_blocks.size()];
+			_blocks.toArray(blocks);
+			_blocks.clear();
+			_pendingOutput = SystemConfiguration._systemThreadpool.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					outputBlocks(blocks, signingKey);
+					return null;
+				}
+			});
+			return;
+		}
+
 		if (_blocks.size() == 1) {
 
 			ContentObject co = _blocks.get(0);
@@ -669,16 +722,59 @@ public class CCNSegmenter {
 			// ask for the signature for each block.
 			ContentObject[] blocks = new ContentObject[_blocks.size()];
 			_blocks.toArray(blocks);
-
-			if (Log.isLoggable(Log.FAC_IO, Level.INFO))
-				Log.info(Log.FAC_IO, "flush: putting merkle tree to the network, name starts with " + blocks[0].name() + "; "
-	                    + _blocks.size() + " blocks");
-			_bulkSigner.signBlocks(blocks, signingKey);
-			getFlowControl().put(blocks);
+			outputBlocks(blocks, signingKey);
 		}
 		_blocks.clear();
 	}
 
+	/**
+	 * Sign a batch of blocks with the bulk signer and output them to the flow controller.
+	 */
+	protected void outputBlocks(ContentObject[] blocks, PrivateKey signingKey) throws InvalidKeyException, SignatureException, NoSuchAlgorithmException, IOException {
+		if (Log.isLoggable(Log.FAC_IO, Level.INFO))
+			Log.info(Log.FAC_IO, "flush: putting merkle tree to the network, name starts with " + blocks[0].name() + "; "
+                    + blocks.length + " blocks");
+		_bulkSigner.signBlocks(blocks, signingKey);
+		getFlowControl().put(blocks);
+	}
+
+	/**
+	 * Wait for any batch of blocks being output in the background.
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 * @throws NoSuchAlgorithmException
+	 * @throws IOException if the output failed, or we were interrupted while waiting
+	 */
+	protected void waitForOutput() throws InvalidKeyException, SignatureException, NoSuchAlgorithmException, IOException {
+		Future<Object> pending = _pendingOutput;
+		if (null == pending)
+			return;
+		try {
+			pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for segments to be signed");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof InvalidKeyException)
+				throw (InvalidKeyException)cause;
+			if (cause instanceof SignatureException)
+				throw (SignatureException)cause;
+			if (cause instanceof NoSuchAlgorithmException)
+				throw (NoSuchAlgorithmException)cause;
+			if (cause instanceof IOException)
+				throw (IOException)cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if (cause instanceof Error)
+				throw (Error)cause;
+			throw new IOException("Failed to sign segments: " + cause);
+		} finally {
+			if (pending.isDone())
+				_pendingOutput = null;
+		}
+	}
+
 	/**
 	 * Puts a single block of content of arbitrary length using a segment naming convention. The only
 	 * current use of this is to allow a Segmenter.put of less than a blocksize.
@@ -932,7 +1028,7 @@ public class CCNSegmenter {
 		if (null == keys) {
 			return inputLength;
 		} else {
-			return keys.getCipher().getOutputSize(inputLength);
+			return keys.getThreadCipher().getOutputSize(inputLength);
 		}
 	}
 }
@@ -0,0 +1,169 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.ccnx.ccn.impl.CCNNetworkManager.StatsEnum;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+
+/**
+ * A small in-process content store, so that a get for content this process received
+ * moments ago - a key, the latest version of something - can be answered without going
+ * to ccnd.
+ *
+ * Content is kept by its full name including the digest, up to a fixed number of objects,
+ * evicting the least recently used. Content with FreshnessSeconds goes stale that many seconds
+ * after it arrived, and then only answers interests that allow stale answers; content without
+ * it never goes stale, as in ccnd.
+ *
+ * An interest is matched as by Interest.matchesFullName. With the rightmost child selector
+ * the last match in name order is returned, otherwise the first. An interest whose
+ * answerOriginKind doesn't include Interest.ANSWER_CONTENT_STORE is never answered from here,
+ * so callers that need to see the network can bypass the store for a single interest.
+ */
+public class ContentStore {
+
+	protected static class Entry {
+		protected final ContentObject _content;
+		protected final long _staleTime;
+
+		protected Entry(ContentObject content, long now) {
+			_content = content;
+			if (null == content.signedInfo() || content.signedInfo().emptyFreshnessSeconds())
+				_staleTime = Long.MAX_VALUE;
+			else
+				_staleTime = now + content.signedInfo().getFreshnessSeconds() * 1000L;
+		}
+
+		protected boolean isStale(long now) {
+			return now >= _staleTime;
+		}
+	}
+
+	protected final int _maxEntries;
+	protected CCNEnumStats<StatsEnum> _stats = null;
+
+	// Sorted, so the content under a prefix is together
+	protected final TreeMap<ContentName, Entry> _byName = new TreeMap<ContentName, Entry>();
+
+	// Access ordered so the eldest entry is the least recently used
+	protected final LinkedHashMap<ContentName, Entry> _lru = new LinkedHashMap<ContentName, Entry>(64, 0.75f, true);
+
+	/**
+	 * @param maxEntries the number of objects to keep; 0 keeps none
+	 */
+	public ContentStore(int maxEntries) {
+		_maxEntries = maxEntries;
+	}
+
+	public void setStats(CCNEnumStats<StatsEnum> stats) {
+		_stats = stats;
+	}
+
+	public boolean isEnabled() {
+		return _maxEntries > 0;
+	}
+
+	/**
+	 * @param interest
+	 * @return content in the store answering the interest, or null if there is none or
+	 * 	the interest doesn't allow answers from a content store
+	 */
+	public ContentObject get(Interest interest) {
+		if (!isEnabled())
+			return null;
+		if ((interest.answerOriginKind() & Interest.ANSWER_CONTENT_STORE) == 0) {
+			if (null != _stats)
+				_stats.increment(StatsEnum.ContentStoreBypassed);
+			return null;
+		}
+		boolean staleOK = (interest.answerOriginKind() & Interest.ANSWER_STALE) != 0;
+		boolean rightmost = (null != interest.childSelector()) && (interest.childSelector() == Interest.CHILD_SELECTOR_RIGHT);
+		ContentName prefix = interest.name();
+		long now = System.currentTimeMillis();
+		ContentName found = null;
+		ContentObject content = null;
+		synchronized (this) {
+			for (Map.Entry<ContentName, Entry> entry : _byName.tailMap(prefix).entrySet()) {
+				ContentName fullName = entry.getKey();
+				if (!prefix.isPrefixOf(fullName))
+					break;
+				Entry e = entry.getValue();
+				if (!staleOK && e.isStale(now))
+					continue;
+				PublisherPublicKeyDigest publisher =
+					(null != e._content.signedInfo()) ? e._content.signedInfo().getPublisherKeyID() : null;
+				if (!interest.matchesFullName(fullName, publisher))
+					continue;
+				found = fullName;
+				content = e._content;
+				if (!rightmost)
+					break;
+			}
+			if (null != found)
+				_lru.get(found);
+		}
+		if (null != _stats)
+			_stats.increment((null == content) ? StatsEnum.ContentStoreMisses : StatsEnum.ContentStoreHits);
+		return content;
+	}
+
+	/**
+	 * Add content to the store, evicting the least recently used content if needed
+	 * @param content
+	 */
+	public void put(ContentObject content) {
+		if (!isEnabled())
+			return;
+		ContentName fullName = content.fullName();
+		Entry entry = new Entry(content, System.currentTimeMillis());
+		int evicted = 0;
+		synchronized (this) {
+			_byName.put(fullName, entry);
+			_lru.put(fullName, entry);
+			Iterator<ContentName> it = _lru.keySet().iterator();
+			while (_lru.size() > _maxEntries && it.hasNext()) {
+				_byName.remove(it.next());
+				it.remove();
+				evicted++;
+			}
+		}
+		if (null != _stats && evicted > 0)
+			_stats.increment(StatsEnum.ContentStoreEvictions, evicted);
+	}
+
+	public synchronized void clear() {
+		_byName.clear();
+		_lru.clear();
+	}
+
+	/**
+	 * @return the number of objects in the store
+	 */
+	public synchronized int size() {
+		return _lru.size();
+	}
+}
@@ -0,0 +1,290 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.CCNNetworkManager.StatsEnum;
+import org.ccnx.ccn.impl.CCNStats.CCNCategorizedStatistics;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
+import org.ccnx.ccn.impl.support.Log;
+
+/**
+ * Runs content and interest handler callbacks for a CCNNetworkManager on a bounded pool
+ * of threads, so that the reader thread can go on decoding packets while a slow handler
+ * is working.
+ *
+ * Callbacks are queued per handler. In ordered mode each handler's callbacks run one at a time
+ * in the order they were dispatched, as they would on the reader thread. In unordered mode
+ * callbacks for the same handler may run concurrently.
+ *
+ * The total number of callbacks waiting or running is bounded. When the bound is reached the
+ * reader thread waits for room rather than queueing without limit. It only waits up to
+ * MAX_TIMEOUT so that a handler blocked waiting for data from the reader thread can't
+ * deadlock it.
+ *
+ * Queue depths are kept per handler and are available through CCNCategorizedStatistics,
+ * keyed by handler object.
+ */
+public class HandlerDispatcher implements CCNCategorizedStatistics {
+
+	protected final ThreadPoolExecutor _pool;
+	protected final boolean _ordered;
+	protected final Semaphore _permits;
+	protected final CCNEnumStats<StatsEnum> _managerStats;
+
+	// Weak keys so handlers that are no longer used don't hang on to their stats
+	protected final WeakHashMap<Object, HandlerQueue> _queues = new WeakHashMap<Object, HandlerQueue>();
+
+	/**
+	 * Queue of callbacks for a single handler
+	 */
+	protected class HandlerQueue implements Runnable {
+		protected final Queue<Runnable> _queue = new LinkedList<Runnable>();
+		protected boolean _isRunning = false;
+		protected int _depth = 0;	// waiting or running
+		protected final CCNEnumStats<HandlerStatsEnum> _stats = new CCNEnumStats<HandlerStatsEnum>(HandlerStatsEnum.Dispatched);
+
+		/**
+		 * Ordered mode: drain the queue on a pool thread. Only one drain
+		 * runs at a time for any handler.
+		 */
+		public void run() {
+			while (true) {
+				Runnable task;
+				synchronized (this) {
+					task = _queue.poll();
+					if (null == task) {
+						_isRunning = false;
+						return;
+					}
+				}
+				task.run();
+			}
+		}
+	}
+
+	/**
+	 * @param name prefix for the names of the pool threads
+	 * @param threads the number of threads in the pool
+	 * @param queueSize the maximum number of callbacks waiting or running
+	 * @param ordered if true run each handler's callbacks one at a time in order
+	 * @param managerStats stats of the network manager we dispatch for
+	 */
+	public HandlerDispatcher(final String name, int threads, int queueSize, boolean ordered,
+				CCNEnumStats<StatsEnum> managerStats) {
+		_ordered = ordered;
+		_permits = new Semaphore(queueSize);
+		_managerStats = managerStats;
+		_pool = new ThreadPoolExecutor(threads, threads, SystemConfiguration.SYSTEM_THREAD_LIFE, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger _count = new AtomicInteger(0);
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, name + " dispatch " + _count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		_pool.allowCoreThreadTimeOut(true);
+	}
+
+	public boolean isOrdered() {
+		return _ordered;
+	}
+
+	/**
+	 * Queue a callback for a handler
+	 *
+	 * @param handler the handler the callback is for. Callbacks are ordered and counted per handler.
+	 * @param callback the callback
+	 */
+	public void dispatch(Object handler, final Runnable callback) {
+		final boolean permitted = acquirePermit();
+		final HandlerQueue hq;
+		final int depth;
+		synchronized (_queues) {
+			HandlerQueue q = _queues.get(handler);
+			if (null == q) {
+				q = new HandlerQueue();
+				_queues.put(handler, q);
+			}
+			hq = q;
+		}
+		final long queuedTime = System.nanoTime();
+		Runnable task = new Runnable() {
+			public void run() {
+				hq._stats.addSample(HandlerStatsEnum.QueueWaitTime, System.nanoTime() - queuedTime);
+				try {
+					callback.run();
+				} catch (RuntimeException ex) {
+					Log.warning(Log.FAC_NETMANAGER, "Dispatched handler callback failed: {0}", ex);
+					Log.warningStackTrace(ex);
+				} finally {
+					synchronized (hq) {
+						hq._depth--;
+					}
+					if (permitted)
+						_permits.release();
+				}
+			}
+		};
+
+		boolean startDrain = false;
+		synchronized (hq) {
+			depth = ++hq._depth;
+			if (_ordered) {
+				hq._queue.add(task);
+				if (!hq._isRunning) {
+					hq._isRunning = true;
+					startDrain = true;
+				}
+			}
+		}
+		hq._stats.increment(HandlerStatsEnum.Dispatched);
+		hq._stats.addSample(HandlerStatsEnum.QueueDepth, depth);
+		_managerStats.increment(StatsEnum.DispatchQueued);
+		_managerStats.addSample(StatsEnum.DispatchQueueDepth, depth);
+		if (Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST))
+			Log.finest(Log.FAC_NETMANAGER, "Dispatching callback for {0}, queue depth {1}", handler, depth);
+
+		if (!_ordered)
+			_pool.execute(task);
+		else if (startDrain)
+			_pool.execute(hq);
+	}
+
+	/**
+	 * Wait for room to queue another callback.
+	 * @return true if we got a permit that must be released when the callback completes
+	 */
+	protected boolean acquirePermit() {
+		if (_permits.tryAcquire())
+			return true;
+		_managerStats.increment(StatsEnum.DispatchBlocked);
+		try {
+			if (_permits.tryAcquire(SystemConfiguration.MAX_TIMEOUT, TimeUnit.MILLISECONDS))
+				return true;
+		} catch (InterruptedException e) {}
+		Log.warning(Log.FAC_NETMANAGER, "Dispatch queue still full after {0}ms - queueing callback anyway", SystemConfiguration.MAX_TIMEOUT);
+		return false;
+	}
+
+	/**
+	 * Get the number of callbacks waiting or running for a handler
+	 * @param handler
+	 * @return the depth, 0 if nothing has been dispatched for handler
+	 */
+	public int getQueueDepth(Object handler) {
+		HandlerQueue hq;
+		synchronized (_queues) {
+			hq = _queues.get(handler);
+		}
+		if (null == hq)
+			return 0;
+		synchronized (hq) {
+			return hq._depth;
+		}
+	}
+
+	/**
+	 * Stop the pool. Callbacks already queued will still be run.
+	 */
+	public void shutdown() {
+		_pool.shutdown();
+	}
+
+	public Object[] getCategoryNames() {
+		synchronized (_queues) {
+			return _queues.keySet().toArray();
+		}
+	}
+
+	/**
+	 * @param handler the handler whose statistics are wanted
+	 * @return May be null if nothing has been dispatched for handler
+	 */
+	public CCNStats getStatsByName(Object handler) throws ClassCastException {
+		synchronized (_queues) {
+			HandlerQueue hq = _queues.get(handler);
+			if (null != hq)
+				return hq._stats;
+			return null;
+		}
+	}
+
+	public enum HandlerStatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Dispatched ("calls", "The number of callbacks dispatched for this handler"),
+		QueueDepth ("callbacks", "The average number of callbacks waiting or running for this handler when one is dispatched"),
+		QueueWaitTime ("nanos", "The average time a callback waits before it starts to run"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[HandlerStatsEnum.values().length];
+			for(HandlerStatsEnum stat : HandlerStatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		HandlerStatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return HandlerStatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			HandlerStatsEnum x = HandlerStatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return HandlerStatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return HandlerStatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+}
@@ -23,11 +23,11 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.logging.Level;
 
+import org.ccnx.ccn.impl.support.ByteArrayCompare;
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.protocol.ContentName;
 import org.ccnx.ccn.protocol.ContentObject;
@@ -47,6 +47,10 @@ import org.ccnx.ccn.protocol.Interest;
  * interests in the table. To avoid that an LRU algorithm is
  * optionally implemented to keep the table from growing without
  * bounds.
+ *
+ * Lookups by target name do not scan the table. A trie of name components
+ * mirrors the keys of _contents, so finding the entries for a target only visits
+ * the nodes along the target's own name.
  */
 
 public class InterestTable<V> {
@@ -95,6 +99,24 @@ public class InterestTable<V> {
         }
     };
 
+	/**
+	 * Node of the component trie over the names in _contents. The name of a node
+	 * is set only while that name is a key in _contents; nodes with no name and
+	 * no children are pruned.
+	 */
+	protected static class NameNode {
+		protected ContentName _name = null;
+		protected TreeMap<byte [], NameNode> _children = null;
+
+		protected NameNode child(byte [] component) {
+			return (null == _children) ? null : _children.get(component);
+		}
+	}
+
+	protected static final ByteArrayCompare _componentComparator = new ByteArrayCompare();
+
+	protected NameNode _root = new NameNode();
+
 	protected List<ContentName> _contentNamesLRU = null;
 
 	protected Integer _capacity = null;	// For LRU size control - default is none
@@ -222,14 +244,99 @@ public class InterestTable<V> {
 						if (Log.isLoggable(Log.FAC_ENCODING, Level.INFO)) {
 							Log.info(Log.FAC_ENCODING, "removing entry associated with name {0}", _contentNamesLRU.get(0));
 						}
-						_contents.remove(_contentNamesLRU.get(0));
+						removeName(_contentNamesLRU.get(0));
 						_contentNamesLRU.remove(0);
 					}
 					_contentNamesLRU.add(name);
 				}
-				_contents.put(name, list);
+				putName(name, list);
+			}
+		}
+	}
+
+	/**
+	 * Internal: add a new name to _contents and to the trie. Must be called
+	 * holding the lock on _contents.
+	 *
+	 * @param name
+	 * @param list
+	 */
+	protected void putName(ContentName name, List<Holder<V>> list) {
+		_contents.put(name, list);
+		NameNode node = _root;
+		for (int i = 0; i < name.count(); i++) {
+			byte [] component = name.component(i);
+			NameNode next = node.child(component);
+			if (null == next) {
+				if (null == node._children)
+					node._children = new TreeMap<byte [], NameNode>(_componentComparator);
+				next = new NameNode();
+				node._children.put(component, next);
+			}
+			node = next;
+		}
+		node._name = name;
+	}
+
+	/**
+	 * Internal: remove a name from _contents and from the trie, pruning trie nodes
+	 * that are no longer needed. Must be called holding the lock on _contents.
+	 *
+	 * @param name
+	 */
+	protected void removeName(ContentName name) {
+		if (null == _contents.remove(name))
+			return;
+		int count = name.count();
+		NameNode [] path = new NameNode[count + 1];
+		path[0] = _root;
+		for (int i = 0; i < count; i++) {
+			path[i + 1] = path[i].child(name.component(i));
+			if (null == path[i + 1])
+				return;
+		}
+		path[count]._name = null;
+		for (int i = count; i > 0; i--) {
+			NameNode node = path[i];
+			if (null != node._name || (null != node._children && node._children.size() > 0))
+				break;
+			path[i - 1]._children.remove(name.component(i - 1));
+		}
+	}
+
+	/**
+	 * Internal: find the names in the table that are prefixes of target, ordered
+	 * longest first as _contents would order them.
+	 *
+	 * @param target
+	 * @param withDigest if true, also return names that are exactly one component
+	 * 		longer than target, since those may be target plus an explicit digest
+	 * @return
+	 */
+	protected List<ContentName> getPrefixNames(ContentName target, boolean withDigest) {
+		ArrayList<ContentName> names = new ArrayList<ContentName>();
+		int count = target.count();
+		NameNode[] path = new NameNode[count + 1];
+		NameNode node = _root;
+		int depth = 0;
+		path[0] = node;
+		while (depth < count) {
+			node = node.child(target.component(depth));
+			if (null == node)
+				break;
+			path[++depth] = node;
+		}
+		if (withDigest && depth == count && null != node._children) {
+			for (NameNode child : node._children.values()) {
+				if (null != child._name)
+					names.add(child._name);
 			}
 		}
+		for (int i = depth; i >= 0; i--) {
+			if (null != path[i]._name)
+				names.add(path[i]._name);
+		}
+		return names;
 	}
 
 	protected Holder<V> getMatchByName(ContentName name, ContentObject target) {
@@ -293,7 +400,7 @@ public class InterestTable<V> {
 						if (holder.interest().matches(target)) {
 							holdIt.remove();
 							if (list.size() == 0) {
-								_contents.remove(name);
+								removeName(name);
 							}
 							return holder;
 						}
@@ -332,9 +439,7 @@ public class InterestTable<V> {
 					}
 				}
 				if (list.size() == 0) {
-					synchronized (_contents) {
-						_contents.remove(name);
-					}
+					removeName(name);
 				}
 			}
 		}
@@ -372,7 +477,7 @@ public class InterestTable<V> {
 					}
 				}
 				if (list.size() == 0) {
-					_contents.remove(name);
+					removeName(name);
 				}
 			}
 		}
@@ -394,7 +499,7 @@ public class InterestTable<V> {
 					}
 				}
 				if (list.size() == 0) {
-					_contents.remove(name);
+					removeName(name);
 				}
 			}
 		}
@@ -431,10 +536,8 @@ public class InterestTable<V> {
 		if(Log.isLoggable(Log.FAC_ENCODING, Level.FINEST))
 			Log.finest(Log.FAC_ENCODING, "target: {0}", target.name());
 		Entry<V> match = null;
-		Set<ContentName> names;
 		synchronized (_contents) {
-			names = _contents.keySet();
-			for (ContentName name : names) {
+			for (ContentName name : getPrefixNames(target.name(), true)) {
 				match = getMatchByName(name, target);
 				if (null != match)
 					break;
@@ -482,7 +585,7 @@ public class InterestTable<V> {
 		List<Entry<V>> matches = new ArrayList<Entry<V>>();
 		if (null != target) {
 			synchronized (_contents) {
-				for (ContentName name : _contents.keySet()) {
+				for (ContentName name : getPrefixNames(target.name(), true)) {
 					// Name match - is there an interest match here?
 					matches.addAll(getAllMatchByName(name, target));
 				}
@@ -526,12 +629,9 @@ public class InterestTable<V> {
 
 		Entry<V> match = null;
 		synchronized (_contents) {
-			for (ContentName name : _contents.keySet()) {
-				if (name.isPrefixOf(target)) {
-					match = _contents.get(name).get(0);
-					break;
-				}
-			}
+			List<ContentName> names = getPrefixNames(target, false);
+			if (names.size() > 0)
+				match = _contents.get(names.get(0)).get(0);
 		}
 		return match;
 	}
@@ -570,10 +670,8 @@ public class InterestTable<V> {
 
 		List<Entry<V>> matches = new ArrayList<Entry<V>>();
 		synchronized (_contents) {
-			for (ContentName name : _contents.keySet()) {
-				if (name.isPrefixOf(target)) {
-					matches.addAll(_contents.get(name));
-				}
+			for (ContentName name : getPrefixNames(target, false)) {
+				matches.addAll(_contents.get(name));
 			}
 		}
 		return matches;
@@ -629,10 +727,8 @@ public class InterestTable<V> {
 			ContentName matchName = null;
 			if(Log.isLoggable(Log.FAC_ENCODING, Level.FINEST))
 				Log.finest(Log.FAC_ENCODING, "removeMatch: looking for match to target {0} among {1} possibilities.", target.name(), _contents.keySet().size());
-			Set<ContentName> names;
 			synchronized (_contents) {
-				names = _contents.keySet();
-				for (ContentName name : names) {
+				for (ContentName name : getPrefixNames(target.name(), true)) {
 					match = getMatchByName(name, target);
 					if (null != match) {
 						matchName = name;
@@ -679,16 +775,12 @@ public class InterestTable<V> {
 	 */
 	public List<Entry<V>> removeMatches(ContentObject target) {
 		List<Entry<V>> matches = new ArrayList<Entry<V>>();
-		List<ContentName> names = new ArrayList<ContentName>();
-		Set<ContentName> LFCnames;
+		List<ContentName> names;
 		synchronized (_contents) {
-			LFCnames = _contents.keySet();
-			for (ContentName name : LFCnames) {
-				if (name.isPrefixOf(target.name())) {
-					// Name match - is there an interest match here?
-					matches.addAll(getAllMatchByName(name, target));
-					names.add(name);
-				}
+			names = getPrefixNames(target.name(), false);
+			for (ContentName name : names) {
+				// Name match - is there an interest match here?
+				matches.addAll(getAllMatchByName(name, target));
 			}
 			if (matches.size() != 0) {
 				for (ContentName contentName : names) {
@@ -737,6 +829,7 @@ public class InterestTable<V> {
 	public void clear() {
 		synchronized (_contents) {
 			_contents.clear();
+			_root = new NameNode();
 		}
 	}
 
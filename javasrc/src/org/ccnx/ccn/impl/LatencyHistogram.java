@@ -0,0 +1,129 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, for when an average from CCNStats isn't enough - for instance
+ * to see how long the slowest requests wait when sizing a thread pool.
+ *
+ * Bucket 0 counts latencies under 1 microsecond. Bucket i counts latencies of at least
+ * 2^(i-1) and under 2^i microseconds, and the last bucket counts everything longer.
+ * Recording doesn't lock, so it is cheap enough to do for every request.
+ */
+public class LatencyHistogram {
+
+	public static final int BUCKETS = 32;
+
+	protected final String _name;
+	protected final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * @param name what is being measured, used by toString()
+	 */
+	public LatencyHistogram(String name) {
+		_name = name;
+	}
+
+	public String getName() {
+		return _name;
+	}
+
+	/**
+	 * @param nanos a latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		_counts.incrementAndGet(bucket(nanos));
+	}
+
+	/**
+	 * @return the bucket a latency is counted in
+	 */
+	public static int bucket(long nanos) {
+		long micros = nanos / 1000;
+		if (micros <= 0)
+			return 0;
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+	}
+
+	/**
+	 * @return the upper limit of a bucket in microseconds, or Long.MAX_VALUE for the last bucket
+	 */
+	public static long bucketLimit(int bucket) {
+		if (bucket >= BUCKETS - 1)
+			return Long.MAX_VALUE;
+		return 1L << bucket;
+	}
+
+	public long getCount(int bucket) {
+		return _counts.get(bucket);
+	}
+
+	public long getTotal() {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			total += _counts.get(i);
+		return total;
+	}
+
+	/**
+	 * @param percent between 0 and 100
+	 * @return the upper limit in microseconds of the bucket containing that percentile, 0 if nothing
+	 * 		has been recorded
+	 */
+	public long getPercentile(double percent) {
+		long total = getTotal();
+		if (total == 0)
+			return 0;
+		long target = (long)Math.ceil(total * percent / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += _counts.get(i);
+			if (seen >= target && seen > 0)
+				return bucketLimit(i);
+		}
+		return bucketLimit(BUCKETS - 1);
+	}
+
+	public void clear() {
+		for (int i = 0; i < BUCKETS; i++)
+			_counts.set(i, 0);
+	}
+
+	/**
+	 * @return one line per non-empty bucket, giving its upper limit in microseconds and its count
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		long total = getTotal();
+		sb.append(_name).append(": ").append(total).append(" samples, 50% < ").append(getPercentile(50))
+			.append("us, 99% < ").append(getPercentile(99)).append("us\n");
+		for (int i = 0; i < BUCKETS; i++) {
+			long count = _counts.get(i);
+			if (count == 0)
+				continue;
+			if (i == BUCKETS - 1)
+				sb.append(String.format("  >= %10dus %10d\n", bucketLimit(i - 1), count));
+			else
+				sb.append(String.format("   < %10dus %10d\n", bucketLimit(i), count));
+		}
+		return sb.toString();
+	}
+}
@@ -19,9 +19,13 @@ package org.ccnx.ccn.impl.encoding;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.TreeMap;
 import java.util.logging.Level;
 
+import org.ccnx.ccn.config.SystemConfiguration;
 import org.ccnx.ccn.impl.CCNNetworkManager;
 import org.ccnx.ccn.impl.support.DataUtils;
 import org.ccnx.ccn.impl.support.Log;
@@ -40,12 +44,18 @@ import org.ccnx.ccn.protocol.Interest;
  * It also exposes the segment buffer through getBytes() and the
  * segment DOM via getElement().
  *
+ * If setRetainEncoding(true) is called (the default comes from
+ * SystemConfiguration.RETAIN_WIRE_ENCODING), the decoder also keeps a copy of the
+ * bytes it read and the offset of each element, so that objects such as
+ * ContentObject can keep their original encoding rather than encode themselves
+ * again to compute digests and signatures or to write themselves out.
+ *
+ * Packets already wholly in a ByteBuffer, as they usually are in the network
+ * channel's read buffer, can be parsed straight from the buffer with
+ * beginDecoding(ByteBuffer), which avoids going through InputStream.read() for
+ * every byte of the type/value headers and copies blobs out in bulk.
+ *
  * TODO:
- * - Try buffering reads from the network channel rather than byte-by-byte.
- *   CCNNetworkChannel is rewindable, so if we read past the end of the
- *   segment, we can re-position to where we end.  A better organization
- *   would be to have a framer just doing the decode and once it gets
- *   a full segment, hand that off to a parser without rewinding.
  * - Another thing to do is to not actually decode the Type/Value pairs
  *   except for BLOB and UDATA, where you need to know what the value is.
  *   for all the DTAG and CLOSE, we should just use them in their encoded
@@ -71,11 +81,47 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 	public final int RESYNC_LIMIT = 512;	// Default max we can go back for a resync
 	protected int _resyncLimit = RESYNC_LIMIT;
 	protected boolean _resyncable = false;
+	protected boolean _retainEncoding = SystemConfiguration.RETAIN_WIRE_ENCODING;
 
 	public BinaryXMLDecoder() {
 		super();
 	}
 
+	/**
+	 * Keep a copy of the bytes read for each packet, see getEncoding()
+	 * @param value
+	 */
+	public void setRetainEncoding(boolean value) {
+		_retainEncoding = value;
+	}
+
+	public boolean getRetainEncoding() {
+		return _retainEncoding;
+	}
+
+	/**
+	 * Get the offset in the packet of the element the parser is about to read.
+	 * @return the offset, or the length of the packet if all elements have been read
+	 */
+	public final int getParsingOffset() {
+		if (_parsingElement >= _elementCount)
+			return _position;
+		return _elements_offset[_parsingElement];
+	}
+
+	/**
+	 * Get a copy of part of the bytes read for the current packet. Only available
+	 * if we are retaining the encoding.
+	 * @param start offset of the first byte, as returned by getParsingOffset()
+	 * @param end offset after the last byte
+	 * @return the bytes, or null if we are not retaining the encoding
+	 */
+	public final byte [] getEncoding(int start, int end) {
+		if (!_retainEncoding)
+			return null;
+		return Arrays.copyOfRange(_encoding, start, end);
+	}
+
 	public final XMLEncodable getPacket() throws ContentDecodingException {
 //		long value = peekStartElementAsLong();
 
@@ -152,6 +198,71 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 		}
 	}
 
+	/**
+	 * Reset the Decoder's state and parse a packet starting at the buffer's position.
+	 * If the buffer holds the whole packet, its position is left just after it; otherwise
+	 * the buffer is left as it was, so the caller can fall back to decoding from a stream
+	 * once more data has arrived. There is no resync here, a caller wanting one should
+	 * also fall back to the stream on error.
+	 *
+	 * @param buffer
+	 * @return true if a packet was parsed, false if the buffer ends part way through one
+	 * @throws ContentDecodingException if the data is not a valid packet
+	 */
+	public final boolean beginDecoding(ByteBuffer buffer) throws ContentDecodingException {
+		int start = buffer.position();
+		try {
+			setupForDecoding(buffer);
+		} catch (BufferUnderflowException bue) {
+			buffer.position(start);
+			return false;
+		} catch (ContentDecodingException cde) {
+			buffer.position(start);
+			throw cde;
+		}
+		if (_retainEncoding) {
+			// One bulk copy of the whole packet rather than retaining it piece by piece
+			ensureEncodingCapacity(_position);
+			ByteBuffer packet = buffer.duplicate();
+			packet.position(start);
+			packet.get(_encoding, 0, _position);
+		}
+		return true;
+	}
+
+	/**
+	 * Initial parsing into elements from a buffer
+	 * @param buffer
+	 * @throws ContentDecodingException
+	 * @throws BufferUnderflowException if the buffer ends before the packet does
+	 */
+	private final void setupForDecoding(ByteBuffer buffer) throws ContentDecodingException {
+		initialize();
+
+		int opentags = 0;
+
+		do {
+			int	index = readTypeAndValue(buffer);
+			byte type = _elements_type[index];
+
+			if( type == BinaryXMLCodec.XML_DTAG ) {
+				opentags++;
+				continue;
+			}
+
+			if( type  == BinaryXMLCodec.XML_CLOSE ) {
+				opentags--;
+				continue;
+			}
+
+			// A BLOB or UDATA
+			byte [] blob = _elements_blob[index];
+			buffer.get(blob);
+			_bytesRead += blob.length;
+			_position += blob.length;
+		} while(opentags > 0);
+	}
+
 	/**
 	 * This method does the initial parsing into elements
 	 * @param istream
@@ -220,8 +331,13 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 	private byte [] _elements_type = new byte[ELEM_FIRST];
 	private int [] _elements_value = new int[ELEM_FIRST];
 	private byte [][] _elements_blob = new byte[ELEM_FIRST][];
+	private int [] _elements_offset = new int[ELEM_FIRST];
 	private int _bytesRead = 0;
 
+	// Offset in the packet of the next byte to be read, and the retained bytes if any
+	private int _position = 0;
+	private byte [] _encoding = null;
+
 	// BLOB and UDATA now go in their own buffers, so don't really need the full BLOCKSIZE
 
 //	private final byte [] _bytes = new byte[_blockSize];
@@ -235,6 +351,30 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 	private void initialize() {
 		_elementCount = 0;
 		_parsingElement = 0;
+		_position = 0;
+	}
+
+	/**
+	 * Add bytes read to the retained encoding, growing it if needed
+	 */
+	private void retain(byte [] buffer, int length) {
+		ensureEncodingSpace(length);
+		System.arraycopy(buffer, 0, _encoding, _position, length);
+	}
+
+	private void ensureEncodingSpace(int length) {
+		ensureEncodingCapacity(_position + length);
+	}
+
+	/**
+	 * Make sure the retained encoding can hold capacity bytes in all
+	 * @param capacity
+	 */
+	private void ensureEncodingCapacity(int capacity) {
+		if (null == _encoding)
+			_encoding = new byte[Math.max(CCNNetworkManager.MAX_PAYLOAD, capacity)];
+		else if (capacity > _encoding.length)
+			_encoding = Arrays.copyOf(_encoding, Math.max(_encoding.length * 2, capacity));
 	}
 
 	/**
@@ -260,6 +400,9 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 		} while(read < buffer.length);
 
 		_bytesRead += read;
+		if (_retainEncoding)
+			retain(buffer, read);
+		_position += read;
 
 		// now advance the buffers position
 //		_buffer.position(offset + read);
@@ -275,10 +418,16 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 	private final int readTypeAndValue(final InputStream istream) throws IOException {
 		byte typ = -1;
 		long val = 0;
+		int offset = _position;
 
 		int next;
 		boolean more = false;
 		while( (next = istream.read()) > -1 ) {
+			if (_retainEncoding) {
+				ensureEncodingSpace(1);
+				_encoding[_position] = (byte)next;
+			}
+			_position++;
 
 			// detect the CLOSE marker
 			if( !more && (0 == next) ) {
@@ -319,7 +468,62 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 //		System.out.println(String.format("Decode tag 0x%02x value 0x%02x pos %d", typ, val, pos));
 
 		int index = _elementCount;
-		setElement(index, typ, (int)val, buffer);
+		setElement(index, typ, (int)val, buffer, offset);
+		_elementCount++;
+		return index;
+	}
+
+	/**
+	 * Parse the type and value from a buffer, as readTypeAndValue(InputStream)
+	 * but without retaining the encoding, which is copied in one go at the end.
+	 * @param buffer
+	 * @return the index in to the _element_X arrays
+	 * @throws ContentDecodingException If not DTAG or BLOB/UDATA or CLOSE (END)
+	 * @throws BufferUnderflowException if the buffer ends first
+	 */
+	private final int readTypeAndValue(final ByteBuffer buffer) throws ContentDecodingException {
+		byte typ;
+		long val = 0;
+		int offset = _position;
+
+		while (true) {
+			int next = buffer.get() & BinaryXMLCodec.BYTE_MASK;
+			_position++;
+
+			// detect the CLOSE marker
+			if( 0 == next && offset + 1 == _position ) {
+				typ = 0;
+				break;
+			}
+
+			if (0 == (next & BinaryXMLCodec.XML_TT_NO_MORE)) {
+				val = val << BinaryXMLCodec.XML_REG_VAL_BITS;
+				val |= (next & BinaryXMLCodec.XML_REG_VAL_MASK);
+			} else {
+				// last byte
+				typ = (byte) (next & BinaryXMLCodec.XML_TT_MASK);
+				val = val << BinaryXMLCodec.XML_TT_VAL_BITS;
+				val |= ((next >>> BinaryXMLCodec.XML_TT_BITS) & BinaryXMLCodec.XML_TT_VAL_MASK);
+				break;
+			}
+		}
+
+		// sanity check.  tag needs to be either a DTAG or a BLOB
+		if( typ != BinaryXMLCodec.XML_DTAG && typ != BinaryXMLCodec.XML_BLOB &&
+				typ != BinaryXMLCodec.XML_UDATA && typ != BinaryXMLCodec.XML_CLOSE )
+			throw new ContentDecodingException("Type value invalid: " + typ);
+
+		byte [] blob = null;
+		if( typ == BinaryXMLCodec.XML_BLOB || typ == BinaryXMLCodec.XML_UDATA ) {
+			if (val < 0 || val > CCNNetworkManager.MAX_PAYLOAD)
+				throw new ContentDecodingException("Invalid blob size: " + val);
+			if (val > buffer.remaining())
+				throw new BufferUnderflowException();
+			blob = new byte[(int) val];
+		}
+
+		int index = _elementCount;
+		setElement(index, typ, (int)val, blob, offset);
 		_elementCount++;
 		return index;
 	}
@@ -330,8 +534,9 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 	 * @param typ
 	 * @param val
 	 * @param buffer
+	 * @param offset
 	 */
-	private void setElement(int index, byte typ, int val, byte[] buffer) {
+	private void setElement(int index, byte typ, int val, byte[] buffer, int offset) {
 		try {
 			_elements_type[index]  = typ;
 		} catch (ArrayIndexOutOfBoundsException aiobe) {
@@ -346,12 +551,16 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 			byte[][] newBlobs = new byte[_currentElements][];
 			System.arraycopy(_elements_blob, 0, newBlobs, 0, prevElements);
 			_elements_blob = newBlobs;
+			int[] newOffsets = new int[_currentElements];
+			System.arraycopy(_elements_offset, 0, newOffsets, 0, prevElements);
+			_elements_offset = newOffsets;
 			_elements_type[index] = typ;
 			if (Log.isLoggable(Log.FAC_ENCODING, Level.INFO))
 				Log.info(Log.FAC_ENCODING, "Reset decode array sizes to {0}", _currentElements);
 		}
 		_elements_value[index] = val;
 		_elements_blob[index]  = buffer;
+		_elements_offset[index] = offset;
 	}
 
 	/**
@@ -391,8 +600,8 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 
 		// This seems a little bogus but it emulates what the original code did...
 		if (type == BinaryXMLCodec.XML_BLOB) {
-			for (int i = _parsingElement; i < _elementCount; i++) {
-				setElement(i + 1, _elements_type[i], _elements_value[i], _elements_blob[i]);
+			for (int i = _elementCount - 1; i >= _parsingElement; i--) {
+				setElement(i + 1, _elements_type[i], _elements_value[i], _elements_blob[i], _elements_offset[i]);
 			}
 			_elementCount++;
 			_elements_blob[_parsingElement] = new byte[0];
@@ -67,6 +67,19 @@ public class BinaryXMLEncoder extends GenericXMLEncoder implements XMLEncoder {
 		}
 	}
 
+	/**
+	 * Write out an element that is already ccnb encoded, as from an earlier encoding
+	 * of the same object.
+	 * @param encoded the complete encoding of the element
+	 */
+	public void writeEncoded(byte [] encoded) throws ContentEncodingException {
+		try {
+			_ostream.write(encoded);
+		} catch (IOException e) {
+			throw new ContentEncodingException(e.getMessage(), e);
+		}
+	}
+
 	public void writeUString(String utf8Content) throws ContentEncodingException {
 		try {
 			BinaryXMLCodec.encodeUString(_ostream, utf8Content);
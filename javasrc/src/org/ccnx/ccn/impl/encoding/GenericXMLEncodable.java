@@ -17,11 +17,14 @@
 
 package org.ccnx.ccn.impl.encoding;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
+import org.ccnx.ccn.impl.support.ByteBufferInputStream;
+import org.ccnx.ccn.impl.support.ByteBufferOutputStream;
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.io.content.ContentDecodingException;
 import org.ccnx.ccn.io.content.ContentEncodingException;
@@ -39,6 +42,9 @@ import org.ccnx.ccn.io.content.ContentEncodingException;
  * This class handles most of the generic methods required by XMLEncodable, leaving
  * only a very small number that subclasses need to actually implement.
  * 
+ * Encoders and decoders are reused by each thread through XMLCodecFactory.acquireEncoder
+ * and acquireDecoder, so encoding or decoding a packet doesn't make new ones.
+ * 
  * @see XMLEncodable
  */
 public abstract class GenericXMLEncodable implements XMLEncodable {
@@ -56,15 +62,25 @@ public abstract class GenericXMLEncodable implements XMLEncodable {
 	 */
 	protected GenericXMLEncodable() {}
 	
+	// Don't keep scratch buffers grown for unusually large objects
+	protected static final int MAX_SCRATCH_SIZE = 65536;
+
+	// A scratch stream for encode(), taken while in use so a nested encode() gets its own
+	protected static ThreadLocal<ByteArrayOutputStream> _scratchStream = new ThreadLocal<ByteArrayOutputStream>();
+
  	public void decode(InputStream istream) throws ContentDecodingException {
  		decode(istream, null);
  	}
  	
 	public void decode(InputStream istream, String codec) throws ContentDecodingException {
-		XMLDecoder decoder = XMLCodecFactory.getDecoder(codec);
-		decoder.beginDecoding(istream);
-		decode(decoder);
-		decoder.endDecoding();
+		XMLDecoder decoder = XMLCodecFactory.acquireDecoder(codec);
+		try {
+			decoder.beginDecoding(istream);
+			decode(decoder);
+			decoder.endDecoding();
+		} finally {
+			XMLCodecFactory.releaseDecoder(codec, decoder);
+		}
 	}
  	
 	public void decode(byte [] content) throws ContentDecodingException {
@@ -72,19 +88,59 @@ public abstract class GenericXMLEncodable implements XMLEncodable {
 	}
 
 	public void decode(byte [] content, String codec) throws ContentDecodingException {
- 		ByteArrayInputStream bais = new ByteArrayInputStream(content);
- 		decode(bais, codec);
+		decode(ByteBuffer.wrap(content), codec);
  	}
+
+	/**
+	 * Decode this object as the top-level item in a new XML document,
+	 * reading it from a network buffer. Reads document start and end. Assumes
+	 * default encoding.
+	 * @param buf buffer to read from, starting at its position; the position is
+	 * 	moved past what was read
+	 * @throws ContentDecodingException if there is an error decoding the content
+	 */
+	public void decode(ByteBuffer buf) throws ContentDecodingException {
+		decode(buf, null);
+	}
+
+	/**
+	 * Decode this object as the top-level item in a new XML document,
+	 * reading it from a network buffer. Reads document start and end.
+	 * The binary codec parses straight from the buffer, others read it as a stream.
+	 * @param buf buffer to read from, starting at its position; the position is
+	 * 	moved past what was read
+	 * @param codec the codec to use; must be recognized by XMLCodecFactory
+	 * @throws ContentDecodingException if there is an error decoding the content
+	 */
+	public void decode(ByteBuffer buf, String codec) throws ContentDecodingException {
+		XMLDecoder decoder = XMLCodecFactory.acquireDecoder(codec);
+		try {
+			if (decoder instanceof BinaryXMLDecoder) {
+				if (!((BinaryXMLDecoder)decoder).beginDecoding(buf))
+					throw new ContentDecodingException("Unexpected EOF");
+			} else {
+				decoder.beginDecoding(new ByteBufferInputStream(buf));
+			}
+			decode(decoder);
+			decoder.endDecoding();
+		} finally {
+			XMLCodecFactory.releaseDecoder(codec, decoder);
+		}
+	}
 	
 	public void encode(OutputStream ostream) throws ContentEncodingException {
 		encode(ostream, null);
 	}
 
 	public void encode(OutputStream ostream, String codec) throws ContentEncodingException {
-		XMLEncoder encoder = XMLCodecFactory.getEncoder(codec);
-		encoder.beginEncoding(ostream);
-		encode(encoder);
-		encoder.endEncoding();	
+		XMLEncoder encoder = XMLCodecFactory.acquireEncoder(codec);
+		try {
+			encoder.beginEncoding(ostream);
+			encode(encoder);
+			encoder.endEncoding();
+		} finally {
+			XMLCodecFactory.releaseEncoder(codec, encoder);
+		}
 	}
 
 	public byte [] encode() throws ContentEncodingException {
@@ -92,9 +148,59 @@ public abstract class GenericXMLEncodable implements XMLEncodable {
 	}
 	
 	public byte [] encode(String codec) throws ContentEncodingException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		encode(baos, codec);
-		return baos.toByteArray();
+		ByteArrayOutputStream baos = _scratchStream.get();
+		if (null == baos)
+			baos = new ByteArrayOutputStream();
+		else
+			_scratchStream.set(null);
+		try {
+			encode(baos, codec);
+			return baos.toByteArray();
+		} finally {
+			if (baos.size() <= MAX_SCRATCH_SIZE) {
+				baos.reset();
+				_scratchStream.set(baos);
+			}
+		}
+	}
+
+	/**
+	 * Encode this object as the top-level item in a new XML document into a
+	 * caller's buffer, starting at its position, so that the encoding needn't be
+	 * copied out of a new array. Writes document start and end. Assumes default encoding.
+	 * @param buf buffer to encode to; its position is moved past the encoding
+	 * @throws ContentEncodingException if there is an error encoding the object
+	 * @throws BufferOverflowException if the encoding doesn't fit, in which
+	 * 	case the position of the buffer is unchanged
+	 */
+	public void encode(ByteBuffer buf) throws ContentEncodingException {
+		encode(buf, null);
+	}
+
+	/**
+	 * Encode this object as the top-level item in a new XML document into a
+	 * caller's buffer. Writes document start and end.
+	 * @param buf buffer to encode to; its position is moved past the encoding
+	 * @param codec the codec to use; must be recognized by XMLCodecFactory
+	 * @throws ContentEncodingException if there is an error encoding the object
+	 * @throws BufferOverflowException if the encoding doesn't fit, in which
+	 * 	case the position of the buffer is unchanged
+	 */
+	public void encode(ByteBuffer buf, String codec) throws ContentEncodingException {
+		int start = buf.position();
+		ByteBufferOutputStream ostream = new ByteBufferOutputStream(buf);
+		try {
+			encode(ostream, codec);
+		} catch (BufferOverflowException boe) {
+			buf.position(start);
+			throw boe;
+		} catch (ContentEncodingException cee) {
+			buf.position(start);
+			// Some encoders wrap what the stream throws
+			if (ostream.overflowed())
+				throw new BufferOverflowException();
+			throw cee;
+		}
 	}
 
 	/**
@@ -26,6 +26,11 @@ import org.ccnx.ccn.impl.support.Log;
 /**
  * Factory class that given a string codec name, returns the XMLEncoder and XMLDecoder
  * that handle that codec. Allows new codecs to be registered on the fly for extensibility.
+ *
+ * getEncoder and getDecoder make a new instance each time. Code that encodes or decodes
+ * a whole document at a time can instead acquire an instance kept by the calling thread
+ * and release it when done, as GenericXMLEncodable does. Acquiring again before releasing,
+ * as when an object's encoder encodes a nested object separately, gets a new instance.
  */
 public class XMLCodecFactory {
 
@@ -54,6 +59,20 @@ public class XMLCodecFactory {
 	protected static HashMap<String,Class<? extends XMLEncoder>> _registeredEncoders;
 	protected static HashMap<String,Class<? extends XMLDecoder>> _registeredDecoders;
 
+	// Released instances kept by each thread, by codec name
+	protected static ThreadLocal<HashMap<String,XMLEncoder>> _threadEncoders = new ThreadLocal<HashMap<String,XMLEncoder>>() {
+		@Override
+		protected HashMap<String,XMLEncoder> initialValue() {
+			return new HashMap<String,XMLEncoder>();
+		}
+	};
+	protected static ThreadLocal<HashMap<String,XMLDecoder>> _threadDecoders = new ThreadLocal<HashMap<String,XMLDecoder>>() {
+		@Override
+		protected HashMap<String,XMLDecoder> initialValue() {
+			return new HashMap<String,XMLDecoder>();
+		}
+	};
+
 	public static void registerEncoder(String name, Class<? extends XMLEncoder> encoderClass) {
 		_registeredEncoders.put(name, encoderClass);
 	}
@@ -146,6 +165,77 @@ public class XMLCodecFactory {
 		return decoder;
 	}
 
+	/**
+	 * Get an encoder for the specified codec for use by this thread until it is released
+	 * with releaseEncoder. Reuses the last one this thread released if there is one.
+	 * @param codecName the codec, or null for the default codec
+	 * @return the encoder, or null if the codec is unknown
+	 */
+	public static XMLEncoder acquireEncoder(String codecName) {
+		if (null == codecName)
+			codecName = getDefaultCodecName();
+		XMLEncoder encoder = _threadEncoders.get().remove(codecName);
+		if (null != encoder && encoder.getClass() == getEncoderClass(codecName))
+			return encoder;
+		return getEncoder(codecName);
+	}
+
+	/**
+	 * Give back an encoder from acquireEncoder for reuse by this thread. The caller
+	 * must not use it again.
+	 * @param codecName the codec it was acquired for
+	 * @param encoder
+	 */
+	public static void releaseEncoder(String codecName, XMLEncoder encoder) {
+		if (null == encoder)
+			return;
+		if (null == codecName)
+			codecName = getDefaultCodecName();
+		GenericXMLEncoder genericEncoder = (encoder instanceof GenericXMLEncoder) ? (GenericXMLEncoder)encoder : null;
+		if (null != genericEncoder) {
+			// Don't keep a dictionary someone pushed and didn't pop
+			if (null != genericEncoder._dictionaryStack && !genericEncoder._dictionaryStack.isEmpty())
+				return;
+			genericEncoder._ostream = null;
+		}
+		_threadEncoders.get().put(codecName, encoder);
+	}
+
+	/**
+	 * Get a decoder for the specified codec for use by this thread until it is released
+	 * with releaseDecoder. Reuses the last one this thread released if there is one.
+	 * @param codecName the codec, or null for the default codec
+	 * @return the decoder, or null if the codec is unknown
+	 */
+	public static XMLDecoder acquireDecoder(String codecName) {
+		if (null == codecName)
+			codecName = getDefaultCodecName();
+		XMLDecoder decoder = _threadDecoders.get().remove(codecName);
+		if (null != decoder && decoder.getClass() == getDecoderClass(codecName))
+			return decoder;
+		return getDecoder(codecName);
+	}
+
+	/**
+	 * Give back a decoder from acquireDecoder for reuse by this thread. The caller
+	 * must not use it again.
+	 * @param codecName the codec it was acquired for
+	 * @param decoder
+	 */
+	public static void releaseDecoder(String codecName, XMLDecoder decoder) {
+		if (null == decoder)
+			return;
+		if (null == codecName)
+			codecName = getDefaultCodecName();
+		GenericXMLDecoder genericDecoder = (decoder instanceof GenericXMLDecoder) ? (GenericXMLDecoder)decoder : null;
+		if (null != genericDecoder) {
+			if (null != genericDecoder._dictionaryStack && !genericDecoder._dictionaryStack.isEmpty())
+				return;
+			genericDecoder._istream = null;
+		}
+		_threadDecoders.get().put(codecName, decoder);
+	}
+
 	public static Class<? extends XMLEncoder> getEncoderClass(String codecName) {
 		if (null == codecName)
 			return getDefaultEncoderClass();
@@ -0,0 +1,143 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl.repo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+
+/**
+ * A size bounded cache of decoded content, so that popular content can be served
+ * without reading and decoding it from the store each time it is asked for.
+ *
+ * Content is keyed by its full name including the digest, so an entry can never be stale -
+ * the only content that can have that name is the content the entry holds. The least recently
+ * used entries are evicted when the total size of the cached content goes over the limit.
+ * Content larger than an eighth of the limit is not cached.
+ *
+ * Hits, misses and evictions are counted in the repository server's statistics if they have been set.
+ */
+public class ContentObjectCache {
+
+	// Allowance for the name, signature and signed info of an object
+	public static final int OBJECT_OVERHEAD = 512;
+
+	protected final long _maxSize;
+	protected long _size = 0;
+	protected CCNEnumStats<RepositoryServer.StatsEnum> _stats = null;
+
+	// Access ordered so the eldest entry is the least recently used
+	protected final LinkedHashMap<ContentName, ContentObject> _cache = new LinkedHashMap<ContentName, ContentObject>(256, 0.75f, true);
+
+	/**
+	 * @param maxSize the limit on the total size of cached content in bytes
+	 */
+	public ContentObjectCache(long maxSize) {
+		_maxSize = maxSize;
+	}
+
+	public void setStats(CCNEnumStats<RepositoryServer.StatsEnum> stats) {
+		_stats = stats;
+	}
+
+	/**
+	 * @param fullName name of the content including digest
+	 * @return the cached content or null if it isn't cached
+	 */
+	public ContentObject get(ContentName fullName) {
+		ContentObject content;
+		synchronized (_cache) {
+			content = _cache.get(fullName);
+		}
+		if (null != _stats)
+			_stats.increment((null == content) ? RepositoryServer.StatsEnum.CacheMisses : RepositoryServer.StatsEnum.CacheHits);
+		return content;
+	}
+
+	/**
+	 * Add content to the cache, evicting the least recently used content if needed
+	 * @param fullName name of the content including digest
+	 * @param content
+	 */
+	public void put(ContentName fullName, ContentObject content) {
+		long size = sizeOf(content);
+		if (size > _maxSize / 8)
+			return;
+		int evicted = 0;
+		synchronized (_cache) {
+			ContentObject old = _cache.put(fullName, content);
+			if (null != old)
+				_size -= sizeOf(old);
+			_size += size;
+			Iterator<Map.Entry<ContentName, ContentObject>> it = _cache.entrySet().iterator();
+			while (_size > _maxSize && it.hasNext()) {
+				Map.Entry<ContentName, ContentObject> eldest = it.next();
+				_size -= sizeOf(eldest.getValue());
+				it.remove();
+				evicted++;
+			}
+		}
+		if (null != _stats && evicted > 0)
+			_stats.increment(RepositoryServer.StatsEnum.CacheEvictions, evicted);
+	}
+
+	/**
+	 * Remove content from the cache
+	 * @param fullName name of the content including digest
+	 */
+	public void remove(ContentName fullName) {
+		synchronized (_cache) {
+			ContentObject old = _cache.remove(fullName);
+			if (null != old)
+				_size -= sizeOf(old);
+		}
+	}
+
+	public void clear() {
+		synchronized (_cache) {
+			_cache.clear();
+			_size = 0;
+		}
+	}
+
+	/**
+	 * @return the number of objects in the cache
+	 */
+	public int count() {
+		synchronized (_cache) {
+			return _cache.size();
+		}
+	}
+
+	/**
+	 * @return the total size of the cached content as counted against the limit
+	 */
+	public long size() {
+		synchronized (_cache) {
+			return _size;
+		}
+	}
+
+	protected static long sizeOf(ContentObject content) {
+		return content.contentLength() + OBJECT_OVERHEAD;
+	}
+}
@@ -17,12 +17,80 @@
 
 package org.ccnx.ccn.impl.repo;
 
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.ccnx.ccn.protocol.SignedInfo.ContentType;
+
 /**
  * ContentRef is what a ContentTree holds.  Users of ContentTree should extend
  * ContentRef to provide the fields they require
  * 
+ * ContentRef itself holds the fields of the content that are needed to match it
+ * against an interest, beyond the name (including digest) held by the tree. This
+ * lets the tree reject candidates without reading them from the store. They are
+ * set by ContentTree when content is inserted.
+ * 
  * @see ContentTree
  */
 public abstract class ContentRef {
-	// no fields
+	PublisherPublicKeyDigest publisher = null;
+	ContentType type = null;			// null if we don't have metadata
+	long timestamp = 0;					// signing time as CCNTime binary time
+	int freshnessSeconds = -1;			// -1 if not set
+
+	/**
+	 * Set the metadata from the content's SignedInfo
+	 * @param signedInfo
+	 */
+	public void setMetadata(SignedInfo signedInfo) {
+		publisher = signedInfo.getPublisherKeyID();
+		timestamp = (null == signedInfo.getTimestamp()) ? 0 : signedInfo.getTimestamp().toBinaryTimeAsLong();
+		freshnessSeconds = signedInfo.emptyFreshnessSeconds() ? -1 : signedInfo.getFreshnessSeconds();
+		type = signedInfo.getType();
+	}
+
+	/**
+	 * Set the metadata, for instance from a saved index
+	 */
+	public void setMetadata(PublisherPublicKeyDigest publisher, ContentType type, long timestamp, int freshnessSeconds) {
+		this.publisher = publisher;
+		this.timestamp = timestamp;
+		this.freshnessSeconds = freshnessSeconds;
+		this.type = type;
+	}
+
+	/**
+	 * @return true if the content can be matched without reading it
+	 */
+	public boolean hasMetadata() {
+		return null != type;
+	}
+
+	public PublisherPublicKeyDigest getPublisher() {
+		return publisher;
+	}
+
+	public ContentType getType() {
+		return type;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public int getFreshnessSeconds() {
+		return freshnessSeconds;
+	}
+
+	/**
+	 * Could this be the same content as ref? If both have metadata and it differs they
+	 * can't be, otherwise the content has to be compared.
+	 */
+	public boolean mayEqual(ContentRef ref) {
+		if (!hasMetadata() || !ref.hasMetadata())
+			return true;
+		if (type != ref.type || timestamp != ref.timestamp || freshnessSeconds != ref.freshnessSeconds)
+			return false;
+		return (null == publisher) ? (null == ref.publisher) : publisher.equals(ref.publisher);
+	}
 }
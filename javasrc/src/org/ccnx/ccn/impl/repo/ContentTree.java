@@ -19,6 +19,7 @@ package org.ccnx.ccn.impl.repo;
 
 import static org.ccnx.ccn.profiles.CommandMarker.COMMAND_MARKER_BASIC_ENUMERATION;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Date;
@@ -52,6 +53,29 @@ public class ContentTree {
 		public ContentObject get(ContentRef ref);
 	}
 	
+	/**
+	 * A ContentGetter that is also given the full name of the content, for instance
+	 * so it can cache content by name.
+	 */
+	public interface NamedContentGetter extends ContentGetter {
+		/**
+		 * @param fullName name of the content including digest
+		 * @param ref
+		 */
+		public ContentObject get(ContentName fullName, ContentRef ref);
+	}
+
+	/**
+	 * Called for each piece of content in the tree by visit()
+	 */
+	public interface ContentVisitor {
+		/**
+		 * @param name the full name of the content including its digest
+		 * @param ref the reference stored for the content
+		 */
+		public void visit(ContentName name, ContentRef ref) throws IOException;
+	}
+	
 	/**
 	 * TreeNode is the data structure representing one
 	 * node of a tree which may have children and/or content.
@@ -347,7 +371,28 @@ public class ContentTree {
 	 * @return - true if content is not exact duplicate of existing content.
 	 */
 	public boolean insert(ContentObject content, ContentRef ref, long ts, ContentGetter getter, NameEnumerationResponse ner) {
-		final ContentName name = content.fullName();
+		if (null != content.signedInfo())
+			ref.setMetadata(content.signedInfo());
+		return insert(content.fullName(), content, ref, ts, getter, ner);
+	}
+
+	/**
+	 * Insert entry for content we know only by name, for instance when reloading a saved index.
+	 * No check is made for duplicate content. The caller should set the metadata in ref if
+	 * it has it.
+	 * 
+	 * @param name the full name of the content including its digest
+	 * @param ref pointer to position of data in the file storage
+	 * @param ts last modification time of the data
+	 * @param ner NameEnumerationResponse object to populate if the insert occurs at a parent
+	 *   with the interest flag set
+	 * @return true
+	 */
+	public boolean insert(ContentName name, ContentRef ref, long ts, NameEnumerationResponse ner) {
+		return insert(name, null, ref, ts, null, ner);
+	}
+
+	protected boolean insert(final ContentName name, ContentObject content, ContentRef ref, long ts, ContentGetter getter, NameEnumerationResponse ner) {
 		if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
 			Log.fine(Log.FAC_REPO, "inserting content: {0}", name);
 		}
@@ -430,14 +475,18 @@ public class ContentTree {
 		}
 		
 		// Check for duplicate content
-		if (!added) {
+		if (!added && null != content) {
 			if (null != node.oneContent) {
-				ContentObject prev = getter.get(node.oneContent);
-				if (null != prev && content.equals(prev))
-					return false;
+				if (ref.mayEqual(node.oneContent)) {
+					ContentObject prev = fetch(name, node.oneContent, getter);
+					if (null != prev && content.equals(prev))
+						return false;
+				}
 			} else if (null != node.content) {
 				for (ContentRef oldRef : node.content) {
-					ContentObject prev = getter.get(oldRef);
+					if (!ref.mayEqual(oldRef))
+						continue;
+					ContentObject prev = fetch(name, oldRef, getter);
 					if (null != prev && content.equals(prev))
 						return false;
 				}
@@ -460,11 +509,41 @@ public class ContentTree {
 			node.oneContent = null;
 		}
 		if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
-			Log.fine(Log.FAC_REPO, "Inserted: {0}", content.name());
+			Log.fine(Log.FAC_REPO, "Inserted: {0}", name);
 		}
 		return true;
 	}
 
+	/**
+	 * Call visitor for every piece of content in the tree, in name order.
+	 * Content inserted while this is running may or may not be seen.
+	 * 
+	 * @param visitor
+	 * @throws IOException if the visitor throws one
+	 */
+	public void visit(ContentVisitor visitor) throws IOException {
+		visitRecurse(visitor, _root, new ContentName());
+	}
+
+	protected void visitRecurse(ContentVisitor visitor, TreeNode node, ContentName nodeName) throws IOException {
+		ArrayList<ContentRef> refs = new ArrayList<ContentRef>();
+		ArrayList<TreeNode> children = new ArrayList<TreeNode>();
+		synchronized (node) {
+			if (null != node.oneContent)
+				refs.add(node.oneContent);
+			else if (null != node.content)
+				refs.addAll(node.content);
+			if (null != node.oneChild)
+				children.add(node.oneChild);
+			else if (null != node.children)
+				children.addAll(node.children.keySet());
+		}
+		for (ContentRef ref : refs)
+			visitor.visit(nodeName, ref);
+		for (TreeNode child : children)
+			visitRecurse(visitor, child, new ContentName(nodeName, child.component));
+	}
+
 	/**
 	 * Find the node for the given name
 	 * 
@@ -518,6 +597,26 @@ public class ContentTree {
 		}
 	}
 	
+	/**
+	 * Return a copy of the refs for content with exactly the given name
+	 * 
+	 * @param name ContentName to lookup, including digest
+	 * @return the refs, empty if there are none
+	 */
+	public List<ContentRef> getRefs(ContentName name) {
+		ArrayList<ContentRef> result = new ArrayList<ContentRef>();
+		TreeNode node = lookupNode(name, name.count());
+		if (null != node) {
+			synchronized (node) {
+				if (null != node.oneContent)
+					result.add(node.oneContent);
+				else if (null != node.content)
+					result.addAll(node.content);
+			}
+		}
+		return result;
+	}
+	
 	/**
 	 * Dump current names to an output file for debugging
 	 * 
@@ -598,15 +697,12 @@ public class ContentTree {
 		if (initialMatch) {
 			synchronized(node) {
 				if (null != node.oneContent) {
-					ContentObject cand = getter.get(node.oneContent);
-					if (interest.matches(cand)) {
-						return cand;
-					}
+					return getMatch(interest, nodeName, node.oneContent, getter);
 				} else {
 					assert(null != node.content);
 					for (ContentRef ref : node.content) {
-						ContentObject cand = getter.get(ref);
-						if (interest.matches(cand)) {
+						ContentObject cand = getMatch(interest, nodeName, ref, getter);
+						if (null != cand) {
 							return cand;
 						}
 					}
@@ -616,6 +712,35 @@ public class ContentTree {
 		return null;
 	}
 	
+	/**
+	 * Get the content for a ref if it matches the interest. If we have the metadata for the ref
+	 * we can decide whether it matches without reading the content.
+	 * 
+	 * @param interest - interest to match against
+	 * @param fullName - name of the content including digest
+	 * @param ref	   - the ref
+	 * @param getter   - getter to get actual data
+	 * @return matching ContentObject if matches, null otherwise
+	 */
+	private ContentObject getMatch(Interest interest, ContentName fullName, ContentRef ref, ContentGetter getter) {
+		if (ref.hasMetadata()) {
+			if (!interest.matchesFullName(fullName, ref.getPublisher()))
+				return null;
+			return fetch(fullName, ref, getter);
+		}
+		ContentObject cand = fetch(fullName, ref, getter);
+		if (null != cand && interest.matches(cand)) {
+			return cand;
+		}
+		return null;
+	}
+	
+	private ContentObject fetch(ContentName fullName, ContentRef ref, ContentGetter getter) {
+		if (getter instanceof NamedContentGetter)
+			return ((NamedContentGetter)getter).get(fullName, ref);
+		return getter.get(ref);
+	}
+	
 	/**
 	 * Return all names with a prefix matching the name within the interest for name enumeration.
 	 * 
@@ -714,11 +839,9 @@ public class ContentTree {
 			List<ContentRef> found = lookup(interest.name());
 			if (found!=null) {
 				for (ContentRef ref : found) {
-					ContentObject cand = getter.get(ref);
+					ContentObject cand = getMatch(interest, interest.name(), ref, getter);
 					if (null != cand) {
-						if (interest.matches(cand)) {
-							return cand;
-						}
+						return cand;
 					}
 				}
 			}
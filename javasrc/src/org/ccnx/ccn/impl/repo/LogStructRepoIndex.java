@@ -0,0 +1,414 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl.repo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.ccnx.ccn.impl.repo.LogStructRepoStore.FileRef;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.SignedInfo;
+
+/**
+ * Saves the ContentTree of a LogStructRepoStore in its meta directory so that it doesn't
+ * have to decode every object in every repository file when it starts up.
+ *
+ * The index is kept as a checkpoint, which holds the name, file position and matching metadata
+ * (see ContentRef) of every object and the length and unused bytes of each repository file
+ * covered by it, and a journal of the objects saved since the checkpoint was written. A
+ * checkpoint is written on clean shutdown, after compaction and whenever the repository had
+ * to scan data to build its index at startup. After a crash, the checkpoint and journal are
+ * loaded and only data written after the last journal entry needs to be scanned.
+ *
+ * If the checkpoint doesn't match the repository files (for instance because a file has been
+ * removed or truncated) it is ignored and the repository is scanned in full. Removing the
+ * index files from the meta directory also forces a full scan.
+ */
+public class LogStructRepoIndex {
+
+	public static final String CHECKPOINT_FILE = "index";
+	public static final String JOURNAL_FILE = "indexJournal";
+
+	protected static final int INDEX_MAGIC = 0x43434e49;	// "CCNI"
+	protected static final int INDEX_VERSION = 3;
+
+	protected static final byte RECORD = 1;
+	protected static final byte UNINDEXED = 2;	// Data saved but not added to the index
+	protected static final byte END = 0;
+
+	protected File _checkpointFile;
+	protected File _journalFile;
+	protected DataOutputStream _journal = null;
+	protected FileOutputStream _journalOut = null;
+	protected boolean _loadedClean = false;
+	protected Object _checkpointLock = new Object();
+
+	// Share publisher objects between loaded refs - there are usually very few publishers
+	protected HashMap<PublisherPublicKeyDigest, PublisherPublicKeyDigest> _publishers = new HashMap<PublisherPublicKeyDigest, PublisherPublicKeyDigest>();
+
+	/**
+	 * @param metaDir the repository's meta directory
+	 */
+	public LogStructRepoIndex(File metaDir) {
+		_checkpointFile = new File(metaDir, CHECKPOINT_FILE);
+		_journalFile = new File(metaDir, JOURNAL_FILE);
+	}
+
+	/**
+	 * What the index knows about a repository file
+	 */
+	public static class FileInfo {
+		public long length;			// bytes at the start of the file covered by the index
+		public long deadBytes;		// bytes of objects that are not in the index
+
+		public FileInfo(long length, long deadBytes) {
+			this.length = length;
+			this.deadBytes = deadBytes;
+		}
+	}
+
+	/**
+	 * Load the saved index into a tree.
+	 *
+	 * @param tree the tree to load into
+	 * @param files the repository files by index
+	 * @return what the loaded index covers of each file. Files that are not in the map
+	 * 	must be scanned in full.
+	 * @throws IOException if the saved index is corrupt. The tree may have been partially
+	 * 	loaded and should be discarded.
+	 */
+	public Map<Integer, FileInfo> load(ContentTree tree, Map<Integer, File> files) throws IOException {
+		HashMap<Integer, FileInfo> covered = new HashMap<Integer, FileInfo>();
+		_loadedClean = false;
+		if (!_checkpointFile.exists())
+			return covered;
+
+		int count = 0;
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(_checkpointFile), 65536));
+		try {
+			readHeader(dis);
+			int nfiles = dis.readInt();
+			for (int i = 0; i < nfiles; i++) {
+				int id = dis.readInt();
+				long length = dis.readLong();
+				long deadBytes = dis.readLong();
+				File file = files.get(id);
+				if (null == file || file.length() < length) {
+					Log.warning(Log.FAC_REPO, "Saved index does not match repository file {0} - ignoring it", id);
+					covered.clear();
+					return covered;
+				}
+				covered.put(id, new FileInfo(length, deadBytes));
+			}
+			while (dis.readByte() == RECORD) {
+				FileRef ref = new FileRef();
+				ref.id = dis.readInt();
+				ref.offset = dis.readLong();
+				ContentName name = readName(dis);
+				readMetadata(dis, ref);
+				tree.insert(name, ref, files.get(ref.id).lastModified(), null);
+				count++;
+			}
+		} finally {
+			dis.close();
+		}
+		if (Log.isLoggable(Log.FAC_REPO, Level.INFO))
+			Log.info(Log.FAC_REPO, "Loaded {0} entries from saved index", count);
+
+		int replayed = replayJournal(tree, files, covered);
+		_publishers.clear();
+		_loadedClean = (0 == replayed);
+		return covered;
+	}
+
+	/**
+	 * Add entries saved after the checkpoint was written. Entries must follow on from what we
+	 * already cover in their file - after a gap, or an entry whose data is not all in the file,
+	 * we stop using the journal for that file and its data will be scanned instead.
+	 *
+	 * @return the number of entries used
+	 */
+	protected int replayJournal(ContentTree tree, Map<Integer, File> files, Map<Integer, FileInfo> covered) throws IOException {
+		if (!_journalFile.exists() || _journalFile.length() == 0)
+			return 0;
+		int count = 0;
+		HashSet<Integer> stopped = new HashSet<Integer>();
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(_journalFile), 65536));
+		try {
+			readHeader(dis);
+			while (true) {
+				FileRef ref = new FileRef();
+				byte kind;
+				long end;
+				ContentName name = null;
+				try {
+					kind = dis.readByte();
+					ref.id = dis.readInt();
+					ref.offset = dis.readLong();
+					end = dis.readLong();
+					if (RECORD == kind) {
+						name = readName(dis);
+						readMetadata(dis, ref);
+					}
+				} catch (EOFException e) {
+					// Partly written last entry
+					break;
+				}
+				if (stopped.contains(ref.id))
+					continue;
+				File file = files.get(ref.id);
+				FileInfo info = covered.get(ref.id);
+				long start = (null == info) ? 0 : info.length;
+				if (null == file || end > file.length() || ref.offset != start) {
+					if (Log.isLoggable(Log.FAC_REPO, Level.INFO))
+						Log.info(Log.FAC_REPO, "Index journal doesn't match repository file {0} at {1}", ref.id, ref.offset);
+					stopped.add(ref.id);
+					continue;
+				}
+				if (null == info) {
+					info = new FileInfo(0, 0);
+					covered.put(ref.id, info);
+				}
+				if (RECORD == kind)
+					tree.insert(name, ref, file.lastModified(), null);
+				else
+					info.deadBytes += end - ref.offset;
+				info.length = end;
+				count++;
+			}
+		} finally {
+			dis.close();
+		}
+		if (Log.isLoggable(Log.FAC_REPO, Level.INFO))
+			Log.info(Log.FAC_REPO, "Replayed {0} entries from index journal", count);
+		return count;
+	}
+
+	/**
+	 * @return true if the last load found a checkpoint with no journal entries after it
+	 */
+	public boolean loadedClean() {
+		return _loadedClean;
+	}
+
+	/**
+	 * Write a new checkpoint of the whole tree and remove the journal.
+	 * Objects may be saved while this is running as long as they are beyond the lengths
+	 * given. They may or may not be in the checkpoint, and will be found by scanning
+	 * if they aren't.
+	 *
+	 * @param tree the index
+	 * @param files what the index covers of each repository file
+	 * @throws IOException
+	 */
+	public void checkpoint(ContentTree tree, final Map<Integer, FileInfo> files) throws IOException {
+		synchronized (_checkpointLock) {
+			closeJournal();
+			File tmp = new File(_checkpointFile.getParentFile(), CHECKPOINT_FILE + ".tmp");
+			final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536));
+			final int [] count = new int[1];
+			try {
+				writeHeader(dos);
+				dos.writeInt(files.size());
+				for (Map.Entry<Integer, FileInfo> entry : files.entrySet()) {
+					dos.writeInt(entry.getKey());
+					dos.writeLong(entry.getValue().length);
+					dos.writeLong(entry.getValue().deadBytes);
+				}
+				tree.visit(new ContentTree.ContentVisitor() {
+					public void visit(ContentName name, ContentRef ref) throws IOException {
+						FileRef fref = (FileRef)ref;
+						int id;
+						long offset;
+						synchronized (fref) {
+							id = fref.id;
+							offset = fref.offset;
+						}
+						if (!files.containsKey(id))
+							return;
+						dos.writeByte(RECORD);
+						dos.writeInt(id);
+						dos.writeLong(offset);
+						writeName(dos, name);
+						writeMetadata(dos, fref);
+						count[0]++;
+					}
+				});
+				dos.writeByte(END);
+			} finally {
+				dos.close();
+			}
+			if (!tmp.renameTo(_checkpointFile)) {
+				// Some platforms won't rename over an existing file
+				_checkpointFile.delete();
+				if (!tmp.renameTo(_checkpointFile))
+					throw new IOException("Can not rename " + tmp + " to " + _checkpointFile);
+			}
+			_journalFile.delete();
+			if (Log.isLoggable(Log.FAC_REPO, Level.INFO))
+				Log.info(Log.FAC_REPO, "Saved index with {0} entries", count[0]);
+		}
+	}
+
+	/**
+	 * Start a new, empty, journal
+	 * @throws IOException
+	 */
+	public synchronized void openJournal() throws IOException {
+		closeJournal();
+		_journalOut = new FileOutputStream(_journalFile);
+		_journal = new DataOutputStream(new BufferedOutputStream(_journalOut));
+		writeHeader(_journal);
+		_journal.flush();
+	}
+
+	/**
+	 * Record an object saved since the checkpoint. Does nothing if the journal is not open.
+	 * Every object saved must be recorded, whether or not it was added to the index,
+	 * so that the journal covers the whole of the data written. Entries are buffered until
+	 * flushJournal() is called.
+	 *
+	 * @param name full name of the object including its digest, or null if the object
+	 * 	was not added to the index
+	 * @param ref where the object was saved
+	 * @param end the offset after the end of the object
+	 */
+	public synchronized void journal(ContentName name, FileRef ref, long end) {
+		if (null == _journal)
+			return;
+		try {
+			_journal.writeByte((null == name) ? UNINDEXED : RECORD);
+			_journal.writeInt(ref.id);
+			_journal.writeLong(ref.offset);
+			_journal.writeLong(end);
+			if (null != name) {
+				writeName(_journal, name);
+				writeMetadata(_journal, ref);
+			}
+		} catch (IOException e) {
+			// We will scan for anything we miss when we start up
+			Log.warning(Log.FAC_REPO, "Unable to write index journal: {0}", e.getMessage());
+			closeJournal();
+		}
+	}
+
+	/**
+	 * Write out the entries recorded so far
+	 * @param sync if true also force them to disk
+	 */
+	public synchronized void flushJournal(boolean sync) {
+		if (null == _journal)
+			return;
+		try {
+			_journal.flush();
+			if (sync)
+				_journalOut.getFD().sync();
+		} catch (IOException e) {
+			Log.warning(Log.FAC_REPO, "Unable to write index journal: {0}", e.getMessage());
+			closeJournal();
+		}
+	}
+
+	public synchronized void closeJournal() {
+		if (null != _journal) {
+			try {
+				_journal.close();
+			} catch (IOException e) {}
+			_journal = null;
+			_journalOut = null;
+		}
+	}
+
+	protected static void writeHeader(DataOutputStream dos) throws IOException {
+		dos.writeInt(INDEX_MAGIC);
+		dos.writeInt(INDEX_VERSION);
+	}
+
+	protected static void readHeader(DataInputStream dis) throws IOException {
+		int magic = dis.readInt();
+		int version = dis.readInt();
+		if (magic != INDEX_MAGIC || version != INDEX_VERSION)
+			throw new IOException("Unrecognized index file version " + version);
+	}
+
+	protected static void writeName(DataOutputStream dos, ContentName name) throws IOException {
+		dos.writeShort(name.count());
+		for (byte [] component : name) {
+			dos.writeInt(component.length);
+			dos.write(component);
+		}
+	}
+
+	protected static void writeMetadata(DataOutputStream dos, ContentRef ref) throws IOException {
+		if (!ref.hasMetadata()) {
+			dos.writeByte(0);
+			return;
+		}
+		byte [] type = SignedInfo.typeToValue(ref.getType());
+		dos.writeByte(type.length);
+		dos.write(type);
+		byte [] publisher = (null == ref.getPublisher()) ? new byte[0] : ref.getPublisher().digest();
+		dos.writeShort(publisher.length);
+		dos.write(publisher);
+		dos.writeLong(ref.getTimestamp());
+		dos.writeInt(ref.getFreshnessSeconds());
+	}
+
+	protected void readMetadata(DataInputStream dis, ContentRef ref) throws IOException {
+		int typeLength = dis.readUnsignedByte();
+		if (0 == typeLength)
+			return;
+		byte [] type = new byte[typeLength];
+		dis.readFully(type);
+		byte [] digest = new byte[dis.readUnsignedShort()];
+		dis.readFully(digest);
+		PublisherPublicKeyDigest publisher = null;
+		if (digest.length > 0) {
+			publisher = new PublisherPublicKeyDigest(digest);
+			PublisherPublicKeyDigest shared = _publishers.get(publisher);
+			if (null == shared)
+				_publishers.put(publisher, publisher);
+			else
+				publisher = shared;
+		}
+		ref.setMetadata(publisher, SignedInfo.valueToType(type), dis.readLong(), dis.readInt());
+	}
+
+	protected static ContentName readName(DataInputStream dis) throws IOException {
+		int count = dis.readUnsignedShort();
+		byte [][] components = new byte[count][];
+		for (int i = 0; i < count; i++) {
+			components[i] = new byte[dis.readInt()];
+			dis.readFully(components[i]);
+		}
+		return new ContentName(components);
+	}
+}
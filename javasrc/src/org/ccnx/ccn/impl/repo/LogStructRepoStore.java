@@ -18,19 +18,28 @@
 package org.ccnx.ccn.impl.repo;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.InvalidKeyException;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
 import java.util.logging.Level;
 
 import org.ccnx.ccn.CCNHandle;
@@ -39,8 +48,11 @@ import org.ccnx.ccn.config.ConfigurationException;
 import org.ccnx.ccn.config.SystemConfiguration;
 import org.ccnx.ccn.config.UserConfiguration;
 import org.ccnx.ccn.config.SystemConfiguration.DEBUGGING_FLAGS;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.impl.repo.LogStructRepoIndex.FileInfo;
 import org.ccnx.ccn.impl.repo.PolicyXML.PolicyObject;
 import org.ccnx.ccn.impl.security.keys.BasicKeyManager;
+import org.ccnx.ccn.impl.support.ByteBufferInputStream;
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.io.content.ContentDecodingException;
 import org.ccnx.ccn.io.content.ContentEncodingException;
@@ -55,9 +67,20 @@ import org.ccnx.ccn.protocol.MalformedContentNameStringException;
 
 /**
  * Implements a log-structured RepositoryStore on a filesystem using sequential data files with an index for queries
+ * 
+ * Content is appended to the active repository file until it reaches SystemConfiguration.REPO_FILE_SIZE, when
+ * a new file is started. Objects that are written but not in the index (duplicates) are counted per file.
+ * A background compactor periodically rewrites files other than the active one in which more than
+ * SystemConfiguration.REPO_COMPACT_THRESHOLD percent is unused, keeping only the indexed objects.
+ * 
+ * If SystemConfiguration.REPO_MMAP is set, files other than the active one are read through a
+ * read only memory mapping, without locking the file, so reads of the same file can run in parallel.
+ * 
+ * Recently read content is kept in a ContentObjectCache of SystemConfiguration.REPO_CACHE_SIZE bytes
+ * so popular content can be served without reading it again.
  */
 
-public class LogStructRepoStore extends RepositoryStoreBase implements RepositoryStore, ContentTree.ContentGetter {
+public class LogStructRepoStore extends RepositoryStoreBase implements RepositoryStore, ContentTree.NamedContentGetter {
 
 	public final static String CURRENT_VERSION = "1.4";
 		
@@ -81,6 +104,7 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		public static final String REPOSITORY_KEYSTORE_ALIAS = REPOSITORY_USER.toLowerCase();
 
 		public static String CONTENT_FILE_PREFIX = "repoFile";
+		public static String COMPACT_FILE_PREFIX = "compact";
 		private static String DEBUG_TREEDUMP_FILE = "debugNamesTree";
 
 		private static String DIAG_NAMETREE = "nametree"; // Diagnostic/signal to dump name tree to debug file
@@ -96,6 +120,17 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 	RepoFile _activeWriteFile = null;
 	Integer _currentFileIndex = 0;
 	ContentTree _index;
+	LogStructRepoIndex _savedIndex;
+	
+	// Held while writing to the active file, and while switching it or moving content between files
+	protected Object _writeLock = new Object();
+	protected Object _fileIndexLock = new Object();
+	protected Timer _compactTimer = null;
+	protected Timer _syncTimer = null;
+	protected boolean _unsynced = false;	// written since last sync, protected by _writeLock
+	protected volatile boolean _compactStop = false;
+	protected ContentObjectCache _cache = (SystemConfiguration.REPO_CACHE_SIZE > 0) ? 
+			new ContentObjectCache(SystemConfiguration.REPO_CACHE_SIZE) : null;
 	
 	protected HashMap<String, String> _bulkImportInProgress = new HashMap<String, String>();
 	
@@ -103,8 +138,15 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		File file;
 		RandomAccessFile openFile;
 		long nextWritePos;
+		long deadBytes;		// bytes of objects written to this file that are not in the index
+		volatile MappedByteBuffer mapped;	// set once the file is no longer written to
+		boolean unmappable;
 	}
 	
+	/**
+	 * Where content is stored. The id and offset change if the content is moved by compaction,
+	 * so they must be read and written while synchronized on the FileRef.
+	 */
 	protected static class FileRef extends ContentRef {
 		int id;
 		long offset;
@@ -162,6 +204,8 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 
 	/**
 	 * Read the current repository file(s) for this repository and create an index for them.
+	 * The index saved in the meta directory is loaded first if there is one, so only data
+	 * not covered by it needs to be read.
 	 * WARNING: multiple files are not well tested
 	 * 
 	 * @return the number of files making up the repository
@@ -171,6 +215,7 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		_index = new ContentTree();
 		assert(null != _repositoryFile);
 		assert(_repositoryFile.isDirectory());
+		TreeMap<Integer, File> files = new TreeMap<Integer, File>();
 		String[] filenames = _repositoryFile.list();
 		for (int i = 0; i < filenames.length; i++) {
 			if (filenames[i].startsWith(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX)) {
@@ -180,15 +225,73 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 					if (index > max) {
 						max = index.intValue();
 					}
-					try {
-						createIndex(filenames[i], index, false);
-					} catch (RepositoryException e) {}	// This can't happen
+					files.put(index, new File(_repositoryFile, filenames[i]));
 				}
 			}
 		}
+		
+		Map<Integer, FileInfo> covered = loadIndex(files);
+		boolean scanned = !_savedIndex.loadedClean();
+		for (Map.Entry<Integer, File> entry : files.entrySet()) {
+			FileInfo info = covered.get(entry.getKey());
+			long start = (null == info) ? 0 : info.length;
+			if (start < entry.getValue().length())
+				scanned = true;
+			try {
+				createIndex(entry.getValue().getName(), entry.getKey(), false, start);
+			} catch (RepositoryException e) {}	// This can't happen
+			RepoFile rfile = _files.get(entry.getKey());
+			if (null != info && null != rfile)
+				rfile.deadBytes += info.deadBytes;
+		}
+		
+		if (scanned) {
+			// Save what we found so we don't have to scan it again next time
+			saveIndex();
+		}
 		return new Integer(max);
 	}
 	
+	/**
+	 * Load the index saved in the meta directory, if any
+	 * 
+	 * @param files the repository files
+	 * @return what the saved index covers of each file
+	 */
+	protected Map<Integer, FileInfo> loadIndex(Map<Integer, File> files) {
+		_savedIndex = new LogStructRepoIndex(new File(_repositoryMeta));
+		try {
+			return _savedIndex.load(_index, files);
+		} catch (IOException e) {
+			Log.warning(Log.FAC_REPO, "Unable to load saved index, scanning repository: {0}", e.getMessage());
+			_index = new ContentTree();
+			return new HashMap<Integer, FileInfo>();
+		}
+	}
+	
+	/**
+	 * Save the whole index to the meta directory. Content may be saved while this is running.
+	 */
+	protected void saveIndex() {
+		HashMap<Integer, FileInfo> info = new HashMap<Integer, FileInfo>();
+		synchronized (_writeLock) {
+			synchronized (_files) {
+				for (Map.Entry<Integer, RepoFile> entry : _files.entrySet()) {
+					RepoFile rfile = entry.getValue();
+					if (!rfile.file.exists())
+						continue;
+					long length = (rfile == _activeWriteFile) ? rfile.nextWritePos : rfile.file.length();
+					info.put(entry.getKey(), new FileInfo(length, rfile.deadBytes));
+				}
+			}
+		}
+		try {
+			_savedIndex.checkpoint(_index, info);
+		} catch (IOException e) {
+			Log.warning(Log.FAC_REPO, "Unable to save index: {0}", e.getMessage());
+		}
+	}
+	
 	/**
 	 * Create index from specific file. For now we will allow errors during the initial index creation,
 	 * assuming that we want to keep trying if there's an error in the existing index files. If an import
@@ -201,9 +304,10 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 	 * @param fileName
 	 * @param index
 	 * @param fromImport - this is an "import" file.
+	 * @param start - offset in the file to start reading from. Data before this must already be in the index.
 	 * @throws RepositoryException 
 	 */
-	private void createIndex(String fileName, Integer index, boolean fromImport) throws RepositoryException {
+	private void createIndex(String fileName, Integer index, boolean fromImport, long start) throws RepositoryException {
 		try {
 			RepoFile rfile = new RepoFile();
 			rfile.file = new File(_repositoryFile,fileName);
@@ -230,10 +334,11 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 			// keep track of where our pointer was also synchronized under the RepoFile so we can restore
 			// it to where it was in the case someone was reading one of our previously created nodes
 			// while the index creation is in progress.
-			long nextOffset = 0;
+			long nextOffset = start;
 			while (true) {
 				FileRef ref = new FileRef();
 				ContentObject tmp = new ContentObject();
+				long end;
 				synchronized (rfile) {
 					ref.id = index.intValue();
 					ref.offset = nextOffset;
@@ -244,6 +349,7 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 						if (rfile.openFile.getFilePointer()<rfile.openFile.length() || is.available()!=0) {
 							tmp.decode(is);
 							nextOffset = rfile.openFile.getFilePointer();
+							end = nextOffset - is.available();
 						}
 						else{
 							if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
@@ -266,7 +372,8 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 						break;
 					}
 				}
-				_index.insert(tmp, ref, rfile.file.lastModified(), this, null);
+				if (!_index.insert(tmp, ref, rfile.file.lastModified(), this, null))
+					rfile.deadBytes += end - ref.offset;
 			}
 		} catch (NumberFormatException e) {
 			// Not valid file
@@ -400,6 +507,32 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		} catch (FileNotFoundException e) {
 			Log.warning(Log.FAC_REPO, "Error opening content output file index " + _currentFileIndex);
 		}
+		
+		try {
+			_savedIndex.openJournal();
+		} catch (IOException e) {
+			Log.warning(Log.FAC_REPO, "Unable to open index journal: {0}", e.getMessage());
+		}
+		
+		if (SystemConfiguration.REPO_COMPACT_INTERVAL > 0) {
+			long period = SystemConfiguration.REPO_COMPACT_INTERVAL * 1000L;
+			_compactTimer = new Timer("Repository compactor", true);
+			_compactTimer.schedule(new TimerTask() {
+				public void run() {
+					Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+					compact();
+				}
+			}, period, period);
+		}
+		
+		if (SystemConfiguration.REPO_SYNC == SystemConfiguration.REPO_SYNC_POLICY.INTERVAL) {
+			_syncTimer = new Timer("Repository sync", true);
+			_syncTimer.schedule(new TimerTask() {
+				public void run() {
+					sync();
+				}
+			}, SystemConfiguration.REPO_SYNC_INTERVAL, SystemConfiguration.REPO_SYNC_INTERVAL);
+		}
 			
 		// Verify stored policy info
 		// TODO - we shouldn't do this if the user has specified a policy file which already has
@@ -472,41 +605,155 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 	 * @returns NameEnumerationResponse if this satisfies an outstanding NameEnumeration request
 	 */
 	public NameEnumerationResponse saveContent(ContentObject content) throws RepositoryException {
+		ArrayList<ContentObject> batch = new ArrayList<ContentObject>(1);
+		batch.add(content);
+		List<NameEnumerationResponse> ners = saveContent(batch);
+		return (null == ners) ? null : ners.get(0);
+	}
+	
+	/**
+	 * Save a batch of content in the repository store. The objects are encoded before taking
+	 * the write lock and written to the active file together with a single write. Whether the
+	 * data is then forced to disk depends on SystemConfiguration.REPO_SYNC.
+	 * 
+	 * @param content the content to save
+	 * @throws RepositoryException it the content can not be written or encoded
+	 * @returns the NameEnumerationResponse for each object, in the same order as content
+	 */
+	public List<NameEnumerationResponse> saveContent(List<ContentObject> content) throws RepositoryException {
 		// Make sure content is within allowable nameSpace
 		if (null == _activeWriteFile) {
-			Log.warning(Log.FAC_REPO, "Tried to save: {0}, presumably after repo shutdown", content.name());
+			Log.warning(Log.FAC_REPO, "Tried to save {0} objects, presumably after repo shutdown", content.size());
 			return null;
 		}
+		int count = content.size();
+		long [] ends = new long[count];
+		byte [] data;
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			for (int i = 0; i < count; i++) {
+				content.get(i).encode(baos);
+				ends[i] = baos.size();
+			}
+			data = baos.toByteArray();
+		} catch (ContentEncodingException e) {
+			throw new RepositoryException("Failed to encode content: " + e.getMessage());
+		}
+		
 		try {	
-			NameEnumerationResponse ner = new NameEnumerationResponse();
-			synchronized(_activeWriteFile) {
-				assert(null != _activeWriteFile.openFile);
-				FileRef ref = new FileRef();
-				ref.id = Integer.parseInt(_activeWriteFile.file.getName().substring(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX.length()));
-				ref.offset = _activeWriteFile.nextWritePos;
-				_activeWriteFile.openFile.seek(_activeWriteFile.nextWritePos);
-				OutputStream os = new RandomAccessOutputStream(_activeWriteFile.openFile);
-				content.encode(os);
-				_activeWriteFile.nextWritePos = _activeWriteFile.openFile.getFilePointer();
-				_index.insert(content, ref, System.currentTimeMillis(), this, ner);
-				if (ner==null || ner.getPrefix()==null) {
-					if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
-						Log.fine(Log.FAC_REPO, "new content did not trigger an interest flag");
+			ArrayList<NameEnumerationResponse> ners = new ArrayList<NameEnumerationResponse>(count);
+			synchronized (_writeLock) {
+				synchronized(_activeWriteFile) {
+					if (null == _activeWriteFile.openFile) {
+						Log.warning(Log.FAC_REPO, "Tried to save {0} objects, presumably after repo shutdown", count);
+						return null;
 					}
-				} else {
-					if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
-						Log.fine(Log.FAC_REPO, "new content was added where there was a name enumeration response interest flag");
+					int id = Integer.parseInt(_activeWriteFile.file.getName().substring(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX.length()));
+					long start = _activeWriteFile.nextWritePos;
+					_activeWriteFile.openFile.seek(start);
+					_activeWriteFile.openFile.write(data);
+					_activeWriteFile.nextWritePos = start + data.length;
+					
+					long timestamp = System.currentTimeMillis();
+					for (int i = 0; i < count; i++) {
+						ContentObject co = content.get(i);
+						FileRef ref = new FileRef();
+						ref.id = id;
+						ref.offset = start + ((i == 0) ? 0 : ends[i - 1]);
+						long end = start + ends[i];
+						NameEnumerationResponse ner = new NameEnumerationResponse();
+						if (_index.insert(co, ref, timestamp, this, ner)) {
+							_savedIndex.journal(co.fullName(), ref, end);
+						} else {
+							_activeWriteFile.deadBytes += end - ref.offset;
+							_savedIndex.journal(null, ref, end);
+						}
+						if (ner==null || ner.getPrefix()==null) {
+							if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
+								Log.fine(Log.FAC_REPO, "new content did not trigger an interest flag");
+							}
+						} else {
+							if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
+								Log.fine(Log.FAC_REPO, "new content was added where there was a name enumeration response interest flag");
+							}
+						}
+						ners.add(ner);
+					}
+					
+					switch (SystemConfiguration.REPO_SYNC) {
+					case BATCH:
+						_activeWriteFile.openFile.getFD().sync();
+						_savedIndex.flushJournal(true);
+						break;
+					case INTERVAL:
+						_unsynced = true;
+						_savedIndex.flushJournal(false);
+						break;
+					default:
+						_savedIndex.flushJournal(false);
 					}
+					
+					if (SystemConfiguration.REPO_FILE_SIZE > 0 && _activeWriteFile.nextWritePos >= SystemConfiguration.REPO_FILE_SIZE)
+						startNewFile();
+					return ners;
 				}
-				return ner;
 			}
-		} catch (ContentEncodingException e) {
-			throw new RepositoryException("Failed to encode content: " + e.getMessage());
 		} catch (IOException e) {
 			throw new RepositoryException("Failed to write content: " + e.getMessage());
 		}
 	}
+	
+	/**
+	 * Force what we have written since the last sync to disk. Run periodically for the
+	 * INTERVAL sync policy.
+	 */
+	protected void sync() {
+		RandomAccessFile openFile;
+		synchronized (_writeLock) {
+			if (!_unsynced)
+				return;
+			_unsynced = false;
+			synchronized (_activeWriteFile) {
+				openFile = _activeWriteFile.openFile;
+			}
+		}
+		// Sync without the lock so saves can go on. If the file was closed in the
+		// meantime it was synced when it was closed.
+		try {
+			if (null != openFile)
+				openFile.getFD().sync();
+		} catch (IOException e) {
+			Log.fine(Log.FAC_REPO, "Sync of closed repository file: {0}", e.getMessage());
+		}
+		_savedIndex.flushJournal(true);
+	}
 
+	/**
+	 * Get content from the cache, or from the storage files if it isn't cached
+	 * 
+	 * @param fullName name of the content including digest
+	 * @param ref the reference
+	 * @return the content
+	 */
+	public ContentObject get(ContentName fullName, ContentRef ref) {
+		if (null == _cache)
+			return get(ref);
+		ContentObject content = _cache.get(fullName);
+		if (null == content) {
+			content = get(ref);
+			if (null != content)
+				_cache.put(fullName, content);
+		}
+		return content;
+	}
+	
+	@Override
+	public void setStats(CCNEnumStats<RepositoryServer.StatsEnum> stats) {
+		super.setStats(stats);
+		if (null != _cache)
+			_cache.setStats(stats);
+	}
+	
 	/**
 	 * Get content for the given reference from the storage files. Used to retrieve content for 
 	 * comparison operations.
@@ -518,26 +765,71 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		// This is a call back based on what we put in ContentTree, so it must be
 		// using our subtype of ContentRef
 		FileRef fref = (FileRef)ref;
+		int id;
+		long offset;
+		synchronized (fref) {
+			id = fref.id;
+			offset = fref.offset;
+		}
+		ContentObject content = null;
+		Exception failure = null;
 		try {
-			RepoFile file = null;
-			synchronized (_files) {
-				file = _files.get(fref.id);
-			}
-			if (null == file)
-				return null;
-			synchronized (file) {
-				if (null == file.openFile) {
-					file.openFile = new RandomAccessFile(file.file, "r");
+			content = get(id, offset);
+		} catch (Exception e) {
+			failure = e;
+		}
+		if (null == content) {
+			// Compaction may have moved the content while we were reading it
+			synchronized (fref) {
+				if (fref.id == id) {
+					if (null != failure)
+						Log.warning(Log.FAC_REPO, "Can't get content: " + failure);
+					return null;
 				}
-				file.openFile.seek(fref.offset);
+				id = fref.id;
+				offset = fref.offset;
+			}
+			try {
+				content = get(id, offset);
+			} catch (Exception e) {
+				Log.warning(Log.FAC_REPO, "Can't get content: " + e);
+			}
+		}
+		return content;
+	}
+	
+	/**
+	 * Read content from the storage files
+	 * 
+	 * @param id the file
+	 * @param offset offset of the content in the file
+	 * @return the content or null if the file doesn't exist
+	 */
+	protected ContentObject get(int id, long offset) throws IOException, ContentDecodingException {
+		RepoFile file = null;
+		synchronized (_files) {
+			file = _files.get(id);
+		}
+		if (null == file)
+			return null;
+		if (SystemConfiguration.REPO_MMAP) {
+			ByteBuffer buffer = map(file);
+			if (null != buffer && offset < buffer.limit()) {
+				buffer.position((int)offset);
 				ContentObject content = new ContentObject();
-				InputStream is = new BufferedInputStream(new RandomAccessInputStream(file.openFile), 8192);
-				content.decode(is);
+				content.decode(new ByteBufferInputStream(buffer));
 				return content;
 			}
-		} catch (Exception e) {
-			Log.warning(Log.FAC_REPO, "Can't get content: " + e);
-			return null;
+		}
+		synchronized (file) {
+			if (null == file.openFile) {
+				file.openFile = new RandomAccessFile(file.file, "r");
+			}
+			file.openFile.seek(offset);
+			ContentObject content = new ContentObject();
+			InputStream is = new BufferedInputStream(new RandomAccessInputStream(file.openFile), 8192);
+			content.decode(is);
+			return content;
 		}
 	}
 	
@@ -636,11 +928,24 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 			KeyManager.closeDefaultKeyManager();
 		}
 		
+		_compactStop = true;
+		if (null != _compactTimer)
+			_compactTimer.cancel();
+		if (null != _syncTimer)
+			_syncTimer.cancel();
+		
 		if (null != _activeWriteFile && null != _activeWriteFile.openFile) {
 			try {
-				synchronized (_activeWriteFile) {
-					_activeWriteFile.openFile.close();
-					_activeWriteFile.openFile = null;
+				synchronized (_writeLock) {
+					synchronized (_activeWriteFile) {
+						if (SystemConfiguration.REPO_SYNC != SystemConfiguration.REPO_SYNC_POLICY.NONE)
+							_activeWriteFile.openFile.getFD().sync();
+						_activeWriteFile.openFile.close();
+						_activeWriteFile.openFile = null;
+					}
+					
+					// Save the index so we don't need to read the data at startup
+					saveIndex();
 				}
 			} catch (IOException e) {}
 		}
@@ -670,12 +975,12 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 			
 			_bulkImportInProgress.put(name, name);
 		}
-		_currentFileIndex++;
-		File repoFile = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + _currentFileIndex);
+		int fileIndex = allocateFileIndex();
+		File repoFile = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + fileIndex);
 		if (!file.renameTo(repoFile))
 			throw new RepositoryException("Can not rename file: " + file);
 		try {
-			createIndex(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + _currentFileIndex, _currentFileIndex, true);
+			createIndex(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + fileIndex, fileIndex, true, 0);
 		} catch (RepositoryException re) {
 			// The seemingly logical thing to do would be to verify the data for errors first and then submit it if it
 			// was OK. But that would require 2 passes through the data in the mainline case in which the data is good
@@ -687,4 +992,246 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		_bulkImportInProgress.remove(name);
 		return true;
 	}
+	
+	/**
+	 * Get a mapping of a repository file that is no longer written to
+	 * 
+	 * @param file
+	 * @return a buffer of our own over the whole file, or null if the file can't be mapped
+	 * 		because it is being written to or is too large
+	 * @throws IOException
+	 */
+	protected ByteBuffer map(RepoFile file) throws IOException {
+		MappedByteBuffer mapped = file.mapped;
+		if (null == mapped) {
+			synchronized (file) {
+				// The active file only changes while it is locked
+				if (file.unmappable || file == _activeWriteFile)
+					return null;
+				if (null == file.mapped) {
+					long length = file.file.length();
+					if (length > Integer.MAX_VALUE) {
+						file.unmappable = true;
+						return null;
+					}
+					RandomAccessFile raf = new RandomAccessFile(file.file, "r");
+					try {
+						file.mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+					} finally {
+						// The mapping stays valid after the channel is closed
+						raf.close();
+					}
+					if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
+						Log.fine(Log.FAC_REPO, "Mapped {0} bytes of {1}", length, file.file.getName());
+					}
+				}
+				mapped = file.mapped;
+			}
+		}
+		return mapped.duplicate();
+	}
+	
+	/**
+	 * @return the index to use for a new repository file
+	 */
+	protected int allocateFileIndex() {
+		synchronized (_fileIndexLock) {
+			_currentFileIndex++;
+			return _currentFileIndex;
+		}
+	}
+	
+	/**
+	 * Start writing to a new repository file. Must be called with the write lock
+	 * and the current active file locked.
+	 * 
+	 * @throws FileNotFoundException
+	 */
+	protected void startNewFile() throws IOException {
+		int fileIndex = allocateFileIndex();
+		RepoFile rfile = new RepoFile();
+		rfile.file = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + fileIndex);
+		rfile.openFile = new RandomAccessFile(rfile.file, "rw");
+		rfile.nextWritePos = 0;
+		synchronized (_files) {
+			_files.put(fileIndex, rfile);
+		}
+		RepoFile oldFile = _activeWriteFile;
+		_activeWriteFile = rfile;
+		
+		// Reopened read only if we need to get content from it
+		if (SystemConfiguration.REPO_SYNC != SystemConfiguration.REPO_SYNC_POLICY.NONE)
+			oldFile.openFile.getFD().sync();
+		oldFile.openFile.close();
+		oldFile.openFile = null;
+		if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+			Log.info(Log.FAC_REPO, "Finished with {0} at {1} bytes, now writing to {2}", oldFile.file.getName(), 
+					oldFile.nextWritePos, rfile.file.getName());
+		}
+	}
+	
+	/**
+	 * Compact the repository files that have enough unused space, other than the one
+	 * we are writing to. Run periodically by the compactor.
+	 */
+	protected void compact() {
+		// Don't run while a bulk import is being indexed
+		synchronized (this) {
+			TreeMap<Integer, RepoFile> candidates = new TreeMap<Integer, RepoFile>();
+			synchronized (_files) {
+				for (Map.Entry<Integer, RepoFile> entry : _files.entrySet()) {
+					RepoFile rfile = entry.getValue();
+					if (rfile == _activeWriteFile || rfile.deadBytes <= 0)
+						continue;
+					if (rfile.deadBytes * 100 >= rfile.file.length() * SystemConfiguration.REPO_COMPACT_THRESHOLD)
+						candidates.put(entry.getKey(), rfile);
+				}
+			}
+			for (Map.Entry<Integer, RepoFile> entry : candidates.entrySet()) {
+				if (_compactStop)
+					return;
+				try {
+					compactFile(entry.getKey(), entry.getValue());
+				} catch (IOException e) {
+					Log.warning(Log.FAC_REPO, "Unable to compact {0}: {1}", entry.getValue().file.getName(), e.getMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Copy the content in the index from a repository file to a new file, move the index entries
+	 * to the new file and remove the old one. Reading is limited to SystemConfiguration.REPO_COMPACT_RATE
+	 * bytes per second.
+	 * 
+	 * @param id the file to compact
+	 * @param oldFile
+	 * @return true if the file was compacted
+	 * @throws IOException
+	 */
+	protected boolean compactFile(int id, RepoFile oldFile) throws IOException {
+		int newId = allocateFileIndex();
+		File tmp = new File(_repositoryMeta, LogStructRepoStoreProfile.COMPACT_FILE_PREFIX + newId);
+		long length = oldFile.file.length();
+		if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+			Log.info(Log.FAC_REPO, "Compacting {0}: {1} of {2} bytes unused", oldFile.file.getName(), oldFile.deadBytes, length);
+		}
+		
+		// Where each ref we keep will be in the new file
+		LinkedHashMap<FileRef, Long> moved = new LinkedHashMap<FileRef, Long>();
+		long newOffset = 0;
+		boolean done = false;
+		RandomAccessFile in = new RandomAccessFile(oldFile.file, "r");
+		RandomAccessFile copy = new RandomAccessFile(oldFile.file, "r");
+		RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+		try {
+			InputStream is = new BufferedInputStream(new RandomAccessInputStream(in), 8192);
+			long startTime = System.currentTimeMillis();
+			long offset = 0;
+			byte [] buffer = new byte[8192];
+			while (offset < length) {
+				if (_compactStop)
+					return false;
+				ContentObject content = new ContentObject();
+				content.decode(is);
+				long end = in.getFilePointer() - is.available();
+				FileRef ref = findRef(content, id, offset);
+				if (null != ref) {
+					// Copy the bytes as they are rather than encoding the content again
+					int size = (int)(end - offset);
+					if (size > buffer.length)
+						buffer = new byte[size];
+					copy.seek(offset);
+					copy.readFully(buffer, 0, size);
+					out.write(buffer, 0, size);
+					moved.put(ref, newOffset);
+					newOffset += size;
+				}
+				offset = end;
+				
+				if (SystemConfiguration.REPO_COMPACT_RATE > 0) {
+					long wait = (offset * 1000 / SystemConfiguration.REPO_COMPACT_RATE) - (System.currentTimeMillis() - startTime);
+					if (wait > 0) {
+						try {
+							Thread.sleep(wait);
+						} catch (InterruptedException e) {
+							return false;
+						}
+					}
+				}
+			}
+			out.getFD().sync();
+			done = true;
+		} finally {
+			in.close();
+			copy.close();
+			out.close();
+			if (!done)
+				tmp.delete();
+		}
+		
+		RepoFile newFile = new RepoFile();
+		newFile.file = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + newId);
+		newFile.nextWritePos = newOffset;
+		synchronized (_writeLock) {
+			if (_compactStop) {
+				tmp.delete();
+				return false;
+			}
+			if (!tmp.renameTo(newFile.file)) {
+				tmp.delete();
+				throw new IOException("Can not rename " + tmp + " to " + newFile.file);
+			}
+			synchronized (_files) {
+				_files.put(newId, newFile);
+			}
+			for (Map.Entry<FileRef, Long> entry : moved.entrySet()) {
+				FileRef ref = entry.getKey();
+				synchronized (ref) {
+					if (ref.id == id) {
+						ref.id = newId;
+						ref.offset = entry.getValue();
+					}
+				}
+			}
+			synchronized (_files) {
+				_files.remove(id);
+			}
+		}
+		
+		// Save the index before removing the old file so that the saved index is never
+		// missing a file it refers to
+		saveIndex();
+		if (!_compactStop)
+			_savedIndex.openJournal();
+		synchronized (oldFile) {
+			if (null != oldFile.openFile) {
+				oldFile.openFile.close();
+				oldFile.openFile = null;
+			}
+			// Gets already using the mapping can finish with it - it is released when no longer referenced
+			oldFile.mapped = null;
+		}
+		oldFile.file.delete();
+		if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+			Log.info(Log.FAC_REPO, "Compacted {0} to {1}: {2} objects in {3} bytes", oldFile.file.getName(), 
+					newFile.file.getName(), moved.size(), newOffset);
+		}
+		return true;
+	}
+	
+	/**
+	 * Find the index entry for content stored at a place in a file
+	 * @return the entry or null if the content at this place is not in the index
+	 */
+	protected FileRef findRef(ContentObject content, int id, long offset) {
+		for (ContentRef ref : _index.getRefs(content.fullName())) {
+			FileRef fref = (FileRef)ref;
+			synchronized (fref) {
+				if (fref.id == id && fref.offset == offset)
+					return fref;
+			}
+		}
+		return null;
+	}
 }
@@ -78,6 +78,8 @@ public class RepositoryDaemon extends Daemon {
 			}
 			if( REPO_CLEAR_STATS.equalsIgnoreCase(name) ) {
 				_server.getStats().clearCounters();
+				for (RepositoryInterestHandler.Stage stage : RepositoryInterestHandler.Stage.values())
+					_server.getInterestLatency(stage).clear();
 				return true;
 			}
 			return _repo.diagnostic(name);
@@ -254,6 +256,8 @@ public class RepositoryDaemon extends Daemon {
 			}
 			statsOut = new PrintStream(statsFile);
 			statsOut.println(_server.getStats().toString());
+			for (RepositoryInterestHandler.Stage stage : RepositoryInterestHandler.Stage.values())
+				statsOut.println(_server.getInterestLatency(stage).toString());
 		} catch (FileNotFoundException ex) {
 			Log.warning(Log.FAC_REPO, "Unable to dump stats to " + statsFile.getAbsolutePath());
 		} finally {
@@ -18,6 +18,9 @@
 package org.ccnx.ccn.impl.repo;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
@@ -70,6 +73,9 @@ public class RepositoryDataHandler implements Runnable {
 
 	/**
 	 * The content listener runs this thread to store data using the content store.
+	 * Objects that arrive while we are saving are saved together as one batch, up to
+	 * SystemConfiguration.REPO_WRITE_BATCH objects. If a batch can't be saved its objects are
+	 * saved one at a time, so only the ones that fail are lost.
 	 * The thread also checks for policy updates which may reset the repository's
 	 * namespace and sends "early" nameEnumerationResponses when requested by the
 	 * store.
@@ -77,9 +83,11 @@ public class RepositoryDataHandler implements Runnable {
 	 * @see RepositoryStore
 	 */
 	public void run() {
+		ArrayList<ContentObject> batch = new ArrayList<ContentObject>();
 		while (!_shutdownComplete) {
-			ContentObject co = null;
+			batch.clear();
 			synchronized (_queue) {
+				ContentObject co = null;
 				do {
 					co = _queue.poll();
 					if (null == co) {
@@ -95,55 +103,100 @@ public class RepositoryDataHandler implements Runnable {
 						} catch (InterruptedException e) {}
 					}
 				} while (null == co);
-				_currentQueueSize--;
+				
+				// Take whatever else is waiting so it can be written together
+				do {
+					batch.add(co);
+				} while (batch.size() < SystemConfiguration.REPO_WRITE_BATCH && null != (co = _queue.poll()));
+				_currentQueueSize -= batch.size();
 				if (_throttled && _currentQueueSize < THROTTLE_BOTTOM) {
 					_throttled = false;
 					_server.setThrottle(false);
 				}
 			}
+			List<NameEnumerationResponse> ners = null;
 			try {
 				if (Log.isLoggable(Log.FAC_REPO, Level.FINER)) {
-					Log.finer(Log.FAC_REPO, "Saving content in: " + co.toString());
+					for (ContentObject co : batch)
+						Log.finer(Log.FAC_REPO, "Saving content in: " + co.toString());
 				}
-
-				NameEnumerationResponse ner = _server.getRepository().saveContent(co);
-				if (!_shutdown) {
-					if (ner!=null && ner.hasNames()) {
-						_server.sendEnumerationResponse(ner);
-					}
+				long startTime = System.nanoTime();
+				ners = _server.getRepository().saveContent(batch);
+				_server._stats.increment(RepositoryServer.StatsEnum.WriteBatches);
+				_server._stats.addSample(RepositoryServer.StatsEnum.WriteBatchSize, batch.size());
+				_server._stats.addSample(RepositoryServer.StatsEnum.WriteBatchLatency, System.nanoTime() - startTime);
+			} catch (Exception e) {
+				if (batch.size() == 1) {
+					Log.logStackTrace(Level.WARNING, e);
+					continue;
 				}
-
-				// When a write or some syncs are first requested we don't know what key data
-				// was being used because this is in the ContentObject which of course we didn't
-				// have yet. Bbut we need this data to make sure the key is saved along with the file.
-				// Now we can find the key data and check if we have it already or need to get it
-				// too. Also the key locator that we dont have yet could have been a link. We
-				// didn't know that either. If it was we have to get the data it points to.
-				//
-				// Also we have to check for more locators associated with our new object
-				// and the objects pointed to by the links.
-				Entry<ContentName> entry = _pendingKeyChecks.removeMatch(co);
-				if (null != entry) {
-					ContentName nameToCheck = entry.value();
-					if (Log.isLoggable(Log.FAC_REPO, Level.FINER)) {
-						Log.finer(Log.FAC_REPO, "Processing key check entry: {0}", nameToCheck);
+				// Don't lose the whole batch to one bad object
+				Log.warning(Log.FAC_REPO, "Failed to save batch of {0} objects, saving them one at a time: {1}", batch.size(), e.getMessage());
+				ners = saveEach(batch);
+			}
+			for (int i = 0; i < batch.size(); i++) {
+				ContentObject co = batch.get(i);
+				try {
+					NameEnumerationResponse ner = (null == ners) ? null : ners.get(i);
+					if (!_shutdown) {
+						if (ner!=null && ner.hasNames()) {
+							_server.sendEnumerationResponse(ner);
+						}
 					}
-					ContentName linkCheck = _server.getLinkedKeyTarget(co);
-					if (null != linkCheck) {
+	
+					// When a write or some syncs are first requested we don't know what key data
+					// was being used because this is in the ContentObject which of course we didn't
+					// have yet. Bbut we need this data to make sure the key is saved along with the file.
+					// Now we can find the key data and check if we have it already or need to get it
+					// too. Also the key locator that we dont have yet could have been a link. We
+					// didn't know that either. If it was we have to get the data it points to.
+					//
+					// Also we have to check for more locators associated with our new object
+					// and the objects pointed to by the links.
+					Entry<ContentName> entry = _pendingKeyChecks.removeMatch(co);
+					if (null != entry) {
+						ContentName nameToCheck = entry.value();
 						if (Log.isLoggable(Log.FAC_REPO, Level.FINER)) {
-							Log.finer(Log.FAC_REPO, "Processing key check entry for link: {0}", linkCheck);
+							Log.finer(Log.FAC_REPO, "Processing key check entry: {0}", nameToCheck);
 						}
-						Interest linkInterest = new Interest(linkCheck);
-						_server.doSync(linkInterest, linkInterest);
-						syncKeysForObject(co, linkCheck);
+						ContentName linkCheck = _server.getLinkedKeyTarget(co);
+						if (null != linkCheck) {
+							if (Log.isLoggable(Log.FAC_REPO, Level.FINER)) {
+								Log.finer(Log.FAC_REPO, "Processing key check entry for link: {0}", linkCheck);
+							}
+							Interest linkInterest = new Interest(linkCheck);
+							_server.doSync(linkInterest, linkInterest);
+							syncKeysForObject(co, linkCheck);
+						}
+						syncKeysForObject(co, nameToCheck);
 					}
-					syncKeysForObject(co, nameToCheck);
+				} catch (Exception e) {
+					Log.logStackTrace(Level.WARNING, e);
 				}
+			}
+		}
+	}
+
+	/**
+	 * Save the objects of a batch one at a time. Objects that can't be saved are logged and
+	 * removed from the batch, so it is left holding only those that were saved.
+	 * @param batch
+	 * @return the NameEnumerationResponse for each saved object, in batch order
+	 */
+	private List<NameEnumerationResponse> saveEach(ArrayList<ContentObject> batch) {
+		ArrayList<NameEnumerationResponse> ners = new ArrayList<NameEnumerationResponse>(batch.size());
+		Iterator<ContentObject> it = batch.iterator();
+		while (it.hasNext()) {
+			ContentObject co = it.next();
+			try {
+				ners.add(_server.getRepository().saveContent(co));
 			} catch (Exception e) {
-				e.printStackTrace();
+				Log.warning(Log.FAC_REPO, "Failed to save {0}: {1}", co.name(), e.getMessage());
 				Log.logStackTrace(Level.WARNING, e);
+				it.remove();
 			}
 		}
+		return ners;
 	}
 
 	private void syncKeysForObject(ContentObject co, ContentName name) throws RepositoryException, IOException {
@@ -19,11 +19,18 @@ package org.ccnx.ccn.impl.repo;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import org.ccnx.ccn.CCNHandle;
 import org.ccnx.ccn.CCNInterestHandler;
 import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.LatencyHistogram;
 import org.ccnx.ccn.impl.QueuedContentHandler;
 import org.ccnx.ccn.impl.repo.RepositoryInfo.RepositoryInfoObject;
 import org.ccnx.ccn.impl.support.Log;
@@ -39,29 +46,110 @@ import org.ccnx.ccn.protocol.Interest;
 /**
  * Handles interests matching the repository's namespace.
  *
+ * Command interests (start write, name enumeration, checked write and bulk import) are
+ * processed one at a time in the order they arrive. If SystemConfiguration.REPO_READ_THREADS
+ * is not 0, plain reads are processed in parallel on a pool of that many threads so that a slow
+ * lookup doesn't hold up other reads. When the pool's queue is full the thread handing
+ * out interests does the read itself, which slows down the flow of new interests.
+ *
+ * The time interests spend in each Stage is kept in a LatencyHistogram.
+ *
  * @see RepositoryServer
  * @see RepositoryFlowControl
  * @see RepositoryDataListener
  */
 
-public class RepositoryInterestHandler extends QueuedContentHandler<Interest> implements Runnable, CCNInterestHandler {
+public class RepositoryInterestHandler extends QueuedContentHandler<RepositoryInterestHandler.QueuedInterest> implements Runnable, CCNInterestHandler {
 	private final RepositoryServer _server;
 	private final CCNHandle _handle;
 	private boolean _shutdown = false;
+	private final ThreadPoolExecutor _readPool;
+
+	/**
+	 * Where the time to handle an interest goes
+	 */
+	public enum Stage {
+		Queue ("waiting to be processed"),
+		Lookup ("finding content in the repository"),
+		Put ("sending the content");
+
+		protected final String _description;
+
+		Stage(String description) {
+			_description = description;
+		}
+
+		public String getDescription() {
+			return _description;
+		}
+	}
+
+	private final EnumMap<Stage, LatencyHistogram> _latency = new EnumMap<Stage, LatencyHistogram>(Stage.class);
+
+	protected static class QueuedInterest {
+		protected final Interest _interest;
+		protected final long _queued;
+
+		protected QueuedInterest(Interest interest) {
+			_interest = interest;
+			_queued = System.nanoTime();
+		}
+	}
 
 	public RepositoryInterestHandler(RepositoryServer server) {
 		_server = server;
 		_handle = server.getHandle();
+		for (Stage stage : Stage.values())
+			_latency.put(stage, new LatencyHistogram("Interest time " + stage.getDescription()));
+		int threads = SystemConfiguration.REPO_READ_THREADS;
+		if (threads > 0) {
+			_readPool = new ThreadPoolExecutor(threads, threads, SystemConfiguration.SYSTEM_THREAD_LIFE, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(SystemConfiguration.REPO_READ_QUEUE), new ThreadFactory() {
+						private final AtomicInteger _count = new AtomicInteger(0);
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "Repository reader " + _count.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					}, new ThreadPoolExecutor.CallerRunsPolicy());
+			_readPool.allowCoreThreadTimeOut(true);
+		} else
+			_readPool = null;
 	}
 
 	public boolean handleInterest(Interest interest) {
 		_server._stats.increment(RepositoryServer.StatsEnum.HandleInterest);
 		if (Log.isLoggable(Log.FAC_REPO, Level.FINEST))
 			Log.finest(Log.FAC_REPO, "Queueing interest: {0}", interest.name());
-		add(interest);
+		final QueuedInterest qi = new QueuedInterest(interest);
+		if (null != _readPool && !interest.name().componentStartsWith(CommandMarker.COMMAND_PREFIX)) {
+			_readPool.execute(new Runnable() {
+				public void run() {
+					if (_shutdown)
+						return;
+					_latency.get(Stage.Queue).record(System.nanoTime() - qi._queued);
+					try {
+						read(qi._interest);
+					} catch (Exception e) {
+						_server._stats.increment(RepositoryServer.StatsEnum.HandleInterestErrors);
+						Log.logStackTrace(Level.WARNING, e);
+						e.printStackTrace();
+					}
+				}
+			});
+		} else
+			add(qi);
 		return true;		// In the repository we never want to service an interest again
 	}
 
+	/**
+	 * @param stage
+	 * @return the times interests have spent in stage
+	 */
+	public LatencyHistogram getLatency(Stage stage) {
+		return _latency.get(stage);
+	}
+
 	/**
 	 * Parse incoming interests for type and dispatch those dedicated to some special purpose.
 	 * Interests can be to start a write or a name enumeration request.
@@ -69,7 +157,9 @@ public class RepositoryInterestHandler extends QueuedContentHandler<Interest> im
 	 * the repository and the request is sent to the RepositoryStore to be processed.
 	 */
 	@Override
-	public void process(Interest interest) {
+	public void process(QueuedInterest qi) {
+		Interest interest = qi._interest;
+		_latency.get(Stage.Queue).record(System.nanoTime() - qi._queued);
 
 		if (Log.isLoggable(Log.FAC_REPO, Level.FINER))
 			Log.finer(Log.FAC_REPO, "Saw interest: {0}", interest.name());
@@ -108,16 +198,7 @@ public class RepositoryInterestHandler extends QueuedContentHandler<Interest> im
 						_server._stats.increment(RepositoryServer.StatsEnum.HandleInterestBulkImportIgnored);
 				}
 			}
-			_server._stats.increment(RepositoryServer.StatsEnum.HandleInterestUncategorized);
-			ContentObject content = _server.getRepository().getContent(interest);
-			if (content != null) {
-				if (Log.isLoggable(Log.FAC_REPO, Level.FINEST))
-					Log.finest(Log.FAC_REPO, "Satisfying interest: {0} with content {1}", interest, content.name());
-				_handle.put(content);
-			} else {
-				if (Log.isLoggable(Log.FAC_REPO, Level.FINE))
-					Log.fine(Log.FAC_REPO, "Unsatisfied interest: {0}", interest);
-			}
+			read(interest);
 		} catch (Exception e) {
 			_server._stats.increment(RepositoryServer.StatsEnum.HandleInterestErrors);
 			Log.logStackTrace(Level.WARNING, e);
@@ -125,6 +206,27 @@ public class RepositoryInterestHandler extends QueuedContentHandler<Interest> im
 		}
 	}
 
+	/**
+	 * Answer an interest from the content in the repository, if there is a match
+	 * @param interest
+	 */
+	protected void read(Interest interest) throws RepositoryException, IOException {
+		_server._stats.increment(RepositoryServer.StatsEnum.HandleInterestUncategorized);
+		long start = System.nanoTime();
+		ContentObject content = _server.getRepository().getContent(interest);
+		long found = System.nanoTime();
+		_latency.get(Stage.Lookup).record(found - start);
+		if (content != null) {
+			if (Log.isLoggable(Log.FAC_REPO, Level.FINEST))
+				Log.finest(Log.FAC_REPO, "Satisfying interest: {0} with content {1}", interest, content.name());
+			_handle.put(content);
+			_latency.get(Stage.Put).record(System.nanoTime() - found);
+		} else {
+			if (Log.isLoggable(Log.FAC_REPO, Level.FINE))
+				Log.fine(Log.FAC_REPO, "Unsatisfied interest: {0}", interest);
+		}
+	}
+
 	protected boolean _checkShutdown() {
 		return _shutdown;
 	}
@@ -347,5 +449,7 @@ public class RepositoryInterestHandler extends QueuedContentHandler<Interest> im
 
 	public void shutdown() {
 		_shutdown = true;
+		if (null != _readPool)
+			_readPool.shutdown();
 	}
 }
@@ -28,6 +28,7 @@ import java.util.logging.Level;
 import org.ccnx.ccn.CCNHandle;
 import org.ccnx.ccn.config.SystemConfiguration;
 import org.ccnx.ccn.impl.CCNStats;
+import org.ccnx.ccn.impl.LatencyHistogram;
 import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
 import org.ccnx.ccn.impl.CCNStats.CCNStatistics;
 import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
@@ -162,6 +163,7 @@ public class RepositoryServer implements CCNStatistics {
 			_handle = repo.getHandle();
 			_writer = new CCNWriter(_handle);
 			_iHandler = new RepositoryInterestHandler(this);
+			_repo.setStats(_stats);
 
 			_responseName = KeyProfile.keyName(null, _handle.keyManager().getDefaultKeyID());
 
@@ -644,6 +646,14 @@ public class RepositoryServer implements CCNStatistics {
 		return _stats;
 	}
 
+	/**
+	 * @param stage
+	 * @return the times interests have spent in stage
+	 */
+	public LatencyHistogram getInterestLatency(RepositoryInterestHandler.Stage stage) {
+		return _iHandler.getLatency(stage);
+	}
+
 	public enum StatsEnum implements IStatsEnum {
 		// ====================================
 		// Just edit this list, dont need to change anything else
@@ -682,6 +692,14 @@ public class RepositoryServer implements CCNStatistics {
 		HandleContentExpressInterest ("interests", "Number of interests expressed in handleContent()"),
 		HandleContentCancelInterest ("interests", "Number of interests cancelled"),
 		HandleContentExpressInterestErrors ("errors", "Number of errors expressing interests in handleContent()"),
+
+		WriteBatches ("batches", "Number of batches of content saved by RepositoryDataHandler"),
+		WriteBatchSize ("objects", "Average number of objects in a batch"),
+		WriteBatchLatency ("nanos", "Average time to save a batch, including any sync"),
+
+		CacheHits ("objects", "Number of reads served from the repository store's content cache"),
+		CacheMisses ("objects", "Number of reads not found in the repository store's content cache"),
+		CacheEvictions ("objects", "Number of objects evicted from the repository store's content cache"),
 ;
 
 
@@ -19,9 +19,11 @@ package org.ccnx.ccn.impl.repo;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.ccnx.ccn.CCNHandle;
 import org.ccnx.ccn.KeyManager;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
 import org.ccnx.ccn.impl.repo.RepositoryInfo.RepositoryInfoObject;
 import org.ccnx.ccn.profiles.nameenum.NameEnumerationResponse;
 import org.ccnx.ccn.protocol.Component;
@@ -94,6 +96,20 @@ public interface RepositoryStore {
 	 */
 	public NameEnumerationResponse saveContent(ContentObject content) throws RepositoryException;
 	
+	/**
+	 * Save a batch of content in the repository. Stores may write the batch together,
+	 * which is cheaper than saving the objects one at a time.
+	 * @param content
+	 * @return the NameEnumerationResponse for each object, in the same order as content
+	 */
+	public List<NameEnumerationResponse> saveContent(List<ContentObject> content) throws RepositoryException;
+	
+	/**
+	 * Set the statistics of the server using this store, for the store to count its own events in
+	 * @param stats
+	 */
+	public void setStats(CCNEnumStats<RepositoryServer.StatsEnum> stats);
+	
 	/**
 	 * Return the matching content if it exists
 	 * @param interest Interest to match
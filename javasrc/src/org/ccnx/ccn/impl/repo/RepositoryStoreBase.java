@@ -22,11 +22,13 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 
 import org.ccnx.ccn.CCNHandle;
 import org.ccnx.ccn.KeyManager;
 import org.ccnx.ccn.impl.CCNFlowControl.SaveType;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
 import org.ccnx.ccn.impl.repo.PolicyXML.PolicyObject;
 import org.ccnx.ccn.impl.repo.RepositoryInfo.RepositoryInfoObject;
 import org.ccnx.ccn.impl.support.Log;
@@ -48,6 +50,7 @@ public abstract class RepositoryStoreBase implements RepositoryStore {
 	protected RepositoryInfo _info = null;
 	protected CCNHandle _handle = null;
 	protected KeyManager _km = null;
+	protected CCNEnumStats<RepositoryServer.StatsEnum> _stats = null;
 	
 	/**
 	 * Handle diagnostic requests
@@ -68,6 +71,8 @@ public abstract class RepositoryStoreBase implements RepositoryStore {
 	public CCNHandle getHandle() { return _handle; }
 	
 	public KeyManager getKeyManager() { return _km; }
+	
+	public void setStats(CCNEnumStats<RepositoryServer.StatsEnum> stats) { _stats = stats; }
 
 	/**
 	 * Gets the currently valid namespace for this repository
@@ -203,6 +208,16 @@ public abstract class RepositoryStoreBase implements RepositoryStore {
 
 	public abstract NameEnumerationResponse saveContent(ContentObject content) throws RepositoryException;
 
+	/**
+	 * Default is to save the objects one at a time
+	 */
+	public List<NameEnumerationResponse> saveContent(List<ContentObject> content) throws RepositoryException {
+		ArrayList<NameEnumerationResponse> ners = new ArrayList<NameEnumerationResponse>(content.size());
+		for (ContentObject co : content)
+			ners.add(saveContent(co));
+		return ners;
+	}
+
 	public void setPolicy(Policy policy) {
 		_policy = policy;
 	}
@@ -125,9 +125,11 @@ public class CCNDigestHelper extends DigestHelper {
 	 * @return digest of content using DEFAULT_DIGEST_ALGORITHM
 	 */
 	public static byte [] digest(byte [] content, int offset, int length) {
-		CCNDigestHelper dh = new CCNDigestHelper();
-		dh.update(content, offset, length);
-		return dh.digest();
+		try {
+			return threadDigest(DEFAULT_DIGEST_ALGORITHM, content, offset, length);
+		} catch (NoSuchAlgorithmException ex) {
+			throw defaultDigestMissing(DEFAULT_DIGEST_ALGORITHM, ex);
+		}
 	}
 
 	/**
@@ -140,9 +142,7 @@ public class CCNDigestHelper extends DigestHelper {
 	 * @throws NoSuchAlgorithmException if the algorithm is unknown to any of our providers
 	 */
 	public static byte [] digest(String digestAlgorithm, byte [] content, int offset, int length) throws NoSuchAlgorithmException {
-		CCNDigestHelper dh = new CCNDigestHelper(digestAlgorithm);
-		dh.update(content, offset, length);
-		return dh.digest();
+		return threadDigest((null == digestAlgorithm) ? DEFAULT_DIGEST_ALGORITHM : digestAlgorithm, content, offset, length);
 	}
 
 	/**
@@ -176,12 +176,11 @@ public class CCNDigestHelper extends DigestHelper {
 	 * @return digest of concatenated content using DEFAULT_DIGEST_ALGORITHM
 	 */
 	public static byte [] digest(byte contents[][]) {
-		CCNDigestHelper dh = new CCNDigestHelper();
-		for (int i=0; i < contents.length; ++i) {
-			if (null != contents[i])
-				dh.update(contents[i], 0, contents[i].length);
+		try {
+			return threadDigest(DEFAULT_DIGEST_ALGORITHM, contents);
+		} catch (NoSuchAlgorithmException ex) {
+			throw defaultDigestMissing(DEFAULT_DIGEST_ALGORITHM, ex);
 		}
-		return dh.digest();
 	}	
 
 	/**
@@ -193,12 +192,7 @@ public class CCNDigestHelper extends DigestHelper {
 	 * @throws NoSuchAlgorithmException if the algorithm is unknown to any of our providers
 	 */
 	public static byte [] digest(String digestAlgorithm, byte contents[][]) throws NoSuchAlgorithmException {
-		CCNDigestHelper dh = new CCNDigestHelper(digestAlgorithm);
-		for (int i=0; i < contents.length; ++i) {
-			if (null != contents[i])
-				dh.update(contents[i], 0, contents[i].length);
-		}
-		return dh.digest();
+		return threadDigest((null == digestAlgorithm) ? DEFAULT_DIGEST_ALGORITHM : digestAlgorithm, contents);
 	}
 
 
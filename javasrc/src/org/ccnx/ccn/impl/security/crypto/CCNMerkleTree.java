@@ -226,26 +226,30 @@ public class CCNMerkleTree extends MerkleTree {
 	 * @param contentObjects the content
 	 * @throws NoSuchAlgorithmException if the digestAlgorithm unknown
 	 */
-	protected void computeLeafValues(ContentObject [] contentObjects) throws NoSuchAlgorithmException {
+	protected void computeLeafValues(final ContentObject [] contentObjects) throws NoSuchAlgorithmException {
 		// Hash the leaves
-		for (int i=0; i < numLeaves(); ++i) {
-			// DKS -- need to make sure content() doesn't clone
-			try {
-				ContentObject co = contentObjects[i];
-				byte [] blockDigest = CCNDigestHelper.digest(co.prepareContent()); 
-				_tree[leafNodeIndex(i)-1] = new DEROctetString(blockDigest);
-				
-				if (Log.isLoggable(Log.FAC_SIGNING, Level.INFO)) {
-					Log.info("offset: " + 0 + " block length: " + co.contentLength() + " blockDigest " + 
-							DataUtils.printBytes(blockDigest) + " content digest: " + 
-							DataUtils.printBytes(CCNDigestHelper.digest(co.content(), 0, co.contentLength())));
+		hashInParallel(0, numLeaves(), new HashTask() {
+			public void hash(int first, int last) throws NoSuchAlgorithmException {
+				for (int i=first; i < last; ++i) {
+					// DKS -- need to make sure content() doesn't clone
+					try {
+						ContentObject co = contentObjects[i];
+						byte [] blockDigest = computeBlockDigest(digestAlgorithm(), co.prepareContent()); 
+						_tree[leafNodeIndex(i)-1] = new DEROctetString(blockDigest);
+						
+						if (Log.isLoggable(Log.FAC_SIGNING, Level.INFO)) {
+							Log.info("offset: " + 0 + " block length: " + co.contentLength() + " blockDigest " + 
+									DataUtils.printBytes(blockDigest) + " content digest: " + 
+									DataUtils.printBytes(CCNDigestHelper.digest(co.content(), 0, co.contentLength())));
+						}
+		
+					} catch (ContentEncodingException e) {
+						Log.info("Exception in computeBlockDigest, leaf: " + i + " out of " + numLeaves() + " type: " + e.getClass().getName() + ": " + e.getMessage());
+						e.printStackTrace();
+						// DKS todo -- what to throw?
+					}
 				}
-
-			} catch (ContentEncodingException e) {
-				Log.info("Exception in computeBlockDigest, leaf: " + i + " out of " + numLeaves() + " type: " + e.getClass().getName() + ": " + e.getMessage());
-				e.printStackTrace();
-				// DKS todo -- what to throw?
 			}
-		}
+		});
 	}
 }
@@ -31,6 +31,7 @@ import javax.crypto.spec.SecretKeySpec;
 
 import org.ccnx.ccn.KeyManager;
 import org.ccnx.ccn.impl.security.crypto.util.CryptoConstants;
+import org.ccnx.ccn.impl.security.crypto.util.CryptoPrimitiveCache;
 import org.ccnx.ccn.impl.support.DataUtils;
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.io.content.ContentEncodingException;
@@ -284,6 +285,27 @@ public abstract class ContentKeys implements Cloneable {
 		}
 	}
 
+	/**
+	 * Get this thread's cached cipher for the encryption algorithm used by this ContentKeys,
+	 * for work that is finished before the caller returns - such as deriving an IV or sizing
+	 * output. Ciphers handed to callers, which may keep them, come from getCipher().
+	 * @return the cipher, to be initialized by the caller
+	 * @see CryptoPrimitiveCache
+	 */
+	public Cipher getThreadCipher() {
+		try {
+			return CryptoPrimitiveCache.getCipher(_encryptionAlgorithm, KeyManager.PROVIDER);
+		} catch (NoSuchAlgorithmException e) {
+			String err = "Unexpected NoSuchAlgorithmException for an algorithm we have already used!";
+			Log.severe(err);
+			throw new RuntimeException(err, e);
+		} catch (NoSuchPaddingException e) {
+			String err = "Unexpected NoSuchPaddingException for an algorithm we have already used!";
+			Log.severe(err);
+			throw new RuntimeException(err, e);
+		}
+	}
+
 	/**
 	 * Make an encrypting or decrypting Cipher to be used in making a CipherStream to
 	 * wrap CCN data.
@@ -145,7 +145,7 @@ public class EncryptedIVStaticContentKeys extends StaticContentKeys implements C
 	public IvParameterSpec buildEncryptedIV(KeyAndIV keyAndIV, long segmentNumber, int ivLen) throws InvalidKeyException, InvalidAlgorithmParameterException {
 		Log.finest("Thread="+Thread.currentThread()+" Building CTR - master="+DataUtils.printHexBytes(keyAndIV.getIV())+" segment="+segmentNumber+" ivLen="+ivLen);
 
-		Cipher cipher = getCipher();
+		Cipher cipher = getThreadCipher();
 		IvParameterSpec zeroIv = new IvParameterSpec(new byte[cipher.getBlockSize()]);
 		cipher.init(Cipher.ENCRYPT_MODE, keyAndIV.getKey(), zeroIv);
 
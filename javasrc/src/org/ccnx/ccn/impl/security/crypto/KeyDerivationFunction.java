@@ -27,6 +27,7 @@ import javax.crypto.spec.SecretKeySpec;
 import org.ccnx.ccn.impl.encoding.XMLEncodable;
 import org.ccnx.ccn.impl.security.crypto.ContentKeys.ContentInfo;
 import org.ccnx.ccn.impl.security.crypto.ContentKeys.KeyAndIV;
+import org.ccnx.ccn.impl.security.crypto.util.CryptoPrimitiveCache;
 import org.ccnx.ccn.impl.support.DataUtils;
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.io.content.ContentEncodingException;
@@ -248,7 +249,7 @@ public class KeyDerivationFunction {
 		}
 		Mac hmac;
 		try {
-			hmac = Mac.getInstance("HmacSHA256");
+			hmac = CryptoPrimitiveCache.getMac("HmacSHA256");
 		} catch (NoSuchAlgorithmException e1) {
 			Log.severe("No HMAC-SHA256 available! Serious configuration issue!");
 			throw new RuntimeException("No HMAC-SHA256 available! Serious configuration issue!");
@@ -17,10 +17,17 @@
 
 package org.ccnx.ccn.impl.security.crypto;
 
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.security.crypto.util.CryptoPrimitiveCache;
 import org.ccnx.ccn.impl.support.Log;
 
 
@@ -67,6 +74,10 @@ import org.ccnx.ccn.impl.support.Log;
  * 
  * Store node digests internally as DEROctetStrings for more efficient
  * encoding. 
+ * 
+ * Large trees are hashed by up to SystemConfiguration.MERKLE_THREADS threads: the leaves are
+ * split between them, then each level of intermediate nodes is, working up to the root. Each
+ * thread reuses its own MessageDigest rather than creating one per node.
  */
 public class MerkleTree {
 	
@@ -84,6 +95,22 @@ public class MerkleTree {
 	 */
 	protected static final String MERKLE_OID_PREFIX = "1.2.840.113550.11.1.2";
 	
+	/**
+	 * Least number of leaves or nodes worth handing to another thread to hash.
+	 */
+	public static final int PARALLEL_MIN_NODES = 16;
+	
+	/**
+	 * Hash a range of leaves or of the nodes on one level of the tree.
+	 */
+	protected interface HashTask {
+		/**
+		 * @param first first index to hash
+		 * @param last index after the last one to hash
+		 */
+		void hash(int first, int last) throws NoSuchAlgorithmException;
+	}
+	
 	/**
 	 * Build a MerkleTree. This initializes the tree with content, builds the leaf
 	 * and intermediate digests, and derives the root digest.
@@ -494,14 +521,18 @@ public class MerkleTree {
 	 * @param lastBlockLength number of bytes of the last block to use; N/A if isDigest is true
 	 * @throws NoSuchAlgorithmException if digestAlgorithm is unknown
 	 */
-	protected void computeLeafValues(byte contentBlocks[][], boolean isDigest, int baseBlockIndex, int lastBlockLength) throws NoSuchAlgorithmException {
+	protected void computeLeafValues(final byte contentBlocks[][], final boolean isDigest, final int baseBlockIndex, final int lastBlockLength) throws NoSuchAlgorithmException {
 		// Hash the leaves
-		for (int i=0; i < numLeaves(); ++i) {
-			_tree[leafNodeIndex(i)-1] = 
-				new DEROctetString(
-						(isDigest ? contentBlocks[i+baseBlockIndex] : 
-									computeBlockDigest(i, contentBlocks, baseBlockIndex, lastBlockLength)));
-		}
+		hashInParallel(0, numLeaves(), new HashTask() {
+			public void hash(int first, int last) throws NoSuchAlgorithmException {
+				for (int i=first; i < last; ++i) {
+					_tree[leafNodeIndex(i)-1] = 
+						new DEROctetString(
+								(isDigest ? contentBlocks[i+baseBlockIndex] : 
+											computeBlockDigest(i, contentBlocks, baseBlockIndex, lastBlockLength)));
+				}
+			}
+		});
 	}
 	
 	/**
@@ -515,14 +546,18 @@ public class MerkleTree {
 	 * @param blockWidth the length of leaf blocks to create
 	 * @throws NoSuchAlgorithmException if digestAlgorithm is unknown
 	 */
-	protected void computeLeafValues(byte [] content, int offset, int length, int blockWidth) throws NoSuchAlgorithmException {
+	protected void computeLeafValues(final byte [] content, final int offset, final int length, final int blockWidth) throws NoSuchAlgorithmException {
 		// Hash the leaves
-		for (int i=0; i < numLeaves(); ++i) {
-			_tree[leafNodeIndex(i)-1] = 
-				new DEROctetString(
-						(computeBlockDigest(i, content, offset + (blockWidth*i), 
-											((i < numLeaves()-1) ? blockWidth : (length - (blockWidth*i))))));
-		}
+		hashInParallel(0, numLeaves(), new HashTask() {
+			public void hash(int first, int last) throws NoSuchAlgorithmException {
+				for (int i=first; i < last; ++i) {
+					_tree[leafNodeIndex(i)-1] = 
+						new DEROctetString(
+								(computeBlockDigest(i, content, offset + (blockWidth*i), 
+													((i < numLeaves()-1) ? blockWidth : (length - (blockWidth*i))))));
+				}
+			}
+		});
 	}
 
 	/**
@@ -531,14 +566,101 @@ public class MerkleTree {
 	 * @throws NoSuchAlgorithmException if digestAlgorithm is unknown
 	 */
 	protected void computeNodeValues() throws NoSuchAlgorithmException {
-		// Climb the tree
-		int firstNode = firstLeaf()-1;
-		for (int i=firstNode; i >= ROOT_NODE; --i) {
-			byte [] nodeDigest = CCNDigestHelper.digest(digestAlgorithm(), get(leftChild(i)), get(rightChild(i)));
-			_tree[i-1] = new DEROctetString(nodeDigest);
+		// Climb the tree a level at a time. The children of the nodes on one level are
+		// leaves or nodes on the level below, so the nodes on a level can be hashed in any order.
+		int lastNode = firstLeaf()-1;
+		int levelStart = Integer.highestOneBit(lastNode);
+		HashTask task = new HashTask() {
+			public void hash(int first, int last) throws NoSuchAlgorithmException {
+				for (int i=first; i < last; ++i) {
+					byte [] nodeDigest = computeNodeDigest(digestAlgorithm(), get(leftChild(i)), get(rightChild(i)));
+					_tree[i-1] = new DEROctetString(nodeDigest);
+				}
+			}
+		};
+		while (lastNode >= ROOT_NODE) {
+			hashInParallel(levelStart, lastNode+1, task);
+			lastNode = levelStart-1;
+			levelStart /= 2;
 		}
 	}
 	
+	/**
+	 * Run a task over a range of leaves or nodes, split between up to SystemConfiguration.MERKLE_THREADS
+	 * threads from the system thread pool. The calling thread hashes the first share, and
+	 * small ranges are hashed entirely on the calling thread.
+	 * @param first first index to hash
+	 * @param last index after the last one to hash
+	 * @param task the hashing to do
+	 * @throws NoSuchAlgorithmException if the task throws it on any thread
+	 */
+	protected static void hashInParallel(int first, int last, final HashTask task) throws NoSuchAlgorithmException {
+		int threads = Math.min(SystemConfiguration.MERKLE_THREADS, (last - first) / PARALLEL_MIN_NODES);
+		if (threads <= 1) {
+			task.hash(first, last);
+			return;
+		}
+		
+		int share = (last - first + threads - 1) / threads;
+		ArrayList<Future<Object>> shares = new ArrayList<Future<Object>>(threads);
+		for (int start = first + share; start < last; start += share) {
+			final int shareStart = start;
+			final int shareEnd = Math.min(start + share, last);
+			shares.add(SystemConfiguration._systemThreadpool.submit(new Callable<Object>() {
+				public Object call() throws NoSuchAlgorithmException {
+					task.hash(shareStart, shareEnd);
+					return null;
+				}
+			}));
+		}
+		
+		Throwable failure = null;
+		try {
+			task.hash(first, first + share);
+		} catch (Throwable t) {
+			failure = t;
+		}
+		
+		// Always wait for the other shares, so no thread is still writing the tree when we return
+		boolean interrupted = false;
+		for (Future<Object> result : shares) {
+			while (true) {
+				try {
+					result.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (null == failure)
+						failure = e.getCause();
+					break;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		
+		if (failure instanceof NoSuchAlgorithmException)
+			throw (NoSuchAlgorithmException)failure;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException)failure;
+		if (failure instanceof Error)
+			throw (Error)failure;
+	}
+	
+	/**
+	 * Get a MessageDigest for this thread to reuse, rather than making a new one for every
+	 * digest. It is reset, and must not be kept past the caller's use of it.
+	 * @param digestAlgorithm the digest algorithm
+	 * @return the digest
+	 * @throws NoSuchAlgorithmException if digestAlgorithm is unknown
+	 */
+	protected static MessageDigest threadDigest(String digestAlgorithm) throws NoSuchAlgorithmException {
+		if (null == digestAlgorithm)
+			digestAlgorithm = CCNDigestHelper.DEFAULT_DIGEST_ALGORITHM;
+		return CryptoPrimitiveCache.getDigest(digestAlgorithm);
+	}
+	
 	/**
 	 * Function for validating paths. Given a digest, it returns what node in
 	 * the tree has that digest. If no node has that digest, returns 0. 
@@ -600,7 +722,7 @@ public class MerkleTree {
 	 * @throws NoSuchAlgorithmException if digestAlgorithm is unknown
 	 */
 	protected byte [] computeBlockDigest(int leafIndex, byte [] content, int offset, int length) throws NoSuchAlgorithmException {
-		return CCNDigestHelper.digest(_digestAlgorithm, content, offset, length);		
+		return computeBlockDigest(_digestAlgorithm, content, offset, length);		
 	}
 	
 	/**
@@ -611,7 +733,10 @@ public class MerkleTree {
 	 * @throws NoSuchAlgorithmException if digestAlgorithm is unknown
 	 */
 	public static byte [] computeBlockDigest(String digestAlgorithm, byte [] content) throws NoSuchAlgorithmException {
-		return CCNDigestHelper.digest(digestAlgorithm, content);		
+		if (null == content) {
+			throw new IllegalArgumentException("Content cannot be null!");
+		}
+		return computeBlockDigest(digestAlgorithm, content, 0, content.length);		
 	}
 
 	/**
@@ -625,7 +750,9 @@ public class MerkleTree {
 	 * @throws NoSuchAlgorithmException if digestAlgorithm is unknown
 	 */
 	public static byte [] computeBlockDigest(String digestAlgorithm, byte [] content, int offset, int length) throws NoSuchAlgorithmException {
-		return CCNDigestHelper.digest(digestAlgorithm, content, offset, length);		
+		MessageDigest md = threadDigest(digestAlgorithm);
+		md.update(content, offset, length);
+		return md.digest();
 	}
 
 	/**
@@ -651,7 +778,11 @@ public class MerkleTree {
 	 * @throws NoSuchAlgorithmException 
 	 */
 	public static byte [] computeNodeDigest(String algorithm, byte [] left, byte [] right) throws NoSuchAlgorithmException {
-		return CCNDigestHelper.digest(algorithm, left, right);
+		MessageDigest md = threadDigest(algorithm);
+		md.update(left);
+		if (null != right)
+			md.update(right);
+		return md.digest();
 	}
 	
 	/**
@@ -0,0 +1,234 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl.security.crypto;
+
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.CCNStats;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.impl.CCNStats.CCNStatistics;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
+
+/**
+ * Remembers public key signatures that have been verified over a content proxy - in practice
+ * the root of a Merkle hash tree - so the other segments signed under the same root only need
+ * their path to the root checked, rather than another public key operation.
+ *
+ * An entry is keyed by everything the verification depended on: the proxy, the signature bytes,
+ * the digest algorithm and the public key, all compared in full. Only signatures that verified
+ * are added, so a hit can only ever say yes to something that was verified before. The least
+ * recently used entries are dropped once there are more than the limit.
+ */
+public class VerifiedSignatureCache implements CCNStatistics {
+
+	// volatile so the double-checked creation in getDefaultCache publishes it safely
+	protected static volatile VerifiedSignatureCache _defaultCache = null;
+
+	protected final int _maxEntries;
+	protected CCNEnumStats<StatsEnum> _stats = new CCNEnumStats<StatsEnum>(StatsEnum.Hits);
+
+	// Access ordered so the eldest entry is the least recently used
+	protected final LinkedHashMap<VerifiedSignature, VerifiedSignature> _cache;
+
+	protected static class VerifiedSignature {
+		protected final byte [] _proxy;
+		protected final byte [] _signature;
+		protected final String _digestAlgorithm;
+		protected final PublicKey _publicKey;
+		protected final int _hashCode;
+
+		protected VerifiedSignature(byte [] proxy, byte [] signature, String digestAlgorithm, PublicKey publicKey) {
+			_proxy = proxy;
+			_signature = signature;
+			_digestAlgorithm = digestAlgorithm;
+			_publicKey = publicKey;
+			int hash = Arrays.hashCode(proxy);
+			hash = 31 * hash + Arrays.hashCode(signature);
+			hash = 31 * hash + ((null == digestAlgorithm) ? 0 : digestAlgorithm.hashCode());
+			_hashCode = 31 * hash + publicKey.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return _hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof VerifiedSignature))
+				return false;
+			VerifiedSignature other = (VerifiedSignature)obj;
+			if (_hashCode != other._hashCode)
+				return false;
+			if (null == _digestAlgorithm) {
+				if (null != other._digestAlgorithm)
+					return false;
+			} else if (!_digestAlgorithm.equals(other._digestAlgorithm))
+				return false;
+			return Arrays.equals(_proxy, other._proxy) && Arrays.equals(_signature, other._signature) &&
+					_publicKey.equals(other._publicKey);
+		}
+	}
+
+	/**
+	 * @return the cache used by ContentObject verification, sized by
+	 * 	SystemConfiguration.VERIFIED_SIGNATURE_CACHE_SIZE
+	 */
+	public static VerifiedSignatureCache getDefaultCache() {
+		VerifiedSignatureCache cache = _defaultCache;
+		if (null == cache) {
+			synchronized (VerifiedSignatureCache.class) {
+				cache = _defaultCache;
+				if (null == cache) {
+					cache = new VerifiedSignatureCache(SystemConfiguration.VERIFIED_SIGNATURE_CACHE_SIZE);
+					_defaultCache = cache;
+				}
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * @param maxEntries the number of signatures to remember; 0 remembers none
+	 */
+	public VerifiedSignatureCache(int maxEntries) {
+		_maxEntries = maxEntries;
+		_cache = new LinkedHashMap<VerifiedSignature, VerifiedSignature>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<VerifiedSignature, VerifiedSignature> eldest) {
+				if (size() <= _maxEntries)
+					return false;
+				_stats.increment(StatsEnum.Evictions);
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @param proxy the content proxy that was signed
+	 * @param signature the signature bytes
+	 * @param digestAlgorithm the digest algorithm of the signature
+	 * @param publicKey the key it was verified with
+	 * @return true if this signature has been verified over this proxy with this key
+	 */
+	public boolean isVerified(byte [] proxy, byte [] signature, String digestAlgorithm, PublicKey publicKey) {
+		if (_maxEntries <= 0 || null == proxy || null == signature || null == publicKey)
+			return false;
+		boolean hit;
+		VerifiedSignature key = new VerifiedSignature(proxy, signature, digestAlgorithm, publicKey);
+		synchronized (_cache) {
+			hit = (null != _cache.get(key));
+		}
+		_stats.increment(hit ? StatsEnum.Hits : StatsEnum.Misses);
+		return hit;
+	}
+
+	/**
+	 * Remember a signature that has been verified. Never call this for one that hasn't.
+	 * @param proxy the content proxy that was signed
+	 * @param signature the signature bytes
+	 * @param digestAlgorithm the digest algorithm of the signature
+	 * @param publicKey the key it was verified with
+	 */
+	public void addVerified(byte [] proxy, byte [] signature, String digestAlgorithm, PublicKey publicKey) {
+		if (_maxEntries <= 0 || null == proxy || null == signature || null == publicKey)
+			return;
+		// Copy so later changes by the caller can't alter what we vouch for
+		VerifiedSignature key = new VerifiedSignature(proxy.clone(), signature.clone(), digestAlgorithm, publicKey);
+		synchronized (_cache) {
+			_cache.put(key, key);
+		}
+	}
+
+	public void clear() {
+		synchronized (_cache) {
+			_cache.clear();
+		}
+	}
+
+	/**
+	 * @return the number of signatures remembered
+	 */
+	public int size() {
+		synchronized (_cache) {
+			return _cache.size();
+		}
+	}
+
+	public CCNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Hits ("verifications", "Number of signatures found already verified"),
+		Misses ("verifications", "Number of signatures not found already verified"),
+		Evictions ("signatures", "Number of verified signatures dropped from the cache"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+}
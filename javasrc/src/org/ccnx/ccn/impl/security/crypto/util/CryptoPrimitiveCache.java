@@ -0,0 +1,115 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl.security.crypto.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.HashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Per-thread caches of MessageDigest, Mac and Cipher instances, so code that digests,
+ * derives keys for or encrypts every segment doesn't look the algorithm up in the
+ * providers each time.
+ *
+ * An instance returned from here is shared by everything on the calling thread that asks
+ * for the same algorithm. Use it and finish with it before calling anything that might ask
+ * for it again, and never hand it to anything that keeps it - such as a cipher stream that
+ * outlives the call. Digests are reset before they are returned; Macs and Ciphers must be
+ * initialized by the caller, as always.
+ */
+public class CryptoPrimitiveCache {
+
+	private static final ThreadLocal<HashMap<String, MessageDigest>> _digests =
+		new ThreadLocal<HashMap<String, MessageDigest>>() {
+			@Override
+			protected HashMap<String, MessageDigest> initialValue() {
+				return new HashMap<String, MessageDigest>();
+			}
+		};
+
+	private static final ThreadLocal<HashMap<String, Mac>> _macs =
+		new ThreadLocal<HashMap<String, Mac>>() {
+			@Override
+			protected HashMap<String, Mac> initialValue() {
+				return new HashMap<String, Mac>();
+			}
+		};
+
+	private static final ThreadLocal<HashMap<String, Cipher>> _ciphers =
+		new ThreadLocal<HashMap<String, Cipher>>() {
+			@Override
+			protected HashMap<String, Cipher> initialValue() {
+				return new HashMap<String, Cipher>();
+			}
+		};
+
+	/**
+	 * @param digestAlgorithm the digest algorithm
+	 * @return this thread's digest for that algorithm, reset
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static MessageDigest getDigest(String digestAlgorithm) throws NoSuchAlgorithmException {
+		HashMap<String, MessageDigest> digests = _digests.get();
+		MessageDigest md = digests.get(digestAlgorithm);
+		if (null == md) {
+			md = MessageDigest.getInstance(digestAlgorithm);
+			digests.put(digestAlgorithm, md);
+		} else {
+			md.reset();
+		}
+		return md;
+	}
+
+	/**
+	 * @param macAlgorithm the MAC algorithm, e.g. "HmacSHA256"
+	 * @return this thread's Mac for that algorithm, to be initialized with a key before each use
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static Mac getMac(String macAlgorithm) throws NoSuchAlgorithmException {
+		HashMap<String, Mac> macs = _macs.get();
+		Mac mac = macs.get(macAlgorithm);
+		if (null == mac) {
+			mac = Mac.getInstance(macAlgorithm);
+			macs.put(macAlgorithm, mac);
+		}
+		return mac;
+	}
+
+	/**
+	 * @param cipherAlgorithm the full cipher specification, e.g. "AES/CTR/NoPadding"
+	 * @param provider the provider to get it from, or null for any
+	 * @return this thread's Cipher for that algorithm and provider, to be initialized by the caller
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchPaddingException
+	 */
+	public static Cipher getCipher(String cipherAlgorithm, Provider provider) throws NoSuchAlgorithmException, NoSuchPaddingException {
+		String key = (null == provider) ? cipherAlgorithm : cipherAlgorithm + "/" + provider.getName();
+		HashMap<String, Cipher> ciphers = _ciphers.get();
+		Cipher cipher = ciphers.get(key);
+		if (null == cipher) {
+			cipher = (null == provider) ? Cipher.getInstance(cipherAlgorithm) : Cipher.getInstance(cipherAlgorithm, provider);
+			ciphers.put(key, cipher);
+		}
+		return cipher;
+	}
+}
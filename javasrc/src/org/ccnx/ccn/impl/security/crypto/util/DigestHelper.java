@@ -129,9 +129,11 @@ public class DigestHelper {
 	 * @return the array of bytes for the resulting hash value.
 	 */
 	public static byte [] digest(byte [] content, int offset, int length) {
-		DigestHelper dh = new DigestHelper();
-		dh.update(content, offset, length);
-		return dh.digest();
+		try {
+			return threadDigest(DEFAULT_DIGEST_ALGORITHM, content, offset, length);
+		} catch (NoSuchAlgorithmException ex) {
+			throw defaultDigestMissing(DEFAULT_DIGEST_ALGORITHM, ex);
+		}
 	}
 
 	/**
@@ -145,9 +147,7 @@ public class DigestHelper {
 	 * @throws NoSuchAlgorithmException
 	 */
 	public static byte [] digest(String digestAlgorithm, byte [] content, int offset, int length) throws NoSuchAlgorithmException {
-		DigestHelper dh = new DigestHelper(digestAlgorithm);
-		dh.update(content, offset, length);
-		return dh.digest();
+		return threadDigest((null == digestAlgorithm) ? DEFAULT_DIGEST_ALGORITHM : digestAlgorithm, content, offset, length);
 	}
 
 	/**
@@ -184,11 +184,11 @@ public class DigestHelper {
 	 * @return the array of bytes for the resulting hash value.
 	 */
 	public static byte [] digest(byte[][] contents) {
-		DigestHelper dh = new DigestHelper();
-		for (int i=0; i < contents.length; ++i) {
-			dh.update(contents[i], 0, contents[i].length);
+		try {
+			return threadDigest(DEFAULT_DIGEST_ALGORITHM, contents);
+		} catch (NoSuchAlgorithmException ex) {
+			throw defaultDigestMissing(DEFAULT_DIGEST_ALGORITHM, ex);
 		}
-		return dh.digest();
 	}	
 
 	/**
@@ -201,11 +201,51 @@ public class DigestHelper {
 	 * @throws NoSuchAlgorithmException
 	 */
 	public static byte [] digest(String digestAlgorithm, byte[][] contents) throws NoSuchAlgorithmException {
-		DigestHelper dh = new DigestHelper(digestAlgorithm);
+		return threadDigest((null == digestAlgorithm) ? DEFAULT_DIGEST_ALGORITHM : digestAlgorithm, contents);
+	}
+
+	/**
+	 * Digest part of an array of bytes with this thread's cached digest for an algorithm,
+	 * rather than looking the algorithm up again.
+	 * @param digestAlgorithm the digest algorithm, must not be null.
+	 * @param content the array of bytes.
+	 * @param offset the offset.
+	 * @param length the number of bytes to use, starting at offset.
+	 * @return the array of bytes for the resulting hash value.
+	 * @throws NoSuchAlgorithmException
+	 * @see CryptoPrimitiveCache
+	 */
+	protected static byte [] threadDigest(String digestAlgorithm, byte [] content, int offset, int length) throws NoSuchAlgorithmException {
+		MessageDigest md = CryptoPrimitiveCache.getDigest(digestAlgorithm);
+		md.update(content, offset, length);
+		return md.digest();
+	}
+
+	/**
+	 * Digest the concatenation of an array of byte arrays with this thread's cached digest
+	 * for an algorithm. Null arrays are skipped.
+	 * @param digestAlgorithm the digest algorithm, must not be null.
+	 * @param contents the array of byte arrays.
+	 * @return the array of bytes for the resulting hash value.
+	 * @throws NoSuchAlgorithmException
+	 * @see CryptoPrimitiveCache
+	 */
+	protected static byte [] threadDigest(String digestAlgorithm, byte [][] contents) throws NoSuchAlgorithmException {
+		MessageDigest md = CryptoPrimitiveCache.getDigest(digestAlgorithm);
 		for (int i=0; i < contents.length; ++i) {
-			dh.update(contents[i], 0, contents[i].length);
+			if (null != contents[i])
+				md.update(contents[i], 0, contents[i].length);
 		}
-		return dh.digest();
+		return md.digest();
+	}
+
+	/**
+	 * The default digest algorithm should always be there, so treat its absence as fatal.
+	 */
+	protected static RuntimeException defaultDigestMissing(String digestAlgorithm, NoSuchAlgorithmException ex) {
+		// possible configuration problem
+		Log.warning("Fatal Error: cannot find default algorithm " + digestAlgorithm);
+		return new RuntimeException("Error: can't find default algorithm " + digestAlgorithm + "!  " + ex.toString());
 	}
 
 	/**
@@ -0,0 +1,87 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl.support;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream that reads from a ByteBuffer, starting at the buffer's position.
+ * Reading moves the position of the buffer, so callers that share a buffer between
+ * threads should give each stream its own duplicate.
+ *
+ * Supports mark and reset, so it can be decoded from directly without an extra buffering stream.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	protected ByteBuffer _buffer;
+
+	/**
+	 * @param buffer the data to read
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		_buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		if (!_buffer.hasRemaining())
+			return -1;
+		return _buffer.get() & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0)
+			return 0;
+		if (!_buffer.hasRemaining())
+			return -1;
+		len = Math.min(len, _buffer.remaining());
+		_buffer.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public long skip(long n) {
+		if (n <= 0)
+			return 0;
+		int skipped = (int)Math.min(n, _buffer.remaining());
+		_buffer.position(_buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return _buffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public void mark(int readlimit) {
+		_buffer.mark();
+	}
+
+	@Override
+	public void reset() {
+		_buffer.reset();
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl.support;
+
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * An OutputStream that writes into a ByteBuffer, starting at the buffer's position.
+ * The buffer doesn't grow; writing past its limit throws BufferOverflowException
+ * without writing any of the bytes of that write. As some writers wrap what the stream
+ * throws, overflowed() tells whether that happened.
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+	protected ByteBuffer _buffer;
+	protected boolean _overflowed = false;
+
+	/**
+	 * @param buffer the buffer to write to
+	 */
+	public ByteBufferOutputStream(ByteBuffer buffer) {
+		_buffer = buffer;
+	}
+
+	@Override
+	public void write(int b) {
+		try {
+			_buffer.put((byte)b);
+		} catch (BufferOverflowException boe) {
+			_overflowed = true;
+			throw boe;
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		try {
+			_buffer.put(b, off, len);
+		} catch (BufferOverflowException boe) {
+			_overflowed = true;
+			throw boe;
+		}
+	}
+
+	/**
+	 * @return true if a write didn't fit in the buffer
+	 */
+	public boolean overflowed() {
+		return _overflowed;
+	}
+}
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.ArrayList;
@@ -97,17 +98,9 @@ public final class DataUtils {
 					return (-1);
 				} else if (leftLength > rightLength) {
 					return (1);
-				} else {
-					// They have equal lengths - compare byte by byte
-					for (int i=0; i < leftLength; ++i) {
-						short leftSubI = (short)(left[i] & 0xff);
-						short rightSubI = (short)(right[i] & 0xff);
-						if (leftSubI < rightSubI) {
-							return (-1);
-						} else if (leftSubI > rightSubI) {
-							return (1);
-						}
-					}
+				} else if (left != right) {
+					// They have equal lengths - compare them a word at a time
+					return compareUnsigned(left, right, leftLength);
 				}
 			}
 		} else {
@@ -120,6 +113,38 @@ public final class DataUtils {
 		return (0);
 	}
 
+	/**
+	 * Unsigned lexicographic comparison of the first length bytes of two arrays. Compares
+	 * 8 bytes at a time as big-endian longs, then any remaining bytes one at a time.
+	 * @param left
+	 * @param right
+	 * @param length number of bytes to compare, no more than the length of either array
+	 * @return < 0 if left comes before right, 0 if they are equal, > 0 if left comes after right
+	 */
+	public static int compareUnsigned(byte [] left, byte [] right, int length) {
+		int i = 0;
+		if (length >= 8) {
+			// ByteBuffer reads a long in one go where assembling it from bytes wouldn't
+			ByteBuffer leftBuffer = ByteBuffer.wrap(left);
+			ByteBuffer rightBuffer = ByteBuffer.wrap(right);
+			for (int words = length & ~7; i < words; i += 8) {
+				long leftWord = leftBuffer.getLong(i);
+				long rightWord = rightBuffer.getLong(i);
+				if (leftWord != rightWord) {
+					// Flipping the sign bits makes signed comparison order them as unsigned
+					return ((leftWord ^ Long.MIN_VALUE) < (rightWord ^ Long.MIN_VALUE)) ? -1 : 1;
+				}
+			}
+		}
+		for (; i < length; ++i) {
+			int leftSubI = left[i] & 0xff;
+			int rightSubI = right[i] & 0xff;
+			if (leftSubI != rightSubI)
+				return (leftSubI < rightSubI) ? -1 : 1;
+		}
+		return 0;
+	}
+
 	/**
 	 * This is not like compare(byte[], byte[]).  That is shortlex.  This
 	 * is an actual lexigraphic ordering based on the shortlex compare
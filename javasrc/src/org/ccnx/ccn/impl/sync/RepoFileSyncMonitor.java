@@ -0,0 +1,333 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl.sync;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+
+import org.ccnx.ccn.CCNSyncHandler;
+import org.ccnx.ccn.config.ConfigurationException;
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.encoding.BinaryXMLCodec;
+import org.ccnx.ccn.impl.encoding.BinaryXMLDecoder;
+import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.content.ConfigSlice;
+import org.ccnx.ccn.io.content.ContentDecodingException;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.Signature;
+
+/**
+ * Finds new names in the repository by following its backend file, repoFile1 in the
+ * CCNR_DIRECTORY directory, as ccnr appends content to it.
+ *
+ * The file is a sequence of ccnb encoded ContentObjects. While callbacks are registered a
+ * thread from the library threadpool reads what has been appended since it last looked and
+ * decodes the names of the new objects in-process, so unlike FileBasedSyncMonitor this
+ * doesn't need ccnnamelist or rescan the whole file. Names are reported from the time the
+ * monitor starts; content already in the repository then is not.
+ *
+ * Each name is given to the handlers of the slices it is in, as decided by
+ * ConfigSlice.matches. Slices are indexed by prefix, so a name is only tested against
+ * slices whose prefix is one of its own.
+ */
+public class RepoFileSyncMonitor implements SyncMonitor, Runnable {
+
+	public static final String REPO_FILE = "repoFile1";
+
+	// How often to look for new content
+	public static final int DEFAULT_POLL_INTERVAL = 200;
+
+	protected static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+	// How a ContentObject starts, to find the next one after an object we can't decode
+	protected static final byte [] CONTENT_OBJECT_TAG;
+	static {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try {
+			BinaryXMLCodec.encodeTypeAndVal(BinaryXMLCodec.XML_DTAG, CCNProtocolDTags.ContentObject, baos);
+		} catch (IOException e) {}
+		CONTENT_OBJECT_TAG = baos.toByteArray();
+	}
+
+	protected final File _repoFile;
+	protected final int _pollInterval;
+
+	// Where the next object starts, -1 until started
+	protected long _offset = -1;
+	protected ByteBuffer _buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+	protected final BinaryXMLDecoder _decoder = new BinaryXMLDecoder();
+
+	// All guarded by _callbacks
+	protected final HashMap<ConfigSlice, ArrayList<CCNSyncHandler>> _callbacks = new HashMap<ConfigSlice, ArrayList<CCNSyncHandler>>();
+	protected final HashMap<ContentName, ArrayList<ConfigSlice>> _slicesByPrefix = new HashMap<ContentName, ArrayList<ConfigSlice>>();
+	protected final TreeSet<Integer> _prefixCounts = new TreeSet<Integer>();
+	protected boolean _running = false;
+
+	/**
+	 * Follow the repository in the directory given by the CCNR_DIRECTORY environment variable
+	 * @throws ConfigurationException if CCNR_DIRECTORY isn't set
+	 */
+	public RepoFileSyncMonitor() throws ConfigurationException {
+		this(repoDirectory(), DEFAULT_POLL_INTERVAL);
+	}
+
+	/**
+	 * @param directory the ccnr repository directory
+	 * @param pollInterval how often to look for new content in ms
+	 */
+	public RepoFileSyncMonitor(String directory, int pollInterval) {
+		_repoFile = new File(directory, REPO_FILE);
+		_pollInterval = pollInterval;
+	}
+
+	protected static String repoDirectory() throws ConfigurationException {
+		String directory = System.getenv("CCNR_DIRECTORY");
+		if (null == directory) {
+			Log.severe("Please set CCNR_DIRECTORY environment variable before running!");
+			throw new ConfigurationException("Please set CCNR_DIRECTORY environment variable before running!");
+		}
+		return directory;
+	}
+
+	public void registerCallback(CCNSyncHandler syncHandler, ConfigSlice slice) {
+		synchronized (_callbacks) {
+			ArrayList<CCNSyncHandler> handlers = _callbacks.get(slice);
+			if (null == handlers) {
+				handlers = new ArrayList<CCNSyncHandler>();
+				_callbacks.put(slice, handlers);
+				ContentName prefix = (null == slice.prefix) ? ContentName.ROOT : slice.prefix;
+				ArrayList<ConfigSlice> slices = _slicesByPrefix.get(prefix);
+				if (null == slices) {
+					slices = new ArrayList<ConfigSlice>();
+					_slicesByPrefix.put(prefix, slices);
+					_prefixCounts.add(prefix.count());
+				}
+				slices.add(slice);
+			}
+			if (!handlers.contains(syncHandler))
+				handlers.add(syncHandler);
+			if (!_running) {
+				Log.fine(Log.FAC_SYNC, "starting to follow {0}", _repoFile);
+				_running = true;
+				_offset = _repoFile.length();
+				_buffer.clear();
+				SystemConfiguration._systemThreadpool.execute(this);
+			}
+		}
+	}
+
+	public void removeCallback(CCNSyncHandler syncHandler, ConfigSlice slice) {
+		synchronized (_callbacks) {
+			ArrayList<CCNSyncHandler> handlers = _callbacks.get(slice);
+			if (null == handlers || !handlers.remove(syncHandler) || !handlers.isEmpty())
+				return;
+			_callbacks.remove(slice);
+			ContentName prefix = (null == slice.prefix) ? ContentName.ROOT : slice.prefix;
+			ArrayList<ConfigSlice> slices = _slicesByPrefix.get(prefix);
+			slices.remove(slice);
+			if (slices.isEmpty()) {
+				_slicesByPrefix.remove(prefix);
+				_prefixCounts.clear();
+				for (ContentName p : _slicesByPrefix.keySet())
+					_prefixCounts.add(p.count());
+			}
+			// The thread stops when it sees there are no callbacks left
+		}
+	}
+
+	public void run() {
+		RandomAccessFile file = null;
+		try {
+			while (true) {
+				synchronized (_callbacks) {
+					if (_callbacks.isEmpty()) {
+						Log.fine(Log.FAC_SYNC, "all callbacks are removed, no longer following {0}", _repoFile);
+						_running = false;
+						return;
+					}
+				}
+				long length = _repoFile.length();
+				if (length < _offset + _buffer.position()) {
+					// ccnr cut off a partly written object when it restarted
+					Log.info(Log.FAC_SYNC, "{0} was truncated to {1}, following from there", _repoFile, length);
+					_offset = length;
+					_buffer.clear();
+				}
+				if (length > _offset + _buffer.position()) {
+					try {
+						if (null == file)
+							file = new RandomAccessFile(_repoFile, "r");
+						readNewContent(file.getChannel(), length);
+					} catch (IOException e) {
+						Log.warning(Log.FAC_SYNC, "Error reading new content from {0}: {1}", _repoFile, e.getMessage());
+						closeQuietly(file);
+						file = null;
+					}
+				}
+				try {
+					Thread.sleep(_pollInterval);
+				} catch (InterruptedException e) {}
+			}
+		} finally {
+			closeQuietly(file);
+		}
+	}
+
+	/**
+	 * Read what has been appended to the file and process the complete objects in it. An
+	 * object still being written is kept at the start of the buffer for next time.
+	 * @param channel
+	 * @param length the length of the file
+	 * @throws IOException
+	 */
+	protected void readNewContent(FileChannel channel, long length) throws IOException {
+		long readPosition = _offset + _buffer.position();
+		while (readPosition < length) {
+			if (!_buffer.hasRemaining()) {
+				// An object bigger than the buffer
+				ByteBuffer bigger = ByteBuffer.allocate(_buffer.capacity() * 2);
+				_buffer.flip();
+				bigger.put(_buffer);
+				_buffer = bigger;
+			}
+			int read = channel.read(_buffer, readPosition);
+			if (read <= 0)
+				break;
+			readPosition += read;
+			processBuffer();
+		}
+	}
+
+	/**
+	 * Decode the names of the complete objects in the buffer, leaving any incomplete
+	 * one at its start. An object that can't be decoded is skipped: if its elements are
+	 * well formed we know where it ends, otherwise we go on from the next ContentObject
+	 * start tag.
+	 */
+	protected void processBuffer() {
+		_buffer.flip();
+		// _offset follows the start of each object as we go
+		while (_buffer.hasRemaining()) {
+			int start = _buffer.position();
+			try {
+				if (!_decoder.beginDecoding(_buffer))
+					break;
+			} catch (ContentDecodingException e) {
+				int next = findObjectStart(start + 1);
+				Log.warning(Log.FAC_SYNC, "Error decoding {0} at offset {1}, skipping {2} bytes to the next object: {3}",
+						_repoFile, _offset, next - start, e.getMessage());
+				_buffer.position(next);
+				_offset += next - start;
+				continue;
+			}
+			try {
+				if (_decoder.peekStartElement(CCNProtocolDTags.ContentObject)) {
+					// The name follows the signature, and is all we need
+					_decoder.readStartElement(CCNProtocolDTags.ContentObject);
+					new Signature().decode(_decoder);
+					ContentName name = new ContentName();
+					name.decode(_decoder);
+					processNewName(name);
+				}
+			} catch (ContentDecodingException e) {
+				// The buffer is already past the element
+				Log.warning(Log.FAC_SYNC, "Error decoding {0} at offset {1}, skipping {2} byte object: {3}",
+						_repoFile, _offset, _buffer.position() - start, e.getMessage());
+			}
+			_offset += _buffer.position() - start;
+		}
+		_buffer.compact();
+	}
+
+	/**
+	 * Find the next ContentObject start tag in the buffer
+	 * @param from where to start looking
+	 * @return the position of the tag, or if there isn't one the position of any bytes at the
+	 * 	end of the buffer that could be the start of one cut off by the end of what we've read
+	 */
+	protected int findObjectStart(int from) {
+		int limit = _buffer.limit();
+		for (int i = from; i < limit; i++) {
+			int j = 0;
+			while (j < CONTENT_OBJECT_TAG.length && i + j < limit && _buffer.get(i + j) == CONTENT_OBJECT_TAG[j])
+				j++;
+			if (j == CONTENT_OBJECT_TAG.length || i + j == limit)
+				return i;
+		}
+		return limit;
+	}
+
+	/**
+	 * Give a new name to the handlers of the slices it is in
+	 * @param name
+	 */
+	protected void processNewName(ContentName name) {
+		ArrayList<ConfigSlice> matched = null;
+		ArrayList<ArrayList<CCNSyncHandler>> handlers = null;
+		synchronized (_callbacks) {
+			int count = name.count();
+			for (int prefixCount : _prefixCounts) {
+				if (prefixCount > count)
+					break;
+				ArrayList<ConfigSlice> slices = _slicesByPrefix.get((prefixCount == count) ? name : name.cut(prefixCount));
+				if (null == slices)
+					continue;
+				for (ConfigSlice slice : slices) {
+					if (slice.matches(name)) {
+						if (null == matched) {
+							matched = new ArrayList<ConfigSlice>();
+							handlers = new ArrayList<ArrayList<CCNSyncHandler>>();
+						}
+						matched.add(slice);
+						handlers.add(new ArrayList<CCNSyncHandler>(_callbacks.get(slice)));
+					}
+				}
+			}
+		}
+		if (null == matched)
+			return;
+		if (Log.isLoggable(Log.FAC_SYNC, Level.FINE))
+			Log.fine(Log.FAC_SYNC, "new name {0} is in {1} slices", name, matched.size());
+		for (int i = 0; i < matched.size(); i++) {
+			for (CCNSyncHandler handler : handlers.get(i)) {
+				try {
+					handler.handleContentName(matched.get(i), name);
+				} catch (RuntimeException e) {
+					Log.warning(Log.FAC_SYNC, "Sync handler {0} threw {1}: {2}", handler, e.getClass().getName(), e.getMessage());
+				}
+			}
+		}
+	}
+
+	protected static void closeQuietly(RandomAccessFile file) {
+		if (null == file)
+			return;
+		try {
+			file.close();
+		} catch (IOException e) {}
+	}
+}
@@ -25,6 +25,10 @@ import java.security.InvalidKeyException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.logging.Level;
 
 import javax.crypto.BadPaddingException;
@@ -139,6 +143,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 	 * and the verified root hash. For each piece of incoming content, see if it aggregates
 	 * to the same root, if so don't reverify signature. If not, assume it's part of
 	 * a new tree and change the root.
+	 * ContentObject.verify now does this for every reader, using VerifiedSignatureCache.
 	 */
 	protected byte [] _verifiedRootSignature = null;
 	protected byte [] _verifiedProxy = null;
@@ -152,15 +157,20 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 	protected int _markOffset = 0;
 	protected long _markBlock = 0;
 
-	protected ArrayList<ContentObject> inOrderSegments = new ArrayList<ContentObject>();
-	protected ArrayList<ContentObject> outOfOrderSegments = new ArrayList<ContentObject>();
+	/**
+	 * Segments received and interests outstanding, keyed by segment number so that reception,
+	 * hole checks and cancellation don't have to search the whole pipeline. inOrderSegments
+	 * also locks the pipeline state.
+	 */
+	protected TreeMap<Long, ContentObject> inOrderSegments = new TreeMap<Long, ContentObject>();
+	protected TreeMap<Long, ContentObject> outOfOrderSegments = new TreeMap<Long, ContentObject>();
 
 	protected long _nextPipelineSegment = -1;  //this is the segment number of the next segment needed
 	protected long _lastRequestedPipelineSegment = -1;  //this is the segment number of the last interest we sent out
 	protected long _lastInOrderSegment = -1;
 	protected ContentName _basePipelineName = null;
 	protected long _lastSegmentNumber = -1;
-	protected ArrayList<Interest> _sentInterests = new ArrayList<Interest>();
+	protected TreeMap<Long, Interest> _sentInterests = new TreeMap<Long, Interest>();	// at most one per segment
 	private long waitingSegment;
 	private long _holes = 0;
 	private long _totalReceived = 0;
@@ -170,6 +180,9 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 
 	private double avgResponseTime = -1;
 
+	protected final PipelineWindow _window = new PipelineWindow();
+	private final HashSet<Long> _retransmitted = new HashSet<Long>();	// segments we asked for more than once
+
 	private final Object processingSegmentLock = new Object();
 	private long processingSegment = -1;
 
@@ -293,7 +306,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 
 			_pipelineStartTime = System.currentTimeMillis();
 			if (SystemConfiguration.PIPELINE_STATS)
-				System.out.println("plot "+(System.currentTimeMillis() - _pipelineStartTime)+" inOrder: "+inOrderSegments.size() +" outOfOrder: "+outOfOrderSegments.size() + " interests: "+_sentInterests.size() +" holes: "+_holes + " received: "+_totalReceived+" ["+_baseName+"].1"+ "avgResponseTime "+avgResponseTime);
+				System.out.println("plot "+(System.currentTimeMillis() - _pipelineStartTime)+" inOrder: "+inOrderSegments.size() +" outOfOrder: "+outOfOrderSegments.size() + " interests: "+_sentInterests.size() +" holes: "+_holes + " received: "+_totalReceived+" ["+_baseName+"].1"+ "avgResponseTime "+avgResponseTime + " " + _window);
 
 			long segmentToGet = -1;
 			Interest interest = null;
@@ -335,7 +348,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 				try {
 					interest.userTime = System.currentTimeMillis();
 					_handle.expressInterest(interest, this);
-					_sentInterests.add(interest);
+					addSentInterest(segmentToGet, interest);
 					_lastRequestedPipelineSegment = segmentToGet;
 					Log.info(Log.FAC_PIPELINE, "PIPELINE: expressed interest for segment {0} in startPipeline(): {1}", segmentToGet, interest);
 				} catch(IOException e) {
@@ -348,7 +361,6 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 
 	private void receivePipelineContent(ContentObject co) {
 		long returnedSegment = SegmentationProfile.getSegmentNumber(co.name());
-		ArrayList<Interest> toRemove = new ArrayList<Interest>();
 
 		//are we at the last segment?
 		synchronized(inOrderSegments) {
@@ -359,20 +371,13 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 				_lastRequestedPipelineSegment = returnedSegment;
 			}
 			//}
-			long segNum;
-			//synchronized (_sentInterests) {
-			for(Interest i: _sentInterests) {
-				segNum = SegmentationProfile.getSegmentNumber(i.name());
-				if(segNum == returnedSegment || (_lastSegmentNumber > -1 && segNum > _lastSegmentNumber)) {
-					if(Log.isLoggable(Log.FAC_PIPELINE, Level.INFO)) {
-						Log.info(Log.FAC_PIPELINE, "PIPELINE: cancelling interest for segment "+SegmentationProfile.getSegmentNumber(i.name())+" Interest: "+i);
-					}
-					_handle.cancelInterest(i, this);
-					toRemove.add(i);
-				}
+			cancelSentInterest(_sentInterests.remove(returnedSegment));
+			if (_lastSegmentNumber > -1) {
+				Map<Long, Interest> pastEnd = _sentInterests.tailMap(_lastSegmentNumber, false);
+				for (Interest i: pastEnd.values())
+					cancelSentInterest(i);
+				pastEnd.clear();
 			}
-			_sentInterests.removeAll(toRemove);
-			toRemove.clear();
 			//_lastRequestedPipelineSegment = returnedSegment;
 
 		//no good reason to release the lock here...
@@ -389,7 +394,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 					if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 						Log.info(Log.FAC_PIPELINE, "PIPELINE: someone is waiting for segment: {0}", waitingSegment);
 				//this is the next segment in order
-				inOrderSegments.add(co);
+				inOrderSegments.put(returnedSegment, co);
 				_lastInOrderSegment = returnedSegment;
 				//do we have any out of order segments to move over?
 				if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO)) {
@@ -403,13 +408,14 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 					//this was a hole..  cancel its other interests
 
 					while (outOfOrderSegments.size() > 0 ) {
-						if(SegmentationProfile.getSegmentNumber(outOfOrderSegments.get(0).name()) == nextInOrderSegmentNeeded()) {
-							_lastInOrderSegment = SegmentationProfile.getSegmentNumber(outOfOrderSegments.get(0).name());
-							inOrderSegments.add(outOfOrderSegments.remove(0));
+						if(outOfOrderSegments.firstKey() == nextInOrderSegmentNeeded()) {
+							Map.Entry<Long, ContentObject> next = outOfOrderSegments.pollFirstEntry();
+							_lastInOrderSegment = next.getKey();
+							inOrderSegments.put(next.getKey(), next.getValue());
 						} else {
 							//the first one isn't what we wanted..
 							if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO)) {
-								Log.info(Log.FAC_PIPELINE, "PIPELINE: we have "+SegmentationProfile.getSegmentNumber(outOfOrderSegments.get(0).name())+" but need "+nextInOrderSegmentNeeded()+" breaking from loop, we don't have the one we need");
+								Log.info(Log.FAC_PIPELINE, "PIPELINE: we have "+outOfOrderSegments.firstKey()+" but need "+nextInOrderSegmentNeeded()+" breaking from loop, we don't have the one we need");
 							}
 							break;
 						}
@@ -437,13 +443,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 						Log.info(Log.FAC_PIPELINE, "PIPELINE: this is a pipeline segment, add to outOfOrderSegment queue");
 					_totalReceived++;
 					_holes++;
-					int i = 0;
-					for (ContentObject c:outOfOrderSegments) {
-						if(returnedSegment < SegmentationProfile.getSegmentNumber(c.name()))
-							break;
-						i++;
-					}
-					outOfOrderSegments.add(i, co);
+					outOfOrderSegments.put(returnedSegment, co);
 
 					//now we have a hole to fill
 					if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
@@ -474,19 +474,19 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 			//check outstanding interests
 			if(Log.isLoggable(Log.FAC_PIPELINE, Level.INFO)) {
 				String s = "have interests out for segments: [";
-				for(Interest i: _sentInterests)
+				for(Interest i: _sentInterests.values())
 					s = s + " "+SegmentationProfile.getSegmentNumber(i.name());
 				s = s + " ]";
 				if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 					Log.info(Log.FAC_PIPELINE, "PIPELINE: "+s);
-				for(Interest i: _sentInterests)
+				for(Interest i: _sentInterests.values())
 					if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 						Log.info(Log.FAC_PIPELINE, "PIPELINE: {0}", i.name());
 			}
 
 			Interest i = null;
 
-			while (_sentInterests.size() + inOrderSegments.size() + outOfOrderSegments.size() + processingDefer < SystemConfiguration.PIPELINE_SIZE && !doneAdvancing) {
+			while (_sentInterests.size() + inOrderSegments.size() + outOfOrderSegments.size() + processingDefer < _window.getWindow() && !doneAdvancing) {
 				if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 					Log.info(Log.FAC_PIPELINE, "PIPELINE: _sentInterests.size() = {0} inOrderSegments.size() = {1} outOfOrderSegments.size()  = {2} processingDefer = {3} total = {4}", _sentInterests.size(), inOrderSegments.size(), outOfOrderSegments.size(), processingDefer, (_sentInterests.size() + inOrderSegments.size() + outOfOrderSegments.size() + processingDefer) );
 
@@ -516,10 +516,10 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 					try {
 						i.userTime = System.currentTimeMillis();
 						_handle.expressInterest(i, this);
-						_sentInterests.add(i);
+						addSentInterest(_lastRequestedPipelineSegment + 1, i);
 						_lastRequestedPipelineSegment++;
 						if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-							Log.info(Log.FAC_PIPELINE, "PIPELINE: requested segment "+_lastRequestedPipelineSegment +" ("+(SystemConfiguration.PIPELINE_SIZE - _sentInterests.size())+" tokens)");
+							Log.info(Log.FAC_PIPELINE, "PIPELINE: requested segment "+_lastRequestedPipelineSegment +" ("+(_window.getWindow() - _sentInterests.size())+" tokens)");
 					} catch (IOException e) {
 						// This could happen if the handle got closed underneath us - maybe that's OK?
 						// For now will leave it as a warning
@@ -539,7 +539,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 	private void attemptHoleFilling() {
 		synchronized(inOrderSegments) {
 			if(outOfOrderSegments.size() > 0) {
-				long firstOOO = SegmentationProfile.getSegmentNumber(outOfOrderSegments.get(0).name());
+				long firstOOO = outOfOrderSegments.firstKey();
 				long holeCheck = _nextPipelineSegment;
 				while (holeCheck < firstOOO) {
 					attemptHoleFilling(holeCheck);
@@ -569,8 +569,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 		Interest i = SegmentationProfile.segmentInterest(_basePipelineName, hole, _publisher);
 		boolean notRequested = true;
 
-		int index = -1;
-		int index2 = -1;
+		boolean haveBase = false;
 
 		long elapsed1 = -1;
 		long elapsed2 = -1;
@@ -581,9 +580,10 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 		try {
 			synchronized (inOrderSegments) {
 				// see if this interest is already there
-				index = _sentInterests.indexOf(i);
-				if (index > -1) {
-					expressed = _sentInterests.get(index);
+				Interest expInt = _sentInterests.get(hole);
+				if (null != expInt && expInt.equals(i)) {
+					haveBase = true;
+					expressed = expInt;
 					elapsed1 = System.currentTimeMillis() - expressed.userTime;
 					newUserTime = expressed.userTime;
 
@@ -609,56 +609,42 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 				i.exclude(ex);
 
 				Interest toDelete = null;
-				index2 = 0;
 				long excludedSegment = -1;
 				ExcludeComponent ec = null;
-				long tempseg = -1;
-				for(Interest expInt: _sentInterests) {
-					tempseg = SegmentationProfile.getSegmentNumber(expInt.name());
+				if (null != expInt) {
 					if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-						Log.info(Log.FAC_PIPELINE, "PIPELINE: checking if this interest {0} is for our hole at {1}", tempseg, hole);
-					if (tempseg == hole) {
+						Log.info(Log.FAC_PIPELINE, "PIPELINE: this is a match!  does it have excludes?");
+					notRequested = false;
+					//this is the interest we want to look at
+					if(expInt.exclude()!=null) {
 						if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-							Log.info(Log.FAC_PIPELINE, "PIPELINE: this is a match!  does it have excludes?");
-						notRequested = false;
-						//this is the interest we want to look at
-						if(expInt.exclude()!=null) {
-							if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-								Log.info(Log.FAC_PIPELINE, "PIPELINE: yep! it is a holefilling attempt");
-							ec = (ExcludeComponent)expInt.exclude().value(0);
+							Log.info(Log.FAC_PIPELINE, "PIPELINE: yep! it is a holefilling attempt");
+						ec = (ExcludeComponent)expInt.exclude().value(0);
 
-							excludedSegment = SegmentationProfile.getSegmentNumber(ec.getBytes());
-							attempt = (int) (excludedSegment - hole);
+						excludedSegment = SegmentationProfile.getSegmentNumber(ec.getBytes());
+						attempt = (int) (excludedSegment - hole);
+						if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
+							Log.info(Log.FAC_PIPELINE, "PIPELINE: this is attempt: {0}", attempt);
+
+						if (attempt < SystemConfiguration.PIPELINE_SEGMENTATTEMPTS) {
 							if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-								Log.info(Log.FAC_PIPELINE, "PIPELINE: this is attempt: {0}", attempt);
-
-							if (attempt < SystemConfiguration.PIPELINE_SEGMENTATTEMPTS) {
-								if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-									Log.info(Log.FAC_PIPELINE, "PIPELINE: we have more attempts that we can try... ");
-								toDelete = expInt;
-								ex = new Exclude();
-								ex.add(new byte[][]{SegmentationProfile.getSegmentNumberNameComponent(hole+attempt+1)});
-								i.exclude(ex);
-								if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-									Log.info(Log.FAC_PIPELINE, "PIPELINE: going to express the next attempt: {0}", i);
-								newUserTime = expInt.userTime;
-							} else {
-								if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-									Log.info(Log.FAC_PIPELINE, "PIPELINE: we have tried as many times as we can...  break here");
-								return;
-							}
+								Log.info(Log.FAC_PIPELINE, "PIPELINE: we have more attempts that we can try... ");
+							toDelete = expInt;
+							ex = new Exclude();
+							ex.add(new byte[][]{SegmentationProfile.getSegmentNumberNameComponent(hole+attempt+1)});
+							i.exclude(ex);
+							if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
+								Log.info(Log.FAC_PIPELINE, "PIPELINE: going to express the next attempt: {0}", i);
+							newUserTime = expInt.userTime;
 						} else {
 							if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-								Log.info(Log.FAC_PIPELINE, "PIPELINE: this isn't a holefilling attempt, must be the base interest");
+								Log.info(Log.FAC_PIPELINE, "PIPELINE: we have tried as many times as we can...  break here");
+							return;
 						}
-						break;
 					} else {
-						//if this is for a segment after ours, break
-						if (tempseg > hole)
-							break;
+						if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
+							Log.info(Log.FAC_PIPELINE, "PIPELINE: this isn't a holefilling attempt, must be the base interest");
 					}
-
-					index2++;
 				}
 
 
@@ -674,24 +660,23 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 						elapsed2 = System.currentTimeMillis() - expressed.userTime;
 						if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 							Log.info(Log.FAC_PIPELINE, "PIPELINE: elapsed2 time {0}", elapsed2);
-						if(elapsed2 > avgResponseTime * SystemConfiguration.PIPELINE_RTTFACTOR && avgResponseTime > -1) {
+						long timeout = retransmitTimeout(SystemConfiguration.PIPELINE_RTTFACTOR);
+						if(elapsed2 > timeout && timeout > -1) {
 							if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 								Log.info(Log.FAC_PIPELINE, "PIPELINE: expressing the next interest! {0} old express time {1} new express time {2}", i, expressed.userTime, newUserTime);
 							//i.userTime = System.currentTimeMillis();
 							i.userTime = newUserTime;
 							_handle.expressInterest(i, this);
-							_sentInterests.add(index2, i);
-
 							_handle.cancelInterest(toDelete, this);
-							_sentInterests.remove(toDelete);
+							_sentInterests.put(hole, i);
 
-							adjustAvgResponseTimeForHole();
+							adjustAvgResponseTimeForHole(hole);
 
 							if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO)) {
 								Log.info(Log.FAC_PIPELINE, "PIPELINE: expressed: {0} deleted: {1}", i, toDelete);
 
 								Log.info(Log.FAC_PIPELINE, "PIPELINE: current expressed interests: ");
-								for(Interest p: _sentInterests)
+								for(Interest p: _sentInterests.values())
 									Log.info(Log.FAC_PIPELINE, "PIPELINE: {0}", p);
 							}
 							return;
@@ -705,13 +690,14 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 				} else {
 					if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 						Log.info(Log.FAC_PIPELINE, "PIPELINE: we don't have any holefilling attempts... for {0}", hole);
-					if (index == -1) {
+					if (!haveBase) {
 						// the base interest wasn't even there (neither was the hole filling one)
 						i.exclude(null);
 					}
 				}
 
-				if((elapsed1 > avgResponseTime * 2 && avgResponseTime > -1) || (avgResponseTime == -1 && elapsed1 > SystemConfiguration.INTEREST_REEXPRESSION_DEFAULT) || notRequested) {
+				long timeout = retransmitTimeout(2);
+				if((elapsed1 > timeout && timeout > -1) || (timeout == -1 && elapsed1 > SystemConfiguration.INTEREST_REEXPRESSION_DEFAULT) || notRequested) {
 					//long userTime = System.currentTimeMillis();
 					if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO)) {
 						if (notRequested)
@@ -730,16 +716,13 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 						newUserTime = System.currentTimeMillis();
 					i.userTime = newUserTime;
 					_handle.expressInterest(i, this);
-					if (index != -1)
-						_sentInterests.add(index, i);
-					else
-						_sentInterests.add(i);
-					// remove the first instance after we express and insert the new
+					// cancel the first instance after we express and insert the new
 					// interest
-					if (index != -1) {
-						_handle.cancelInterest(_sentInterests.remove(index+1), this);
-						adjustAvgResponseTimeForHole();
-					}
+					Interest old = _sentInterests.put(hole, i);
+					if (null != old)
+						_handle.cancelInterest(old, this);
+					if (haveBase)
+						adjustAvgResponseTimeForHole(hole);
 
 					if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 						Log.info(Log.FAC_PIPELINE, "PIPELINE: requested segment {0} to fill hole: {1} with Interest: {2}", hole, i.name(), i);
@@ -756,7 +739,12 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 		}
 	}
 
-	private void adjustAvgResponseTimeForHole() {
+	/**
+	 * Called with inOrderSegments locked when we have had to ask for a segment again
+	 */
+	private void adjustAvgResponseTimeForHole(long hole) {
+		_retransmitted.add(hole);
+		_window.lost();
 		synchronized (processingSegmentLock) {
 			Log.info(Log.FAC_PIPELINE, "PIPELINE: before adjusting avgResponseTime for hole. avgResponseTime = {0}", avgResponseTime);
 			avgResponseTime = 0.9 * avgResponseTime + 0.1 * (SystemConfiguration.PIPELINE_RTTFACTOR * avgResponseTime);
@@ -764,13 +752,37 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 		}
 	}
 
+	/**
+	 * How long to wait for a segment before asking for it again. In AIMD mode this is the
+	 * window's retransmission timeout, in FIXED mode a multiple of the average response time.
+	 * @param factor multiple of the average response time to use in FIXED mode
+	 * @return the timeout in ms, or -1 if we don't have a round trip time yet
+	 */
+	private long retransmitTimeout(double factor) {
+		if (_window.getMode() == SystemConfiguration.PIPELINE_WINDOW_MODE.AIMD)
+			return _window.getRetransmitTimeout();
+		synchronized (processingSegmentLock) {
+			if (avgResponseTime == -1)
+				return -1;
+			return (long)(avgResponseTime * factor);
+		}
+	}
+
+	/**
+	 * @return the window controlling how many segments this stream requests ahead of the
+	 * 	reader, with its round trip time and loss counters
+	 */
+	public PipelineWindow getPipelineWindow() {
+		return _window;
+	}
+
 	private void printSegments() {
 		String s = "inOrder: [";
-		for(ContentObject c: inOrderSegments)
-			s += " "+SegmentationProfile.getSegmentNumber(c.name());
+		for(Long c: inOrderSegments.keySet())
+			s += " "+c;
 		s += " ] outOrder: [";
-		for(ContentObject c: outOfOrderSegments)
-			s += " "+SegmentationProfile.getSegmentNumber(c.name());
+		for(Long c: outOfOrderSegments.keySet())
+			s += " "+c;
 		s += "]";
 		Log.info(Log.FAC_PIPELINE, "PIPELINE: " + s);
 	}
@@ -801,33 +813,16 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 
 	private boolean haveSegmentBuffered(long segmentNumber) {
 		synchronized(inOrderSegments) {
-			ContentObject co = null;
-			for (int i = 0; i < inOrderSegments.size(); i++) {
-				co = inOrderSegments.get(i);
-				if (SegmentationProfile.getSegmentNumber(co.name()) == segmentNumber) {
-					if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-						Log.info(Log.FAC_PIPELINE, "PIPELINE: have segment {0} in iOS, return true.", segmentNumber);
-					return true;
-				}
+			if (inOrderSegments.containsKey(segmentNumber)) {
+				if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
+					Log.info(Log.FAC_PIPELINE, "PIPELINE: have segment {0} in iOS, return true.", segmentNumber);
+				return true;
 			}
-
-			for (int i = 0; i < outOfOrderSegments.size(); i++) {
-				co = outOfOrderSegments.get(i);
-				if (SegmentationProfile.getSegmentNumber(co.name()) == segmentNumber) {
-					//this is the segment we wanted
-					if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-						Log.info(Log.FAC_PIPELINE, "PIPELINE: segment {0} is in our oOOS queue, return true", segmentNumber);
-					return true;
-
-				} else {
-					if(SegmentationProfile.getSegmentNumber(co.name()) > segmentNumber) {
-						//we have a hole to fill...
-						if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-							Log.info(Log.FAC_PIPELINE, "PIPELINE: our out of order segments are past the requested segment...  we have a hole - not attempting to fill it at this time");
-						//attemptHoleFilling(segmentNumber);
-						break;
-					}
-				}
+			if (outOfOrderSegments.containsKey(segmentNumber)) {
+				//this is the segment we wanted
+				if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
+					Log.info(Log.FAC_PIPELINE, "PIPELINE: segment {0} is in our oOOS queue, return true", segmentNumber);
+				return true;
 			}
 			return false;
 		}
@@ -837,7 +832,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 		synchronized(inOrderSegments) {
 			ContentObject co = null;
 			while (inOrderSegments.size() > 0) {
-				co = inOrderSegments.remove(0);
+				co = inOrderSegments.pollFirstEntry().getValue();
 				if (SegmentationProfile.getSegmentNumber(co.name()) == segmentNumber) {
 					if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 						Log.info(Log.FAC_PIPELINE, "PIPELINE: had segment {0} in iOS, setting current.", segmentNumber);
@@ -851,22 +846,22 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 			}
 
 			while (outOfOrderSegments.size() > 0) {
-				co = outOfOrderSegments.get(0);
-				if (SegmentationProfile.getSegmentNumber(co.name()) == segmentNumber) {
+				long first = outOfOrderSegments.firstKey();
+				if (first == segmentNumber) {
 					//this is the segment we wanted
 					if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 						Log.info(Log.FAC_PIPELINE, "PIPELINE: segment {0} was in our oOOS queue", segmentNumber);
-					outOfOrderSegments.remove(0);
+					co = outOfOrderSegments.pollFirstEntry().getValue();
 					_currentSegment = co;
 					return co;
 				} else {
-					if(SegmentationProfile.getSegmentNumber(co.name()) > segmentNumber) {
+					if(first > segmentNumber) {
 						//we have a hole to fill...
 						if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 							Log.info(Log.FAC_PIPELINE, "PIPELINE: our out of order segments are past the requested segment...  we have a hole");
 						break;
 					} else {
-						outOfOrderSegments.remove(0);
+						outOfOrderSegments.pollFirstEntry();
 					}
 				}
 			}
@@ -876,7 +871,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 				Log.info(Log.FAC_PIPELINE, "PIPELINE: need segment: {0} _lastRequestedPipelineSegment: {1}", segmentNumber, _lastRequestedPipelineSegment);
 
 				String s = "current interests out for segments: [";
-				for(Interest i: _sentInterests)
+				for(Interest i: _sentInterests.values())
 					s += " "+SegmentationProfile.getSegmentNumber(i.name());
 				s += "]";
 				Log.info(Log.FAC_PIPELINE, "PIPELINE: "+s);
@@ -898,7 +893,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 					Log.info(Log.FAC_PIPELINE, "PIPELINE: pipeline jump adjustment conditions");
 					printSegments();
 					String s = "pre-pipeline jump interests: [";
-					for(Interest i: _sentInterests)
+					for(Interest i: _sentInterests.values())
 						s += " "+SegmentationProfile.getSegmentNumber(i.name());
 					s += "]";
 					Log.info(Log.FAC_PIPELINE, "PIPELINE: "+s);
@@ -909,87 +904,30 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 					//probably could just clear out some pipeline state instead of clearing all of it...
 					interest.userTime = System.currentTimeMillis();
 					_handle.expressInterest(interest, this);
-					ArrayList<Object> toRemove = new ArrayList<Object>();
-					long maxExpress = segmentNumber + SystemConfiguration.PIPELINE_SIZE-1;
+					long maxExpress = segmentNumber + _window.getWindow()-1;
 					long lastExpressed = segmentNumber;
-					long segNum;
-					for (Interest i: _sentInterests) {
-						segNum = SegmentationProfile.getSegmentNumber(i.name());
-						if (segNum > maxExpress) {
-							_handle.cancelInterest(i, this);
-							toRemove.add(i);
-							if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-								Log.info(Log.FAC_PIPELINE, "PIPELINE: canceling interest: {0}", i);
-						} else {
-							lastExpressed = segNum;
-						}
+					Map<Long, Interest> pastBuffer = _sentInterests.tailMap(maxExpress, false);
+					for (Interest i: pastBuffer.values()) {
+						_handle.cancelInterest(i, this);
+						if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
+							Log.info(Log.FAC_PIPELINE, "PIPELINE: canceling interest: {0}", i);
 					}
+					pastBuffer.clear();
+					if (_sentInterests.size() > 0)
+						lastExpressed = _sentInterests.lastKey();
 					//cancelInterests();
-					_sentInterests.removeAll(toRemove);
-					_sentInterests.add(0, interest);
+					addSentInterest(segmentNumber, interest);
 					//resetPipelineState();
 					//_lastRequestedPipelineSegment = segmentNumber;
 					_nextPipelineSegment = segmentNumber;
 
 					//now check our received segments
-					for (ContentObject segment : inOrderSegments) {
-						segNum = SegmentationProfile.getSegmentNumber(segment.name());
-						if (segNum > maxExpress) {
-							toRemove.add(segment);
-							if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-								Log.info(Log.FAC_PIPELINE, "PIPELINE: removing segment past buffer limit after pipeline jump in inOrderSegments: {0}", segment);
-						} else if (segNum < segmentNumber) {
-							toRemove.add(segment);
-							if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-								Log.info(Log.FAC_PIPELINE, "PIPELINE: removing segment before requested segment pipeline jump in inOrderSegments: {0}", segment);
-						} else {
-							if (lastExpressed < segNum) {
-								lastExpressed = segNum;
-							}
-							if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-								Log.info(Log.FAC_PIPELINE, "PIPELINE: pipeline jump - will move segment in inOrderSegments: {0} to outOfOrderSegments", segment);
-						}
-					}
-					inOrderSegments.removeAll(toRemove);
-
-					toRemove.clear();
-					for (ContentObject segment : outOfOrderSegments) {
-						segNum = SegmentationProfile.getSegmentNumber(segment.name());
-						if (segNum > maxExpress) {
-							toRemove.add(segment);
-							if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-								Log.info(Log.FAC_PIPELINE, "PIPELINE: removing segment past buffer limit after pipeline jump in outOfOrderSegments: {0}", segment);
-						} else if (segNum < segmentNumber) {
-							toRemove.add(segment);
-							if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-								Log.info(Log.FAC_PIPELINE, "PIPELINE: removing segment before requested segment pipeline jump in outOfOrderSegments: {0}", segment);
-						} else if (lastExpressed < segNum) {
-							lastExpressed = segNum;
-						}
-					}
-					outOfOrderSegments.removeAll(toRemove);
+					lastExpressed = Math.max(lastExpressed, trimSegments(inOrderSegments, segmentNumber, maxExpress));
+					lastExpressed = Math.max(lastExpressed, trimSegments(outOfOrderSegments, segmentNumber, maxExpress));
 
-					long segNum2;
 					//now move segments from in order to out of order...
-					if (outOfOrderSegments.size() == 0) {
-						outOfOrderSegments.addAll(inOrderSegments);
-						Log.info(Log.FAC_PIPELINE, "PIPELINE: pipeline jump - moving segments from inOrderSegments to outOfOrderSegments");
-					} else {
-						ContentObject segX;
-						for (int x = 0 ; x < inOrderSegments.size(); x++) {
-							segX = inOrderSegments.get(x);
-							segNum = SegmentationProfile.getSegmentNumber(segX.name());
-							for (int y = 0 ; y < inOrderSegments.size(); y++) {
-								segNum2 = SegmentationProfile.getSegmentNumber((outOfOrderSegments.get(y)).name());
-								if (segNum < segNum2) {
-									Log.info(Log.FAC_PIPELINE, "PIPELINE: pipeline jump - moving segment {0} to position {1} in outOfOrderSegments", segNum, y);
-									outOfOrderSegments.add(y, segX);
-								}
-							}
-							Log.info(Log.FAC_PIPELINE, "PIPELINE: pipeline jump - check buffered segments");
-							printSegments();
-						}
-					}
+					Log.info(Log.FAC_PIPELINE, "PIPELINE: pipeline jump - moving segments from inOrderSegments to outOfOrderSegments");
+					outOfOrderSegments.putAll(inOrderSegments);
 					inOrderSegments.clear();
 
 
@@ -1006,7 +944,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 						Log.info(Log.FAC_PIPELINE, "PIPELINE: pipeline jump adjustment results");
 						printSegments();
 						String s = "post-pipeline jump interests: [";
-						for(Interest i: _sentInterests)
+						for(Interest i: _sentInterests.values())
 							s += " "+SegmentationProfile.getSegmentNumber(i.name());
 						s += "]";
 						Log.info(Log.FAC_PIPELINE, "PIPELINE: "+s);
@@ -1022,7 +960,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 			//check outstanding interests
 			if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO)) {
 				String s = "have interests out for segments: [";
-				for(Interest i: _sentInterests)
+				for(Interest i: _sentInterests.values())
 					s += " "+SegmentationProfile.getSegmentNumber(i.name());
 				s += "]";
 				Log.info(Log.FAC_PIPELINE, "PIPELINE: "+s);
@@ -1032,9 +970,25 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 		return null;
 	}
 
+	/**
+	 * Drop buffered segments outside a range after a pipeline jump
+	 * @return the last segment kept, or -1 if there are none
+	 */
+	private long trimSegments(TreeMap<Long, ContentObject> segments, long first, long last) {
+		if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO)) {
+			for (Long segNum : segments.headMap(first).keySet())
+				Log.info(Log.FAC_PIPELINE, "PIPELINE: removing segment before requested segment after pipeline jump: {0}", segNum);
+			for (Long segNum : segments.tailMap(last, false).keySet())
+				Log.info(Log.FAC_PIPELINE, "PIPELINE: removing segment past buffer limit after pipeline jump: {0}", segNum);
+		}
+		segments.headMap(first).clear();
+		segments.tailMap(last, false).clear();
+		return segments.size() > 0 ? segments.lastKey() : -1;
+	}
+
 	private void cancelInterests() {
 		synchronized(inOrderSegments) {
-			for (Interest i: _sentInterests) {
+			for(Interest i: _sentInterests.values()) {
 				_handle.cancelInterest(i, this);
 				if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 					Log.info(Log.FAC_PIPELINE, "PIPELINE: canceling interest: {0}", i);
@@ -1052,6 +1006,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 			_lastInOrderSegment = -1;
 			_lastSegmentNumber = -1;
 			_currentSegment = null;
+			_retransmitted.clear();
 		}
 	}
 
@@ -1065,11 +1020,40 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 			}
 		}
 		synchronized(inOrderSegments) {
-			for (Interest i: _sentInterests)
-				if(SegmentationProfile.getSegmentNumber(i.name()) == number)
-					return true;
+			return _sentInterests.containsKey(number);
+		}
+	}
+
+	/**
+	 * Record an interest we have expressed. Called with inOrderSegments locked.
+	 */
+	private void addSentInterest(long segment, Interest interest) {
+		Interest old = _sentInterests.put(segment, interest);
+		if (null != old && !old.equals(interest))
+			cancelSentInterest(old);
+	}
+
+	/**
+	 * Forget an interest if it is still the one outstanding for its segment. Called with
+	 * inOrderSegments locked.
+	 * @return true if it was outstanding
+	 */
+	private boolean removeSentInterest(Interest interest) {
+		long segment = SegmentationProfile.getSegmentNumber(interest.name());
+		Interest sent = _sentInterests.get(segment);
+		if (null == sent || !sent.equals(interest))
 			return false;
+		_sentInterests.remove(segment);
+		return true;
+	}
+
+	private void cancelSentInterest(Interest interest) {
+		if (null == interest)
+			return;
+		if(Log.isLoggable(Log.FAC_PIPELINE, Level.INFO)) {
+			Log.info(Log.FAC_PIPELINE, "PIPELINE: cancelling interest for segment "+SegmentationProfile.getSegmentNumber(interest.name())+" Interest: "+interest);
 		}
+		_handle.cancelInterest(interest, this);
 	}
 
 	private void setPipelineName(ContentName n) {
@@ -1080,19 +1064,17 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 
 		synchronized(inOrderSegments) {
 			//need to remove interest for first segment of old name
-			ArrayList<Interest> remove = new ArrayList<Interest>();
-			for(Interest i: _sentInterests) {
+			Iterator<Interest> sent = _sentInterests.values().iterator();
+			while (sent.hasNext()) {
+				Interest i = sent.next();
 				if(SegmentationProfile.segmentRoot(i.name()).equals(_basePipelineName)) {
 					//the name matches, keep it
 				} else {
 					//name doesn't match...  remove it
-					remove.add(i);
+					_handle.cancelInterest(i,this);
+					sent.remove();
 				}
 			}
-			for(Interest i: remove) {
-				_handle.cancelInterest(i,this);
-				_sentInterests.remove(i);
-			}
 		}
 
 	}
@@ -1140,6 +1122,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 			Log.info(Log.FAC_PIPELINE, "PIPELINE: in handleContent for {0} at {1}", result.name(), System.currentTimeMillis());
 
 		long starttime = System.currentTimeMillis();
+		long rtt = -1;
 		IncomingSegment is;
 
 		synchronized(processingSegmentLock) {
@@ -1161,6 +1144,9 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 			}
 			Log.info(Log.FAC_PIPELINE, "PIPELINE: after adjusting avgResponseTime after reception. avgResponseTime = {0}", avgResponseTime);
 
+			// hole filling attempts keep the time of the first request, so can't be sampled
+			if (interest.userTime > 0 && interest.exclude() == null)
+				rtt = starttime - interest.userTime;
 			interest.userTime = -1;
 
 			if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
@@ -1176,29 +1162,28 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 			//synchronized(inOrderSegments) {
 
 			if (SystemConfiguration.PIPELINE_STATS)
-				System.out.println("plot "+(System.currentTimeMillis() - _pipelineStartTime)+" inOrder: "+inOrderSegments.size() +" outOfOrder: "+outOfOrderSegments.size() + " interests: "+_sentInterests.size() +" holes: "+_holes + " received: "+_totalReceived+" ["+_baseName+"].2" + " avgResponseTime "+avgResponseTime);
+				System.out.println("plot "+(System.currentTimeMillis() - _pipelineStartTime)+" inOrder: "+inOrderSegments.size() +" outOfOrder: "+outOfOrderSegments.size() + " interests: "+_sentInterests.size() +" holes: "+_holes + " received: "+_totalReceived+" ["+_baseName+"].2" + " avgResponseTime "+avgResponseTime + " " + _window);
 
-			if (_sentInterests.remove(is.interest)) {
+			if (removeSentInterest(is.interest)) {
 				//we had this interest outstanding...
 				if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 					Log.info(Log.FAC_PIPELINE, "PIPELINE: we were expecting this data! we had outstanding interests: {0}", is.interest);
+				if (_retransmitted.remove(SegmentationProfile.getSegmentNumber(is.content.name())))
+					rtt = -1;
+				_window.received(rtt);
 			} else {
 				//we must have canceled the interest...  drop content object
 				if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
 					Log.info(Log.FAC_PIPELINE, "PIPELINE: we must have canceled the interest, dropping ContentObject(s).  old interest: {0}", is.interest);
 
 				//does this match one of our other interests?
-				Interest checkInterest;
+				Interest checkInterest = _sentInterests.get(SegmentationProfile.getSegmentNumber(is.content.name()));
 				is.interest = null;
-				for (int i = 0; i < _sentInterests.size(); i++) {
-					checkInterest = _sentInterests.get(i);
-					if (checkInterest.matches(is.content)) {
-						//we found a match!
-						if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
-							Log.info(Log.FAC_PIPELINE, "PIPELINE: the incoming packet's interest is gone, but it matches another interest, using that");
-						is.interest = checkInterest;
-						break;
-					}
+				if (null != checkInterest && checkInterest.matches(is.content)) {
+					//we found a match!
+					if (Log.isLoggable(Log.FAC_PIPELINE, Level.INFO))
+						Log.info(Log.FAC_PIPELINE, "PIPELINE: the incoming packet's interest is gone, but it matches another interest, using that");
+					is.interest = checkInterest;
 				}
 				if (is.interest == null) {
 					is = null;
@@ -1218,7 +1203,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 					// TODO content that fails verification needs to be handled better.  need to express a new interest
 					if (Log.isLoggable(Log.FAC_PIPELINE, Level.WARNING))
 						Log.warning(Log.FAC_PIPELINE, "Dropping content object due to failed verification: {0} Need to add interest re-expression with exclude", is.content.name());
-					_sentInterests.remove(is.interest);
+					removeSentInterest(is.interest);
 				}
 			}
 
@@ -1573,7 +1558,7 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 			if (_baseName.equals(_basePipelineName)) {
 				// we already have the base name...
 				if (SystemConfiguration.PIPELINE_STATS)
-					System.out.println("plot " + (System.currentTimeMillis() - _pipelineStartTime) + " inOrder: " + inOrderSegments.size() + " outOfOrder: " + outOfOrderSegments.size() + " interests: " + _sentInterests.size() + " holes: " + _holes + " received: " + _totalReceived + " [" + _baseName + "].3" +" avgResponseTime "+avgResponseTime);
+					System.out.println("plot " + (System.currentTimeMillis() - _pipelineStartTime) + " inOrder: " + inOrderSegments.size() + " outOfOrder: " + outOfOrderSegments.size() + " interests: " + _sentInterests.size() + " holes: " + _holes + " received: " + _totalReceived + " [" + _baseName + "].3" +" avgResponseTime "+avgResponseTime + " " + _window);
 			} else {
 				// we don't have the base name... set for pipelining.
 				Log.info(Log.FAC_PIPELINE, "PIPELINE: in getSegment and we detected a name change.  _baseName: {0} _basePipelineName: {1}", _baseName, _basePipelineName);
@@ -1629,11 +1614,13 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 							sleepCheck = SystemConfiguration.EXTRA_LONG_TIMEOUT;
 						else
 							sleepCheck = _timeout - sleep;
-						if(avgResponseTime > 0 && avgResponseTime < SystemConfiguration.SHORT_TIMEOUT) {
-							if(avgResponseTime > sleepCheck)
+						// wake up in time to re-request the segment if it is lost
+						long wait = retransmitTimeout(1);
+						if(wait > 0 && wait < SystemConfiguration.SHORT_TIMEOUT) {
+							if(wait > sleepCheck)
 								inOrderSegments.wait(sleepCheck);
 							else
-								inOrderSegments.wait((long)avgResponseTime);
+								inOrderSegments.wait(wait);
 						}
 						else {
 							if(SystemConfiguration.SHORT_TIMEOUT > sleepCheck)
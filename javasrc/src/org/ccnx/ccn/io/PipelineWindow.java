@@ -0,0 +1,165 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.io;
+
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.config.SystemConfiguration.PIPELINE_WINDOW_MODE;
+
+/**
+ * Decides how many segments a CCNAbstractInputStream may have requested or buffered at once,
+ * and how long to wait for a segment before asking for it again.
+ *
+ * In FIXED mode the window is always SystemConfiguration.PIPELINE_SIZE. In AIMD mode it starts
+ * at PIPELINE_SIZE, grows by one segment per segment received until the first loss (slow start)
+ * and by one segment per window after that, and is halved when a segment has to be requested
+ * again - at most once per round trip. It stays between MIN_WINDOW and
+ * SystemConfiguration.PIPELINE_MAX_WINDOW.
+ *
+ * Round trip times are smoothed as in RFC 6298 to give the retransmission timeout, which doubles
+ * with each loss until the next good sample. Segments that were requested more than once are not
+ * sampled, since we can't tell which request was answered.
+ */
+public class PipelineWindow {
+
+	public static final int MIN_WINDOW = 2;
+	public static final long MIN_RTO = 50;
+	public static final int MAX_BACKOFF = 64;
+
+	protected final PIPELINE_WINDOW_MODE _mode;
+	protected double _window;
+	protected double _threshold = Double.MAX_VALUE;	// slow start until the first loss
+	protected double _srtt = -1;
+	protected double _rttvar = 0;
+	protected int _backoff = 1;
+	protected long _lastDecrease = 0;
+
+	protected long _samples = 0;
+	protected long _losses = 0;
+	protected long _decreases = 0;
+
+	public PipelineWindow() {
+		this(SystemConfiguration.PIPELINE_MODE);
+	}
+
+	public PipelineWindow(PIPELINE_WINDOW_MODE mode) {
+		_mode = mode;
+		_window = SystemConfiguration.PIPELINE_SIZE;
+	}
+
+	public PIPELINE_WINDOW_MODE getMode() {
+		return _mode;
+	}
+
+	/**
+	 * @return the number of segments that may be requested or buffered
+	 */
+	public synchronized int getWindow() {
+		if (_mode == PIPELINE_WINDOW_MODE.FIXED)
+			return SystemConfiguration.PIPELINE_SIZE;
+		return (int)_window;
+	}
+
+	/**
+	 * Record a segment received in answer to a request
+	 * @param rtt time since the segment was first requested in ms, or -1 if it was requested
+	 * 	more than once
+	 */
+	public synchronized void received(long rtt) {
+		if (rtt >= 0) {
+			_samples++;
+			_backoff = 1;
+			if (_srtt < 0) {
+				_srtt = rtt;
+				_rttvar = rtt / 2.0;
+			} else {
+				_rttvar = 0.75 * _rttvar + 0.25 * Math.abs(_srtt - rtt);
+				_srtt = 0.875 * _srtt + 0.125 * rtt;
+			}
+		}
+		if (_window < _threshold)
+			_window += 1;
+		else
+			_window += 1 / _window;
+		_window = Math.min(_window, SystemConfiguration.PIPELINE_MAX_WINDOW);
+	}
+
+	/**
+	 * Record that a segment had to be requested again
+	 */
+	public synchronized void lost() {
+		_losses++;
+		_backoff = Math.min(_backoff * 2, MAX_BACKOFF);
+		long now = System.currentTimeMillis();
+		// Losses from the same window only count once
+		if (_srtt >= 0 && now - _lastDecrease < _srtt)
+			return;
+		_lastDecrease = now;
+		_decreases++;
+		_threshold = Math.max(_window / 2, MIN_WINDOW);
+		_window = _threshold;
+	}
+
+	/**
+	 * @return how long to wait in ms for a segment before requesting it again, or -1
+	 * 	if we haven't seen a round trip yet
+	 */
+	public synchronized long getRetransmitTimeout() {
+		if (_srtt < 0)
+			return -1;
+		long rto = (long)(_srtt + Math.max(1, 4 * _rttvar)) * _backoff;
+		return Math.min(Math.max(rto, MIN_RTO), SystemConfiguration.INTEREST_REEXPRESSION_DEFAULT);
+	}
+
+	/**
+	 * @return the smoothed round trip time in ms, or -1 if we haven't seen a round trip yet
+	 */
+	public synchronized double getSmoothedRTT() {
+		return _srtt;
+	}
+
+	public synchronized double getRTTVariation() {
+		return _rttvar;
+	}
+
+	/**
+	 * @return the number of round trip times sampled
+	 */
+	public synchronized long getSamples() {
+		return _samples;
+	}
+
+	/**
+	 * @return the number of segments that had to be requested again
+	 */
+	public synchronized long getLosses() {
+		return _losses;
+	}
+
+	/**
+	 * @return the number of times the window was cut
+	 */
+	public synchronized long getDecreases() {
+		return _decreases;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "window " + getWindow() + " srtt " + (long)_srtt + " rttvar " + (long)_rttvar + " rto " + getRetransmitTimeout() +
+			" samples " + _samples + " losses " + _losses + " decreases " + _decreases;
+	}
+}
@@ -150,6 +150,50 @@ public class ConfigSlice extends GenericXMLEncodable {
 		}
 	}
 
+	/**
+	 * Test whether a name is in this slice, as sync decides it: the name must be under the
+	 * prefix and, if there are filters, the components following the prefix must begin with
+	 * those of one of the filters. A filter component of the single byte 0xFF matches any
+	 * component; a longer one starting with 0xFF matches the rest of it.
+	 * @param name
+	 * @return true if the name is in the slice
+	 */
+	public boolean matches(ContentName name) {
+		if (null != prefix && !prefix.isPrefixOf(name))
+			return false;
+		if (filters.isEmpty())
+			return true;
+		int skip = (null == prefix) ? 0 : prefix.count();
+		for (Filter f : filters) {
+			if (matchesFilter(f, name, skip))
+				return true;
+		}
+		return false;
+	}
+
+	protected static boolean matchesFilter(Filter filter, ContentName name, int skip) {
+		int count = filter.count();
+		if (0 == count || name.count() - skip < count)
+			return false;
+		for (int i = 0; i < count; i++) {
+			byte [] pattern = filter.component(i);
+			byte [] component = name.component(skip + i);
+			int start = 0;
+			if (pattern.length > 0 && pattern[0] == (byte)0xFF) {
+				if (pattern.length == 1)
+					continue;
+				start = 1;
+			}
+			if (pattern.length - start != component.length)
+				return false;
+			for (int j = 0; j < component.length; j++) {
+				if (pattern[start + j] != component[j])
+					return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Used by NetworkObject read constructor
 	 */
@@ -14,9 +14,12 @@ import org.ccnx.ccn.protocol.ContentName.ComponentProvider;
 /**
  * Wrapper class to store immutable name components.
  */
-public class Component implements ComponentProvider {
+public class Component implements ComponentProvider, Comparable<Component> {
 
 	byte[] component;
+
+	// Cached hashCode(), 0 until computed
+	int hash;
 	
 	protected Component(byte[] comp) {
 		component = comp;
@@ -267,7 +270,20 @@ public class Component implements ComponentProvider {
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(getComponent());
+		int h = hash;
+		if (0 == h) {
+			h = Arrays.hashCode(getComponent());
+			hash = h;
+		}
+		return h;
+	}
+
+	/**
+	 * Components sort in canonical CCN (shortlex) order.
+	 * @see DataUtils#compare(byte[], byte[])
+	 */
+	public int compareTo(Component o) {
+		return DataUtils.compare(getComponent(), o.getComponent());
 	}
 
 	@Override
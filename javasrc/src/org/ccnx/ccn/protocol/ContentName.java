@@ -39,6 +39,11 @@ import org.ccnx.ccn.io.content.ContentEncodingException;
  * Warning: This class is designed to be immutable. Some methods expose the internal
  * byte[] components. You must be careful not to change the contents of these byte[]
  * when you receive the values back from this class.
+ *
+ * Names share component arrays rather than copying them: a name made from a parent uses the
+ * parent's arrays, and a decoded name uses the arrays of the previous name decoded on the same
+ * thread for the leading components the two have in common. So the segments of a stream, or the
+ * names read into a repository index, hold one copy of their prefix between them.
  */
 public class ContentName extends GenericXMLEncodable implements XMLEncodable, Comparable<ContentName>, Serializable, ContentNameProvider, Iterable<byte []> {
 
@@ -61,6 +66,12 @@ public class ContentName extends GenericXMLEncodable implements XMLEncodable, Co
 	// Goal is to make this final in the future.
 	protected byte[][]  _components;
 
+	// Cached hashCode(), 0 until computed. Names are used as keys in most of the library's maps.
+	protected transient int _hash;
+
+	// Components of the last name decoded by each thread, for the next decode to share
+	private static final ThreadLocal<byte[][]> _lastDecoded = new ThreadLocal<byte[][]>();
+
 	// Constructors
 	/**
 	 * Will become private in future. Today used together with {@link #decode(XMLDecoder)}
@@ -844,11 +855,25 @@ public class ContentName extends GenericXMLEncodable implements XMLEncodable, Co
 
 		ArrayList<byte []> components = new ArrayList<byte []>(6);
 
-		while (decoder.peekStartElement(CCNProtocolDTags.Component))
-			components.add(decoder.readBinaryElement(CCNProtocolDTags.Component));
+		// Use the last decoded name's arrays for as long as the components match it
+		byte [][] last = _lastDecoded.get();
+		int shared = (null == last) ? 0 : last.length;
+		while (decoder.peekStartElement(CCNProtocolDTags.Component)) {
+			byte [] component = decoder.readBinaryElement(CCNProtocolDTags.Component);
+			int i = components.size();
+			if (i < shared) {
+				if (Arrays.equals(component, last[i]))
+					component = last[i];
+				else
+					shared = i;
+			}
+			components.add(component);
+		}
 
 		decoder.readEndElement();
 		_components = components.toArray(new byte[components.size()][]);
+		_hash = 0;
+		_lastDecoded.set(_components);
 	}
 
 	/**
@@ -914,12 +939,21 @@ public class ContentName extends GenericXMLEncodable implements XMLEncodable, Co
 				return false;
 		}
 		ContentName other = (ContentName) obj;
+		if (this == other)
+			return true;
+		if (_hash != 0 && other._hash != 0 && _hash != other._hash)
+			return false;
 		return Arrays.deepEquals(_components, other._components);
 	}
 
 	@Override
 	public int hashCode() {
-		return Arrays.deepHashCode(_components);
+		int hash = _hash;
+		if (0 == hash) {
+			hash = Arrays.deepHashCode(_components);
+			_hash = hash;
+		}
+		return hash;
 	}
 
 	/**
@@ -1238,14 +1272,15 @@ public class ContentName extends GenericXMLEncodable implements XMLEncodable, Co
 			return 0;
 		int thisCount = _components.length;
 		int oCount = o._components.length;
-		int len = (thisCount > oCount) ? thisCount : oCount;
+		int len = (thisCount < oCount) ? thisCount : oCount;
 		int componentResult;
 		for (int i=0; i < len; ++i) {
-			componentResult = DataUtils.compare(this.component(i), o.component(i));
+			componentResult = DataUtils.compare(_components[i], o._components[i]);
 			if (0 != componentResult)
 				return componentResult;
 		}
-		return 0;
+		// A prefix sorts before the names it is a prefix of
+		return (thisCount < oCount) ? -1 : ((thisCount > oCount) ? 1 : 0);
 	}
 
 	/**
@@ -20,6 +20,8 @@ package org.ccnx.ccn.protocol;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.security.DigestOutputStream;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
@@ -35,6 +37,7 @@ import org.ccnx.ccn.ContentVerifier;
 import org.ccnx.ccn.KeyManager;
 import org.ccnx.ccn.config.SystemConfiguration;
 import org.ccnx.ccn.impl.encoding.BinaryXMLCodec;
+import org.ccnx.ccn.impl.encoding.BinaryXMLDecoder;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLCodecFactory;
@@ -43,6 +46,7 @@ import org.ccnx.ccn.impl.encoding.XMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLEncoder;
 import org.ccnx.ccn.impl.security.crypto.CCNDigestHelper;
 import org.ccnx.ccn.impl.security.crypto.CCNSignatureHelper;
+import org.ccnx.ccn.impl.security.crypto.VerifiedSignatureCache;
 import org.ccnx.ccn.impl.support.DataUtils;
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.io.NullOutputStream;
@@ -72,6 +76,16 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	 */
 	protected byte [] _digest = null;
 	protected Signature _signature; 
+
+	/**
+	 * The binary encoding this object was decoded from, if the decoder retained it
+	 * (see SystemConfiguration.RETAIN_WIRE_ENCODING), and the part of it that is signed
+	 * (the encoded name, signedInfo and content). Used in place of encoding the
+	 * object again. Dropped if the signature is changed.
+	 */
+	protected byte [] _encoding = null;
+	protected int _signedStart = 0;
+	protected int _signedEnd = 0;
 	
 	/**
 	 * We don't specify a required publisher, and right now we don't enforce
@@ -366,11 +380,17 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	 * @see org.ccnx.ccn.impl.encoding.XMLEncodable
 	 */
 	public void decode(XMLDecoder decoder) throws ContentDecodingException {
+		BinaryXMLDecoder binaryDecoder = null;
+		if ((decoder instanceof BinaryXMLDecoder) && ((BinaryXMLDecoder)decoder).getRetainEncoding())
+			binaryDecoder = (BinaryXMLDecoder)decoder;
+		int start = (null == binaryDecoder) ? 0 : binaryDecoder.getParsingOffset();
+
 		decoder.readStartElement(getElementLabel());
 
 		_signature = new Signature();
 		_signature.decode(decoder);
 
+		int signedStart = (null == binaryDecoder) ? 0 : binaryDecoder.getParsingOffset();
 		_name = new ContentName();
 		_name.decode(decoder);
 
@@ -379,7 +399,54 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 
 		_content = decoder.readBinaryElement(CCNProtocolDTags.Content);
 
+		int signedEnd = (null == binaryDecoder) ? 0 : binaryDecoder.getParsingOffset();
 		decoder.readEndElement();
+
+		_digest = null;
+		_encoding = null;
+		if (null != binaryDecoder) {
+			_encoding = binaryDecoder.getEncoding(start, binaryDecoder.getParsingOffset());
+			_signedStart = signedStart - start;
+			_signedEnd = signedEnd - start;
+		}
+	}
+
+	/**
+	 * @return true if this object kept the encoding it was decoded from
+	 */
+	public boolean hasRetainedEncoding() {
+		return null != _encoding;
+	}
+
+	/**
+	 * @return a read-only view of the encoding this object was decoded from, or null
+	 * 	if it wasn't retained
+	 */
+	public ByteBuffer retainedEncoding() {
+		if (null == _encoding)
+			return null;
+		return ByteBuffer.wrap(_encoding).asReadOnlyBuffer();
+	}
+
+	/**
+	 * If we have the binary encoding we were decoded from, write that rather than
+	 * encoding ourselves again.
+	 */
+	@Override
+	public void encode(OutputStream ostream, String codec) throws ContentEncodingException {
+		if (null != _encoding) {
+			if (null == codec)
+				codec = XMLCodecFactory.getDefaultCodecName();
+			if (BinaryXMLCodec.CODEC_NAME.equals(codec)) {
+				try {
+					ostream.write(_encoding);
+				} catch (IOException e) {
+					throw new ContentEncodingException(e.getMessage(), e);
+				}
+				return;
+			}
+		}
+		super.encode(ostream, codec);
 	}
 
 	/**
@@ -467,6 +534,8 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 				Log.fine(Log.FAC_SIGNING, "Setting signature to null on content object: " + name());
 		}
 		_signature = signature;
+		_encoding = null;
+		_digest = null;
 	}
 
 	public void sign(PrivateKey signingKey) throws InvalidKeyException, SignatureException {
@@ -596,7 +665,20 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 		boolean result; 
 		
 		if (null != contentProxy) {
-			result = CCNSignatureHelper.verify(contentProxy, object.signature().signature(), object.signature().digestAlgorithm(), publicKey);
+			// Segments signed under the same Merkle root share a signature; only check it once
+			VerifiedSignatureCache cache = VerifiedSignatureCache.getDefaultCache();
+			byte [] signature = object.signature().signature();
+			String digestAlgorithm = object.signature().digestAlgorithm();
+			if (cache.isVerified(contentProxy, signature, digestAlgorithm, publicKey))
+				return true;
+			result = CCNSignatureHelper.verify(contentProxy, signature, digestAlgorithm, publicKey);
+			if (result)
+				cache.addVerified(contentProxy, signature, digestAlgorithm, publicKey);
+		} else if (object.hasRetainedEncoding()) {
+			// Verify the bytes we received rather than encoding them again
+			String digestAlgorithm = object.signature().digestAlgorithm();
+			result = CCNSignatureHelper.verify(object.prepareContent(), object.signature().signature(),
+					(null == digestAlgorithm) ? CCNDigestHelper.DEFAULT_DIGEST_ALGORITHM : digestAlgorithm, publicKey);
 		} else {
 			result = verify(object.name(), object.signedInfo(), object.content(), object.signature(), publicKey);
 		}
@@ -722,12 +804,17 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 		}
 		// Have to eventually handle various forms of witnesses...
 		// Need to take an algorithm to control the digest used.
-		byte[] blockDigest = CCNDigestHelper.digest(
-					prepareContent());
+		byte[] blockDigest;
+		if (null != _encoding)
+			blockDigest = CCNDigestHelper.digest(_encoding, _signedStart, _signedEnd - _signedStart);
+		else
+			blockDigest = CCNDigestHelper.digest(prepareContent());
 		return signature().computeProxy(blockDigest, true);
 	}
 	
 	public byte [] prepareContent() throws ContentEncodingException {
+		if (null != _encoding)
+			return Arrays.copyOfRange(_encoding, _signedStart, _signedEnd);
 		return prepareContent(name(), signedInfo(), content());
 	}
 
@@ -753,21 +840,25 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 		// Do setup. Binary codec doesn't write a preamble or anything.
 		// If allow to pick, text encoder would sometimes write random stuff...
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		XMLEncoder encoder = XMLCodecFactory.getEncoder(BinaryXMLCodec.CODEC_NAME);
-		encoder.beginEncoding(baos);
-
-		// We include the tags in what we verify, to allow routers to merely
-		// take a chunk of data from the packet and sign/verify it en masse
-		name.encode(encoder);
-		signedInfo.encode(encoder);
-		// We treat content as a blob according to the binary codec. Want to always
-		// sign the same thing, plus it's really hard to do the automated codec
-		// stuff without doing a whole document, unless we do some serious
-		// rearranging.
-		
-		encoder.writeElement(CCNProtocolDTags.Content, content, start, length);
-
-		encoder.endEncoding();	
+		XMLEncoder encoder = XMLCodecFactory.acquireEncoder(BinaryXMLCodec.CODEC_NAME);
+		try {
+			encoder.beginEncoding(baos);
+
+			// We include the tags in what we verify, to allow routers to merely
+			// take a chunk of data from the packet and sign/verify it en masse
+			name.encode(encoder);
+			signedInfo.encode(encoder);
+			// We treat content as a blob according to the binary codec. Want to always
+			// sign the same thing, plus it's really hard to do the automated codec
+			// stuff without doing a whole document, unless we do some serious
+			// rearranging.
+
+			encoder.writeElement(CCNProtocolDTags.Content, content, start, length);
+
+			encoder.endEncoding();
+		} finally {
+			XMLCodecFactory.releaseEncoder(BinaryXMLCodec.CODEC_NAME, encoder);
+		}
 
 		return baos.toByteArray();
 	}
@@ -776,6 +867,8 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	 * Encode this object and calculate the digest.
 	 */
 	protected byte[] calcDigest() {
+		if (null != _encoding)
+			return CCNDigestHelper.digest(_encoding);
 		MessageDigest md;
 		try {
 			md = MessageDigest.getInstance(CCNDigestHelper.DEFAULT_DIGEST_ALGORITHM);
@@ -17,16 +17,19 @@
 
 package org.ccnx.ccn.protocol;
 
+import java.io.ByteArrayOutputStream;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Arrays;
 
+import org.ccnx.ccn.impl.encoding.BinaryXMLEncoder;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLDecoder;
 import org.ccnx.ccn.impl.encoding.XMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLEncoder;
 import org.ccnx.ccn.impl.support.ByteArrayCompare;
+import org.ccnx.ccn.impl.support.DataUtils;
 import org.ccnx.ccn.io.content.ContentDecodingException;
 import org.ccnx.ccn.io.content.ContentEncodingException;
 
@@ -45,6 +48,11 @@ import org.ccnx.ccn.io.content.ContentEncodingException;
  * 2. An any element or a bloom filter element must not be followed by an any element or bloom filter.
  * @see Filler
  * I.E. Any elements or bloom filters must be separated by at least one name component element.
+ *
+ * The elements are kept in an array that is never changed; changing the filter builds a new
+ * array and swaps it in. So matching, which happens for every object an interest is tested
+ * against, takes no lock and finds the component by binary search, and a filter being
+ * extended doesn't block interests being matched with it.
  */
 public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		Comparable<Exclude> {
@@ -70,8 +78,76 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		public abstract boolean match(byte [] component);
 	}
 
-	protected ArrayList<Element> _values = new ArrayList<Element>();
-	
+	/**
+	 * The elements of a filter. Never changed once built, so it can be read without locking.
+	 */
+	protected static class Values {
+		protected static final Values EMPTY = new Values(new Element[0]);
+
+		protected final Element [] _elements;
+		// The components in order, and where each is in _elements, for binary search
+		protected final byte [][] _components;
+		protected final int [] _componentIndex;
+		// False if the components aren't in order, as could happen with a filter from the network
+		protected final boolean _sorted;
+		// Blooms can be changed after being added, so we don't keep an encoding of them
+		protected final boolean _cacheable;
+		protected volatile byte [] _encoding = null;
+
+		protected Values(Element [] elements) {
+			_elements = elements;
+			int count = 0;
+			boolean cacheable = true;
+			for (Element ee : elements) {
+				if (ee instanceof ExcludeComponent)
+					count++;
+				else if (!(ee instanceof ExcludeAny))
+					cacheable = false;
+			}
+			_components = new byte[count][];
+			_componentIndex = new int[count];
+			boolean sorted = true;
+			count = 0;
+			for (int i = 0; i < elements.length; i++) {
+				if (elements[i] instanceof ExcludeComponent) {
+					_components[count] = ((ExcludeComponent)elements[i]).getComponent();
+					_componentIndex[count] = i;
+					if (count > 0 && DataUtils.compare(_components[count - 1], _components[count]) >= 0)
+						sorted = false;
+					count++;
+				}
+			}
+			_sorted = sorted;
+			_cacheable = cacheable;
+		}
+
+		protected Values(ArrayList<Element> elements) {
+			this(elements.toArray(new Element[elements.size()]));
+		}
+
+		/**
+		 * @return the ccnb encoding of the filter with these elements
+		 */
+		protected byte [] encoding(long label) throws ContentEncodingException {
+			byte [] encoding = _encoding;
+			if (null == encoding) {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				BinaryXMLEncoder encoder = new BinaryXMLEncoder();
+				encoder.beginEncoding(baos);
+				encoder.writeStartElement(label);
+				for (Element element : _elements)
+					element.encode(encoder);
+				encoder.writeEndElement();
+				encoder.endEncoding();
+				encoding = baos.toByteArray();
+				_encoding = encoding;
+			}
+			return encoding;
+		}
+	}
+
+	protected volatile Values _values = Values.EMPTY;
+
 	/**
 	 * @param values Must be a list of ExcludeElements - Components must be in increasing order
 	 * and there must not be more than one BloomFilter in a row.
@@ -96,7 +172,7 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 				throw new InvalidParameterException("bloom filters or anys are not allowed to follow each other");
 			last = ee;
 		}			
-		_values.addAll(values);
+		_values = new Values(values);
 	}
 
 	/**
@@ -109,9 +185,10 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		if (omissions == null || omissions.length == 0)
 			throw new IllegalArgumentException("No omissions");
 		Arrays.sort(omissions, new ByteArrayCompare());
-		for (byte[] omission : omissions) {
-			_values.add(new ExcludeComponent(omission));
-		}
+		Element [] elements = new Element[omissions.length];
+		for (int i = 0; i < omissions.length; i++)
+			elements[i] = new ExcludeComponent(omissions[i]);
+		_values = new Values(elements);
 	}
 
 	public Exclude() {} // for use by decoders
@@ -125,10 +202,7 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		if ( component == null)
 			return null;
 		Exclude ef = new Exclude();
-		synchronized (ef._values) {
-			ef._values.add(new ExcludeAny());
-			ef._values.add(new ExcludeComponent(component));
-		}
+		ef._values = new Values(new Element[] {new ExcludeAny(), new ExcludeComponent(component)});
 		return ef;
 	}
 
@@ -148,36 +222,63 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 	 * @return true if this component would be excluded by the exclude filter
 	 */
 	public boolean match(byte [] component) {
+		Values values = _values;
+		if (!values._sorted)
+			return matchInOrder(values, component);
+		byte [][] components = values._components;
+		int low = 0;
+		int high = components.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int res = DataUtils.compare(components[mid], component);
+			if (res < 0)
+				low = mid + 1;
+			else if (res > 0)
+				high = mid - 1;
+			else
+				// we exactly matched a component in the filter
+				return true;
+		}
+		// low is the first component in the filter after the one we're looking for, so
+		// check if there is a filler between the one before it and this one.
+		int before = (low < components.length) ? values._componentIndex[low] - 1 : values._elements.length - 1;
+		if (before < 0)
+			return false;
+		Element ee = values._elements[before];
+		return (ee instanceof Filler) && ((Filler)ee).match(component);
+	}
+
+	/**
+	 * Match by walking the elements, for filters whose components are out of order
+	 */
+	private static boolean matchInOrder(Values values, byte [] component) {
 		Filler lastFiller = null;
-		synchronized (_values) {
-			for (Element ee : _values) {
-				if (ee instanceof ExcludeComponent) {
-					ExcludeComponent ec = (ExcludeComponent) ee;
-					int res = ec.compareTo(component);
-					if (res == 0) {
-						// we exactly matched a component in the filter
-						return true;
-					} else if (res > 0) {
-						// we reached a component in the filter that is lexicographically after than the one
-						// we're looking for so check if there was a filler between the last component
-						// we saw and this one.
-						return lastFiller != null && lastFiller.match(component);
-					}
-					lastFiller = null;
-				} else {
-					// The element is not a component - so track what filler it was.
-					lastFiller = (Filler) ee;
+		for (Element ee : values._elements) {
+			if (ee instanceof ExcludeComponent) {
+				ExcludeComponent ec = (ExcludeComponent) ee;
+				int res = ec.compareTo(component);
+				if (res == 0) {
+					// we exactly matched a component in the filter
+					return true;
+				} else if (res > 0) {
+					// we reached a component in the filter that is lexicographically after than the one
+					// we're looking for so check if there was a filler between the last component
+					// we saw and this one.
+					return lastFiller != null && lastFiller.match(component);
 				}
+				lastFiller = null;
+			} else {
+				// The element is not a component - so track what filler it was.
+				lastFiller = (Filler) ee;
 			}
 		}
 		return lastFiller != null && lastFiller.match(component);
 	}
 
 	/**
-	 * Return a new Exclude filter that is a copy of this one with 
-	 * the supplied omissions added.
+	 * Add the supplied omissions to this Exclude filter. This is a single merge
+	 * of the sorted omissions with the filter, so adding many at once is cheap.
 	 * @param omissions name components to be excluded.
-	 * @return new Exclude filter object or null in case of error
 	 */
 	public void add(byte omissions[][] ) {
 		if (omissions == null || omissions.length == 0)
@@ -185,55 +286,56 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 
 		Arrays.sort(omissions, new ByteArrayCompare());
 
-		/*
-		 * i is an outer loop on the omissions list
-		 * j is an inner loop on the ExcludeEntries
-		 */
-		int i = 0, j = 0;
-		byte [] omission;
-		Element ee;
-		Filler lastFiller = null;
-		synchronized (_values) {
-			for(;i<omissions.length && j<_values.size();) {
-				omission = omissions[i];
-				ee = _values.get(j);
+		synchronized (this) {
+			Element [] elements = _values._elements;
+			ArrayList<Element> merged = new ArrayList<Element>(elements.length + omissions.length);
+			/*
+			 * i is on the omissions list, which is walked along with the elements
+			 */
+			int i = 0;
+			Filler lastFiller = null;
+			for (Element ee : elements) {
 				if (ee instanceof ExcludeComponent) {
 					ExcludeComponent ec = (ExcludeComponent) ee;
-					int res = ec.compareTo(omission);
-					if (res > 0) {
-						// we reached a component in the filter that is lexigraphically after than the one
-						// we're looking for.
-						if (lastFiller != null && lastFiller.match(omission)) {
-							// the filler already matches the component, no need to add it!
-							i++;
-							continue;
-						}
-						// no bloom or the bloom does not match - so add the component explicitly
-						_values.add(j, new ExcludeComponent(omission));
-						j++; // skip the component we just added
-						if (lastFiller != null) {
-							// there was a non matching bloom, so copy it to ensure same values get excluded
-							// TODO: should this be a clone()?
-							_values.add(j, lastFiller);
-							j++; // skip the bloom we just added
-						}
-						i++;
-						continue;
-					} else if (res == 0) {
-						// we matched a component already in the filter, so no need to add one in, just skip it.
-						i++;
-						continue;
+					// add the omissions that come before this component
+					for (; i < omissions.length; i++) {
+						int res = ec.compareTo(omissions[i]);
+						if (res < 0)
+							break;
+						// if we matched a component already in the filter, no need to add one
+						if (res > 0)
+							addOmission(merged, omissions, i, lastFiller);
 					}
+					merged.add(ec);
 					lastFiller = null;
-				} else
+				} else {
 					lastFiller = (Filler) ee;
-				j++;
-			}
-			// if we have values still to add, then add them to the end of the list
-			for(;i<omissions.length;i++) {
-				omission = omissions[i];
-				_values.add(new ExcludeComponent(omission));
+					merged.add(ee);
+				}
 			}
+			// if we have values still to add, then add them to the end
+			for (; i < omissions.length; i++)
+				addOmission(merged, omissions, i, lastFiller);
+			_values = new Values(merged);
+		}
+	}
+
+	/**
+	 * Add omissions[i] after lastFiller, the filler for the range it is in, if any.
+	 */
+	private static void addOmission(ArrayList<Element> merged, byte [][] omissions, int i, Filler lastFiller) {
+		if (i > 0 && DataUtils.compare(omissions[i - 1], omissions[i]) == 0)
+			return;
+		if (lastFiller != null && lastFiller.match(omissions[i])) {
+			// the filler already matches the component, no need to add it!
+			return;
+		}
+		// no bloom or the bloom does not match - so add the component explicitly
+		merged.add(new ExcludeComponent(omissions[i]));
+		if (lastFiller != null) {
+			// there was a non matching bloom, so copy it to ensure same values get excluded
+			// TODO: should this be a clone()?
+			merged.add(lastFiller);
 		}
 	}
 	
@@ -247,11 +349,12 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		if (component == null)
 			return;
 
-		Filler lastFiller = null;
-		synchronized (_values) {
+		synchronized (this) {
+			Element [] elements = _values._elements;
+			Filler lastFiller = null;
 			int res = -2;
 			int removes = 0;
-			for (Element ee : _values) {
+			for (Element ee : elements) {
 				if (ee instanceof ExcludeComponent) {
 					ExcludeComponent ec = (ExcludeComponent) ee;
 					res = ec.compareTo(component);
@@ -264,30 +367,20 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 				}
 				removes++;
 			}
-			for (int i = 0; i < removes; i++)
-				_values.remove(0);
-			if (res == 0) {
-				// we exactly matched a component already in the filter
-				// prefix it with an Any element, and we're done.
-				_values.add(0, new ExcludeAny());
-			} else {
-	
-				if (lastFiller == null) {
-					// there was no filler, so prefix the list with an Any and the component, and we're done
-					_values.add(0, new ExcludeAny());
-					_values.add(1, new ExcludeComponent(component));
-					return;
-				}
-				if (lastFiller instanceof ExcludeAny) {
-					_values.add(0, new ExcludeAny());
-					return;
-				}
-				_values.add(0, new ExcludeAny());
-				_values.add(1, new ExcludeComponent(component));
-				_values.add(2, lastFiller);
+			ArrayList<Element> result = new ArrayList<Element>(elements.length - removes + 3);
+			result.add(new ExcludeAny());
+			if (res != 0 && !(lastFiller instanceof ExcludeAny)) {
+				// we didn't exactly match a component already in the filter, and the
+				// range it's in isn't already excluded, so it must be added
+				result.add(new ExcludeComponent(component));
+				// if there was a bloom, it still applies after the component
+				if (lastFiller != null)
+					result.add(lastFiller);
 			}
+			for (int i = removes; i < elements.length; i++)
+				result.add(elements[i]);
+			_values = new Values(result);
 		}
-		return;		
 	}
 
 	/**
@@ -295,15 +388,14 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 	 * @return true if exclude has no elements
 	 */
 	public boolean empty() {
-		synchronized (_values) {
-			return ((null == _values) || (_values.isEmpty()));
-		}
+		return _values._elements.length == 0;
 	}
 
 	public void decode(XMLDecoder decoder) throws ContentDecodingException {
 		decoder.readStartElement(getElementLabel());
 		
-		synchronized (_values) {
+		synchronized (this) {
+			ArrayList<Element> values = new ArrayList<Element>(Arrays.asList(_values._elements));
 			boolean component;
 			boolean any = false;
 			while ((component = decoder.peekStartElement(CCNProtocolDTags.Component)) || 
@@ -311,27 +403,36 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 						decoder.peekStartElement(CCNProtocolDTags.Bloom)) {
 				Element ee = component?new ExcludeComponent(): any ? new ExcludeAny() : new BloomFilter();
 				ee.decode(decoder);
-				_values.add(ee);
+				values.add(ee);
 			}
 			decoder.readEndElement();
+			_values = new Values(values);
 		}
 	}
 
+	/**
+	 * The binary encoding of a filter without blooms is kept until the filter changes,
+	 * as the same filter is often encoded each time its interest is expressed.
+	 */
 	public void encode(XMLEncoder encoder) throws ContentEncodingException {
 		if (!validate()) {
 			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
 		}
+		Values values = _values;
 		// if everything is null, output nothing
-		if (empty())
+		if (values._elements.length == 0)
 			return;
-		
-		encoder.writeStartElement(getElementLabel());
 
-		synchronized (_values) {
-			for (Element element : _values)
-				element.encode(encoder);
+		if (values._cacheable && encoder instanceof BinaryXMLEncoder) {
+			((BinaryXMLEncoder)encoder).writeEncoded(values.encoding(getElementLabel()));
+			return;
 		}
 
+		encoder.writeStartElement(getElementLabel());
+
+		for (Element element : values._elements)
+			element.encode(encoder);
+
 		encoder.writeEndElement();
 	}
 
@@ -351,9 +452,7 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		if (!empty()) {
 			if (o.empty())
 				return 1;
-			synchronized (_values) {
-				result = _values.size() - o._values.size();
-			}
+			result = size() - o.size();
 			// TODO: need a better definition of ordering between exclude filters
 			// it's definitely an error to report they are the same just based on length
 			// but first - is this ever used?
@@ -371,9 +470,7 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		if (getClass() != obj.getClass())
 			return false;
 		Exclude other = (Exclude) obj;
-		synchronized (_values) {
-			return _values.equals(other._values);
-		}
+		return Arrays.equals(_values._elements, other._values._elements);
 	}
 
 	/**
@@ -381,35 +478,29 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 	 * @return number of elements
 	 */
 	public int size() {
-		synchronized (_values) {
-			return _values.size();
-		}
+		return _values._elements.length;
 	}
 	
 	/**
 	 * DEBUGGING ONLY -- may need to be removed.
 	 */
 	public Element value(int i) {
-		synchronized(_values) {
-			return _values.get(i);
-		}
+		return _values._elements[i];
 	}
 
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
 		boolean first = true;
-		synchronized (_values) {
-			for (Element ee : _values) {
-				if (first)
-					first = false;
-				else
-					sb.append(",");
-				if (ee instanceof ExcludeComponent) {
-					ExcludeComponent ec = (ExcludeComponent) ee;
-					sb.append(Component.printURI(ec.body));
-				} else {
-					sb.append("B");
-				}
+		for (Element ee : _values._elements) {
+			if (first)
+				first = false;
+			else
+				sb.append(",");
+			if (ee instanceof ExcludeComponent) {
+				ExcludeComponent ec = (ExcludeComponent) ee;
+				sb.append(Component.printURI(ec.body));
+			} else {
+				sb.append("B");
 			}
 		}
 		return sb.toString();
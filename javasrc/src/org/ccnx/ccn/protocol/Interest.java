@@ -212,6 +212,26 @@ public class Interest extends GenericXMLEncodable implements XMLEncodable, Compa
 		}
 		return false;
 	}
+
+	/**
+	 * Determine whether a piece of content matches this Interest, given its full name including
+	 * the digest component. Gives the same result as matches(ContentObject, PublisherPublicKeyDigest)
+	 * for the content, without needing the content itself.
+	 * 
+	 * @param fullName - Name of a content object including its digest component
+	 * @param resultPublisherKeyID
+	 * @return true if the name & publisherID match the Interest
+	 */
+	public boolean matchesFullName(ContentName fullName, PublisherPublicKeyDigest resultPublisherKeyID) {
+		if (null == name() || null == fullName || fullName.count() == 0)
+			return false;
+		boolean digest = fullName.count() == name().count();
+		ContentName name = digest ? fullName : fullName.parent();
+		if (isPrefixOf(name)) {
+			return internalMatch(name, digest, resultPublisherKeyID);
+		}
+		return false;
+	}
 	
 	// TODO We need to beef this up to deal with the more complex interest specs.
 	private boolean internalMatch(ContentName name, boolean digestIncluded,
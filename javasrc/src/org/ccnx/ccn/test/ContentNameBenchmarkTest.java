@@ -0,0 +1,209 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.test;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.ccnx.ccn.profiles.SegmentationProfile;
+import org.ccnx.ccn.profiles.VersioningProfile;
+import org.ccnx.ccn.protocol.ContentName;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead it times the name operations behind the library's maps, on segment names
+ * as CCNFlowControl and the InterestTable see them: hashing names as HashMap keys,
+ * and comparing them as TreeMap keys. Each is compared with the way it was done
+ * before names cached their hash and compared components a word at a time.
+ */
+public class ContentNameBenchmarkTest {
+
+	public static final int NUM_STREAMS = 16;
+	public static final int NUM_SEGMENTS = 512;
+	public static final int NUM_WARMUP = 20;
+	public static final int NUM_ITER = 100;
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	// Names as they arrive: equal to, but not the same objects as, the map keys
+	public static ArrayList<ContentName> keys = new ArrayList<ContentName>();
+	public static ArrayList<ContentName> lookups = new ArrayList<ContentName>();
+
+	/**
+	 * The comparison names used before: a byte at a time and a deep hash on every call
+	 */
+	static class OldName {
+		final ContentName _name;
+
+		OldName(ContentName name) {
+			_name = name;
+		}
+
+		@Override
+		public int hashCode() {
+			byte [][] components = new byte[_name.count()][];
+			for (int i = 0; i < components.length; i++)
+				components[i] = _name.component(i);
+			return Arrays.deepHashCode(components);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof OldName) && 0 == compare.compare(this, (OldName)obj);
+		}
+	}
+
+	static Comparator<OldName> compare = new Comparator<OldName>() {
+		public int compare(OldName left, OldName right) {
+			int len = Math.max(left._name.count(), right._name.count());
+			for (int i = 0; i < len; i++) {
+				int result = compareBytes(left._name.component(i), right._name.component(i));
+				if (0 != result)
+					return result;
+			}
+			return 0;
+		}
+	};
+
+	static int compareBytes(byte [] left, byte [] right) {
+		if (null == left)
+			return (null == right) ? 0 : -1;
+		if (null == right)
+			return 1;
+		if (left.length != right.length)
+			return (left.length < right.length) ? -1 : 1;
+		for (int i = 0; i < left.length; i++) {
+			short leftSubI = (short)(left[i] & 0xff);
+			short rightSubI = (short)(right[i] & 0xff);
+			if (leftSubI != rightSubI)
+				return (leftSubI < rightSubI) ? -1 : 1;
+		}
+		return 0;
+	}
+
+	static abstract class Lookup {
+		abstract int lookupAll();
+
+		/**
+		 * @return lookups per second
+		 */
+		double run(String desc) {
+			for (int i = 0; i < NUM_WARMUP; i++)
+				lookupAll();
+			int count = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < NUM_ITER; i++)
+				count += lookupAll();
+			double perSecond = count / ((System.nanoTime() - start) / 1000000000.0d);
+			System.out.println(desc + " (" + count + " lookups) = " + format.format(perSecond) + " lookups/s.");
+			return perSecond;
+		}
+	}
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		Random rnd = new Random(1);
+		for (int i = 0; i < NUM_STREAMS; i++) {
+			ContentName version = VersioningProfile.addVersion(ContentName.fromNative("/parc.com/test/benchmark/stream" + i));
+			for (int j = 0; j < NUM_SEGMENTS; j++) {
+				keys.add(SegmentationProfile.segmentName(version, j));
+				// Decoding makes new component arrays as a name from the network has
+				ContentName lookup = new ContentName();
+				lookup.decode(keys.get(keys.size() - 1).encode());
+				lookups.add(lookup);
+			}
+		}
+		Collections.shuffle(lookups, rnd);
+		format.setMaximumFractionDigits(0);
+		System.out.println("ContentName Benchmark Test starting on " + System.getProperty("os.name"));
+	}
+
+	static void compare(String desc, double old, double current) {
+		System.out.println(desc + ": " + format.format(old) + " lookups/s. before, " + format.format(current) +
+				" lookups/s. now (" + format.format(100.0 * (current - old) / old) + "% more)");
+		System.out.println("");
+	}
+
+	@Test
+	public void testHashMap() throws Exception {
+		System.out.println("==== HashMap lookups of " + keys.size() + " segment names");
+		final HashMap<OldName, Object> oldMap = new HashMap<OldName, Object>();
+		final HashMap<ContentName, Object> map = new HashMap<ContentName, Object>();
+		final ArrayList<OldName> oldLookups = new ArrayList<OldName>();
+		for (ContentName name : keys) {
+			oldMap.put(new OldName(name), name);
+			map.put(name, name);
+		}
+		for (ContentName name : lookups)
+			oldLookups.add(new OldName(name));
+		double old = new Lookup() {
+			int lookupAll() {
+				for (OldName name : oldLookups)
+					Assert.assertNotNull(oldMap.get(name));
+				return oldLookups.size();
+			}
+		}.run("Hashing every time");
+		double current = new Lookup() {
+			int lookupAll() {
+				for (ContentName name : lookups)
+					Assert.assertNotNull(map.get(name));
+				return lookups.size();
+			}
+		}.run("Cached hash");
+		compare("HashMap", old, current);
+	}
+
+	@Test
+	public void testTreeMap() throws Exception {
+		System.out.println("==== TreeMap lookups of " + keys.size() + " segment names");
+		final TreeMap<OldName, Object> oldMap = new TreeMap<OldName, Object>(compare);
+		final TreeMap<ContentName, Object> map = new TreeMap<ContentName, Object>();
+		final ArrayList<OldName> oldLookups = new ArrayList<OldName>();
+		for (ContentName name : keys) {
+			oldMap.put(new OldName(name), name);
+			map.put(name, name);
+		}
+		for (ContentName name : lookups)
+			oldLookups.add(new OldName(name));
+		double old = new Lookup() {
+			int lookupAll() {
+				for (OldName name : oldLookups)
+					Assert.assertNotNull(oldMap.get(name));
+				return oldLookups.size();
+			}
+		}.run("Byte at a time");
+		double current = new Lookup() {
+			int lookupAll() {
+				for (ContentName name : lookups)
+					Assert.assertNotNull(map.get(name));
+				return lookups.size();
+			}
+		}.run("Word at a time");
+		compare("TreeMap", old, current);
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.test;
+
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.ccnx.ccn.KeyManager;
+import org.ccnx.ccn.impl.security.crypto.CCNDigestHelper;
+import org.ccnx.ccn.impl.security.crypto.ContentKeys;
+import org.ccnx.ccn.impl.security.crypto.KDFContentKeys;
+import org.ccnx.ccn.impl.security.crypto.KeyDerivationFunction;
+import org.ccnx.ccn.impl.security.crypto.util.CryptoPrimitiveCache;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead it times the per-segment crypto work for plain, encrypted and key-derived
+ * segments, looking the primitives up for every segment and using the per-thread
+ * instances from CryptoPrimitiveCache. Unlike BenchmarkTest it doesn't need ccnd.
+ */
+public class CryptoBenchmarkTest {
+
+	public static final int NUM_WARMUP = 2000;
+	public static final int NUM_ITER = 20000;
+	public static final int SEGMENT_LENGTH = 4096;
+
+	public static final double NanoToMicro = 1000.0d;
+
+	public static final String MAC_ALGORITHM = "HmacSHA256";
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	public static byte [] segment = new byte[SEGMENT_LENGTH];
+	public static byte [] masterKey = new byte[16];
+	public static SecretKeySpec keySpec;
+	public static IvParameterSpec iv;
+	public static ContentKeys keys;
+	public static ContentName name;
+	public static PublisherPublicKeyDigest publisher;
+
+	static abstract class Operation {
+		abstract Object execute(int i) throws Exception;
+
+		/**
+		 * @return average microseconds per operation
+		 */
+		double run(String desc) throws Exception {
+			for (int i = 0; i < NUM_WARMUP; i++)
+				execute(i);
+			long start = System.nanoTime();
+			for (int i = 0; i < NUM_ITER; i++)
+				execute(i);
+			double micros = (System.nanoTime() - start) / NanoToMicro / NUM_ITER;
+			System.out.println("Avg. to " + desc + " (" + NUM_ITER + " iterations) = " + format.format(micros) + " us.");
+			return micros;
+		}
+	}
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		SecureRandom random = new SecureRandom();
+		random.nextBytes(segment);
+		random.nextBytes(masterKey);
+		keySpec = new SecretKeySpec(masterKey, ContentKeys.DEFAULT_KEY_ALGORITHM);
+		iv = new IvParameterSpec(new byte[16]);
+		keys = KDFContentKeys.generateRandomKeys("benchmark");
+		name = ContentName.fromNative("/parc/test/benchmark/segments");
+		byte [] ppd = new byte[32];
+		random.nextBytes(ppd);
+		publisher = new PublisherPublicKeyDigest(ppd);
+		format.setMaximumFractionDigits(3);
+		System.out.println("Crypto Benchmark Test starting on " + System.getProperty("os.name"));
+	}
+
+	static void compare(String desc, double lookup, double cached) {
+		System.out.println(desc + ": " + format.format(lookup) + " us. looking up, " + format.format(cached) +
+				" us. cached (" + format.format(100.0 * (lookup - cached) / lookup) + "% less)");
+		System.out.println("");
+	}
+
+	@Test
+	public void testPlainSegment() throws Exception {
+		System.out.println("==== Plain segment digest (" + SEGMENT_LENGTH + " bytes)");
+		double lookup = new Operation() {
+			Object execute(int i) throws Exception {
+				MessageDigest md = MessageDigest.getInstance(CCNDigestHelper.DEFAULT_DIGEST_ALGORITHM);
+				md.update(segment);
+				return md.digest();
+			}
+		}.run("digest, new MessageDigest");
+		double cached = new Operation() {
+			Object execute(int i) throws Exception {
+				return CCNDigestHelper.digest(segment);
+			}
+		}.run("digest, CCNDigestHelper");
+		compare("Plain segment", lookup, cached);
+	}
+
+	@Test
+	public void testEncryptedSegment() throws Exception {
+		final String algorithm = ContentKeys.DEFAULT_CIPHER_ALGORITHM;
+		System.out.println("==== Encrypted segment (" + SEGMENT_LENGTH + " bytes, " + algorithm + ")");
+		double lookup = new Operation() {
+			Object execute(int i) throws Exception {
+				Cipher cipher = Cipher.getInstance(algorithm, KeyManager.PROVIDER);
+				cipher.init(Cipher.ENCRYPT_MODE, keySpec, iv);
+				return cipher.doFinal(segment);
+			}
+		}.run("encrypt, new Cipher");
+		double cached = new Operation() {
+			Object execute(int i) throws Exception {
+				Cipher cipher = CryptoPrimitiveCache.getCipher(algorithm, KeyManager.PROVIDER);
+				cipher.init(Cipher.ENCRYPT_MODE, keySpec, iv);
+				return cipher.doFinal(segment);
+			}
+		}.run("encrypt, cached Cipher");
+		compare("Encrypted segment", lookup, cached);
+
+		new Operation() {
+			Object execute(int i) throws Exception {
+				return keys.getSegmentEncryptionCipher(name, publisher, i).doFinal(segment);
+			}
+		}.run("encrypt with KDFContentKeys segment cipher");
+		System.out.println("");
+	}
+
+	@Test
+	public void testKeyDerivation() throws Exception {
+		System.out.println("==== Key derivation (" + MAC_ALGORITHM + ")");
+		final byte [] label = "segment key".getBytes();
+		double lookup = new Operation() {
+			Object execute(int i) throws Exception {
+				Mac hmac = Mac.getInstance(MAC_ALGORITHM);
+				hmac.init(new SecretKeySpec(masterKey, MAC_ALGORITHM));
+				hmac.update(label);
+				return hmac.doFinal();
+			}
+		}.run("derive, new Mac");
+		double cached = new Operation() {
+			Object execute(int i) throws Exception {
+				Mac hmac = CryptoPrimitiveCache.getMac(MAC_ALGORITHM);
+				hmac.init(new SecretKeySpec(masterKey, MAC_ALGORITHM));
+				hmac.update(label);
+				return hmac.doFinal();
+			}
+		}.run("derive, cached Mac");
+		compare("Key derivation", lookup, cached);
+
+		new Operation() {
+			Object execute(int i) throws Exception {
+				return KeyDerivationFunction.DeriveKey(masterKey, 256, "segment key", null);
+			}
+		}.run("KeyDerivationFunction.DeriveKey");
+		System.out.println("");
+	}
+}
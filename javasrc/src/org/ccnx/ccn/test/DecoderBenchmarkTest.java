@@ -0,0 +1,202 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.test;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+
+import org.ccnx.ccn.impl.CCNNetworkManager;
+import org.ccnx.ccn.impl.encoding.BinaryXMLDecoder;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead it times decoding a buffer full of packets, as CCNNetworkChannel holds them
+ * after a read, through the InputStream interface and straight from the buffer.
+ * Unlike BenchmarkTest it doesn't need ccnd.
+ */
+public class DecoderBenchmarkTest {
+
+	public static final int NUM_WARMUP = 200;
+	public static final int NUM_ITER = 2000;
+	public static final int SEGMENT_LENGTH = 4096;
+
+	public static NumberFormat format = DecimalFormat.getNumberInstance();
+
+	public static ByteBuffer contentPackets;
+	public static ByteBuffer interestPackets;
+
+	/**
+	 * Reads from a ByteBuffer a byte at a time as CCNNetworkChannel does, without
+	 * the socket behind it
+	 */
+	static class BufferInputStream extends InputStream {
+		final ByteBuffer _buffer;
+		int _mark = -1;
+
+		BufferInputStream(ByteBuffer buffer) {
+			_buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			if (!_buffer.hasRemaining())
+				return -1;
+			return _buffer.get() & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!_buffer.hasRemaining())
+				return -1;
+			int ret = Math.min(len, _buffer.remaining());
+			_buffer.get(b, off, ret);
+			return ret;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public void mark(int readlimit) {
+			_mark = _buffer.position();
+		}
+
+		@Override
+		public void reset() {
+			_buffer.position(_mark);
+		}
+	}
+
+	static abstract class Decode {
+		abstract int decodeAll(ByteBuffer buffer) throws Exception;
+
+		/**
+		 * @return packets decoded per second
+		 */
+		double run(String desc, ByteBuffer packets) throws Exception {
+			for (int i = 0; i < NUM_WARMUP; i++)
+				decodeAll(packets.duplicate());
+			int count = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < NUM_ITER; i++)
+				count += decodeAll(packets.duplicate());
+			double perSecond = count / ((System.nanoTime() - start) / 1000000000.0d);
+			System.out.println(desc + " (" + count + " packets) = " + format.format(perSecond) + " packets/s.");
+			return perSecond;
+		}
+	}
+
+	static Decode streamDecode = new Decode() {
+		BinaryXMLDecoder decoder = newDecoder();
+		int decodeAll(ByteBuffer buffer) throws Exception {
+			BufferInputStream stream = new BufferInputStream(buffer);
+			int count = 0;
+			while (buffer.hasRemaining()) {
+				decoder.beginDecoding(stream);
+				Assert.assertNotNull(decoder.getPacket());
+				count++;
+			}
+			return count;
+		}
+	};
+
+	static Decode bufferDecode = new Decode() {
+		BinaryXMLDecoder decoder = newDecoder();
+		int decodeAll(ByteBuffer buffer) throws Exception {
+			int count = 0;
+			while (buffer.hasRemaining()) {
+				Assert.assertTrue(decoder.beginDecoding(buffer));
+				Assert.assertNotNull(decoder.getPacket());
+				count++;
+			}
+			return count;
+		}
+	};
+
+	static BinaryXMLDecoder newDecoder() {
+		BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+		decoder.setResyncable(true);
+		return decoder;
+	}
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(1024);
+		KeyPair pair = kpg.generateKeyPair();
+		ContentName name = ContentName.fromNative("/parc/test/benchmark/decoder");
+		SignedInfo si = new SignedInfo(new PublisherPublicKeyDigest(pair.getPublic()), new KeyLocator(name));
+		byte [] content = new byte[SEGMENT_LENGTH];
+
+		contentPackets = ByteBuffer.allocateDirect(CCNNetworkManager.MAX_PAYLOAD);
+		interestPackets = ByteBuffer.allocateDirect(CCNNetworkManager.MAX_PAYLOAD);
+		for (int i = 0; ; i++) {
+			byte [] encoded = new ContentObject(new ContentName(name, "segment" + i), si, content, pair.getPrivate()).encode();
+			if (encoded.length > contentPackets.remaining())
+				break;
+			contentPackets.put(encoded);
+		}
+		for (int i = 0; ; i++) {
+			byte [] encoded = new Interest(new ContentName(name, "interest" + i)).encode();
+			if (encoded.length > interestPackets.remaining())
+				break;
+			interestPackets.put(encoded);
+		}
+		contentPackets.flip();
+		interestPackets.flip();
+		format.setMaximumFractionDigits(0);
+		System.out.println("Decoder Benchmark Test starting on " + System.getProperty("os.name"));
+	}
+
+	static void compare(String desc, double stream, double buffer) {
+		System.out.println(desc + ": " + format.format(stream) + " packets/s. from the stream, " + format.format(buffer) +
+				" packets/s. from the buffer (" + format.format(100.0 * (buffer - stream) / stream) + "% more)");
+		System.out.println("");
+	}
+
+	@Test
+	public void testContentObjects() throws Exception {
+		System.out.println("==== Content objects (" + SEGMENT_LENGTH + " bytes of content)");
+		double stream = streamDecode.run("Decode from the stream", contentPackets);
+		double buffer = bufferDecode.run("Decode from the buffer", contentPackets);
+		compare("Content objects", stream, buffer);
+	}
+
+	@Test
+	public void testInterests() throws Exception {
+		System.out.println("==== Interests");
+		double stream = streamDecode.run("Decode from the stream", interestPackets);
+		double buffer = bufferDecode.run("Decode from the buffer", interestPackets);
+		compare("Interests", stream, buffer);
+	}
+}
@@ -132,6 +132,36 @@ public class CCNFlowControlTest extends CCNFlowControlTestBase {
 		Log.info(Log.FAC_TEST, "Completed testMixedOrderInterestPut");
 	}
 	
+	/**
+	 * Test matching of interests to held content by range, including by digest
+	 * and with the rightmost child selector
+	 * @throws Throwable
+	 */
+	@Test
+	public void testInterestMatchRange() throws Throwable {
+		Log.info(Log.FAC_TEST, "Starting testInterestMatchRange");
+		normalReset(name1);
+		fc.put(segments[1]);
+		fc.put(segments[3]);
+		fc.put(segments[0]);
+		fc.put(segments[2]);
+
+		// By digest, so only the content named by the rest of the interest's name matches
+		interestList.add(new Interest(segments[2].fullName()));
+		// Rightmost and leftmost of what's under the version
+		interestList.add(Interest.last(versions[0], versions[0].count(), null));
+		interestList.add(new Interest(versions[0]));
+		// Nothing is held under the other version
+		interestList.add(new Interest(versions[1]));
+		fc.handleInterests(interestList);
+		testExpected(queue.poll(), segments[2]);
+		testExpected(queue.poll(), segments[3]);
+		testExpected(queue.poll(), segments[0]);
+		Assert.assertTrue(queue.poll() == null);
+		Assert.assertEquals(1, fc.size());
+		Log.info(Log.FAC_TEST, "Completed testInterestMatchRange");
+	}
+
 	protected void normalReset(ContentName n) throws IOException {
 		_handle.reset();
 		interestList.clear();
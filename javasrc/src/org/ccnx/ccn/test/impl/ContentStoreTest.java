@@ -0,0 +1,140 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.test.impl;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import org.ccnx.ccn.impl.CCNNetworkManager.StatsEnum;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.impl.ContentStore;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.protocol.CCNTime;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test matching, freshness and eviction of the in-process ContentStore
+ */
+public class ContentStoreTest {
+
+	static KeyPair pair;
+	static SignedInfo si;
+	static SignedInfo staleSi;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(512);
+		pair = kpg.generateKeyPair();
+		PublisherPublicKeyDigest publisher = new PublisherPublicKeyDigest(pair.getPublic());
+		KeyLocator locator = new KeyLocator(new ContentName("key"));
+		si = new SignedInfo(publisher, CCNTime.now(), SignedInfo.ContentType.DATA, locator);
+		staleSi = new SignedInfo(publisher, CCNTime.now(), SignedInfo.ContentType.DATA, locator, 0, null);
+	}
+
+	static ContentObject object(SignedInfo signedInfo, Object ... components) throws Exception {
+		return new ContentObject(new ContentName(components), signedInfo, new byte[10], pair.getPrivate());
+	}
+
+	@Test
+	public void testMatching() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testMatching");
+
+		CCNEnumStats<StatsEnum> stats = new CCNEnumStats<StatsEnum>(StatsEnum.Puts);
+		ContentStore store = new ContentStore(10);
+		store.setStats(stats);
+		ContentObject v1 = object(si, "test", "store", "v1");
+		ContentObject v2 = object(si, "test", "store", "v2");
+		ContentObject other = object(si, "test", "storeother");
+		store.put(v2);
+		store.put(v1);
+		store.put(other);
+
+		Assert.assertSame(v1, store.get(new Interest(new ContentName("test", "store"))));
+		Interest latest = new Interest(new ContentName("test", "store"));
+		latest.childSelector(Interest.CHILD_SELECTOR_RIGHT);
+		Assert.assertSame(v2, store.get(latest));
+		Assert.assertSame(v2, store.get(new Interest(v2.fullName())));
+		Assert.assertSame(other, store.get(new Interest(new ContentName("test", "storeother"))));
+		Assert.assertNull(store.get(new Interest(new ContentName("test", "store", "v3"))));
+
+		// An interest can ask not to be answered from a content store
+		Interest bypass = new Interest(new ContentName("test", "store"));
+		bypass.answerOriginKind(Interest.ANSWER_GENERATED);
+		Assert.assertNull(store.get(bypass));
+
+		Assert.assertEquals(4, stats.getCounter(StatsEnum.ContentStoreHits.toString()));
+		Assert.assertEquals(1, stats.getCounter(StatsEnum.ContentStoreMisses.toString()));
+		Assert.assertEquals(1, stats.getCounter(StatsEnum.ContentStoreBypassed.toString()));
+
+		// Nothing is kept when the store is off
+		ContentStore off = new ContentStore(0);
+		off.put(v1);
+		Assert.assertEquals(0, off.size());
+		Assert.assertNull(off.get(new Interest(v1.name())));
+
+		Log.info(Log.FAC_TEST, "Completed testMatching");
+	}
+
+	@Test
+	public void testFreshness() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testFreshness");
+
+		ContentStore store = new ContentStore(10);
+		ContentObject stale = object(staleSi, "test", "fresh", "stale");
+		store.put(stale);
+		Interest interest = new Interest(stale.name());
+		Assert.assertNull(store.get(interest));
+		interest.answerOriginKind(Interest.ANSWER_CONTENT_STORE | Interest.ANSWER_GENERATED | Interest.ANSWER_STALE);
+		Assert.assertSame(stale, store.get(interest));
+
+		Log.info(Log.FAC_TEST, "Completed testFreshness");
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testEviction");
+
+		CCNEnumStats<StatsEnum> stats = new CCNEnumStats<StatsEnum>(StatsEnum.Puts);
+		ContentStore store = new ContentStore(3);
+		store.setStats(stats);
+		ContentObject [] objects = new ContentObject[4];
+		for (int i = 0; i < objects.length; i++)
+			objects[i] = object(si, "test", "evict", "o" + i);
+		for (int i = 0; i < 3; i++)
+			store.put(objects[i]);
+		// Use the first so the second is the least recently used
+		Assert.assertSame(objects[0], store.get(new Interest(objects[0].name())));
+		store.put(objects[3]);
+		Assert.assertEquals(3, store.size());
+		Assert.assertNull(store.get(new Interest(objects[1].name())));
+		Assert.assertSame(objects[0], store.get(new Interest(objects[0].name())));
+		Assert.assertSame(objects[3], store.get(new Interest(objects[3].name())));
+		Assert.assertEquals(1, stats.getCounter(StatsEnum.ContentStoreEvictions.toString()));
+
+		Log.info(Log.FAC_TEST, "Completed testEviction");
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.test.impl;
+
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ccnx.ccn.CCNContentHandler;
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.CCNNetworkManager;
+import org.ccnx.ccn.impl.CCNNetworkManager.NetworkProtocol;
+import org.ccnx.ccn.impl.CCNNetworkManager.StatsEnum;
+import org.ccnx.ccn.impl.CCNStats;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.impl.HandlerDispatcher;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.protocol.CCNTime;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test ordering and statistics of the network manager's handler dispatch pool
+ */
+public class HandlerDispatcherTest {
+
+	static final int CALLBACKS = 200;
+
+	@Test
+	public void testOrdered() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testOrdered");
+
+		CCNEnumStats<StatsEnum> stats = new CCNEnumStats<StatsEnum>(StatsEnum.Puts);
+		HandlerDispatcher dispatcher = new HandlerDispatcher("testOrdered", 4, 10, true, stats);
+		Object slow = new Object();
+		Object fast = new Object();
+		final List<Integer> slowSeen = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<Integer> fastSeen = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(2 * CALLBACKS);
+
+		for (int i = 0; i < CALLBACKS; i++) {
+			final int value = i;
+			dispatcher.dispatch(slow, new Runnable() {
+				public void run() {
+					slowSeen.add(value);
+					if (value % 50 == 0) {
+						try {
+							Thread.sleep(10);
+						} catch (InterruptedException e) {}
+					}
+					done.countDown();
+				}
+			});
+			dispatcher.dispatch(fast, new Runnable() {
+				public void run() {
+					fastSeen.add(value);
+					done.countDown();
+				}
+			});
+		}
+		Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < CALLBACKS; i++) {
+			Assert.assertEquals(i, slowSeen.get(i).intValue());
+			Assert.assertEquals(i, fastSeen.get(i).intValue());
+		}
+
+		Assert.assertEquals(2 * CALLBACKS, stats.getCounter(StatsEnum.DispatchQueued.toString()));
+		CCNStats slowStats = dispatcher.getStatsByName(slow);
+		Assert.assertEquals(CALLBACKS, slowStats.getCounter(HandlerDispatcher.HandlerStatsEnum.Dispatched.toString()));
+		Assert.assertEquals(2, dispatcher.getCategoryNames().length);
+		dispatcher.shutdown();
+
+		Log.info(Log.FAC_TEST, "Completed testOrdered");
+	}
+
+	@Test
+	public void testUnordered() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testUnordered");
+
+		CCNEnumStats<StatsEnum> stats = new CCNEnumStats<StatsEnum>(StatsEnum.Puts);
+		HandlerDispatcher dispatcher = new HandlerDispatcher("testUnordered", 2, 4, false, stats);
+		Object handler = new Object();
+		final CountDownLatch running = new CountDownLatch(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(2);
+
+		// Both callbacks for the same handler must be able to run at once
+		for (int i = 0; i < 2; i++) {
+			dispatcher.dispatch(handler, new Runnable() {
+				public void run() {
+					running.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {}
+					done.countDown();
+				}
+			});
+		}
+		Assert.assertTrue(running.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(2, dispatcher.getQueueDepth(handler));
+		release.countDown();
+		Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+		dispatcher.shutdown();
+
+		Log.info(Log.FAC_TEST, "Completed testUnordered");
+	}
+
+	/**
+	 * Lets the test hand content to the network manager as if it came from ccnd.
+	 * UDP is used so no ccnd is needed to open the channel.
+	 */
+	static class DeliveringNetworkManager extends CCNNetworkManager {
+		DeliveringNetworkManager() throws IOException {
+			super(null);
+		}
+
+		void receive(ContentObject co) {
+			deliverContent(co);
+		}
+	}
+
+	@Test
+	public void testCancelQueued() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testCancelQueued");
+
+		int threads = SystemConfiguration.NETMANAGER_DISPATCH_THREADS;
+		NetworkProtocol protocol = SystemConfiguration.AGENT_PROTOCOL;
+		SystemConfiguration.NETMANAGER_DISPATCH_THREADS = 1;
+		SystemConfiguration.AGENT_PROTOCOL = NetworkProtocol.UDP;
+		DeliveringNetworkManager manager = null;
+		try {
+			manager = new DeliveringNetworkManager();
+		} finally {
+			SystemConfiguration.NETMANAGER_DISPATCH_THREADS = threads;
+			SystemConfiguration.AGENT_PROTOCOL = protocol;
+		}
+
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(512);
+		KeyPair pair = kpg.generateKeyPair();
+		SignedInfo si = new SignedInfo(new PublisherPublicKeyDigest(pair.getPublic()), CCNTime.now(),
+				SignedInfo.ContentType.DATA, new KeyLocator(new ContentName("key")));
+		ContentName blockingName = new ContentName("test", "dispatch", "blocking");
+		ContentName cancelName = new ContentName("test", "dispatch", "cancelled");
+		ContentName lastName = new ContentName("test", "dispatch", "last");
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicInteger cancelledCalls = new AtomicInteger();
+
+		// Holds the only dispatch thread so the next callback stays queued
+		CCNContentHandler blocking = new CCNContentHandler() {
+			public Interest handleContent(ContentObject data, Interest interest) {
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {}
+				return null;
+			}
+		};
+		CCNContentHandler cancelled = new CCNContentHandler() {
+			public Interest handleContent(ContentObject data, Interest interest) {
+				cancelledCalls.incrementAndGet();
+				return interest;
+			}
+		};
+		// Runs after the queued callback, so we know it has been dealt with
+		CCNContentHandler last = new CCNContentHandler() {
+			public Interest handleContent(ContentObject data, Interest interest) {
+				done.countDown();
+				return null;
+			}
+		};
+
+		try {
+			Interest cancelInterest = new Interest(cancelName);
+			manager.expressInterest(this, new Interest(blockingName), blocking);
+			manager.expressInterest(this, cancelInterest, cancelled);
+			manager.expressInterest(this, new Interest(lastName), last);
+			manager.receive(new ContentObject(new ContentName(blockingName, "data"), si, new byte[10], pair.getPrivate()));
+			Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+			manager.receive(new ContentObject(new ContentName(cancelName, "data"), si, new byte[10], pair.getPrivate()));
+			manager.cancelInterest(this, cancelInterest, cancelled);
+			manager.receive(new ContentObject(new ContentName(lastName, "data"), si, new byte[10], pair.getPrivate()));
+			release.countDown();
+			Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+			Assert.assertEquals(0, cancelledCalls.get());
+		} finally {
+			release.countDown();
+			manager.shutdown();
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testCancelQueued");
+	}
+}
@@ -703,4 +703,38 @@ public class InterestTableTest extends CCNTestBase {
 		
 		Log.info(Log.FAC_TEST, "Completed testLRU");
 	}
+	
+	@Test
+	public void testMatchDigest() throws MalformedContentNameStringException, InvalidKeyException, SignatureException, ConfigurationException {
+		Log.info(Log.FAC_TEST, "Starting testMatchDigest");
+
+		setID(0);
+		ContentObject target = getContentObject(ContentName.fromNative(abb));
+		ContentObject other = getContentObject(ContentName.fromNative(ab));
+		
+		InterestTable<Integer> table = new InterestTable<Integer>();
+		table.add(new Interest(ContentName.fromNative(a)), new Integer(1));
+		table.add(new Interest(target.name()), new Integer(2));
+		table.add(new Interest(target.fullName()), new Integer(3));
+		table.add(new Interest(other.fullName()), new Integer(4));
+		table.add(new Interest(ContentName.fromNative(abc)), new Integer(5));
+		
+		// The interest naming the digest is the longest match; the one naming
+		// the other object's digest and the unrelated prefix must not match
+		assertEquals(3, table.getValue(target).intValue());
+		List<Integer> values = table.getValues(target);
+		assertEquals(3, values.size());
+		assertEquals(3, values.get(0).intValue());
+		assertEquals(2, values.get(1).intValue());
+		assertEquals(1, values.get(2).intValue());
+		
+		assertEquals(3, table.removeValue(target).intValue());
+		assertEquals(2, table.removeValue(target).intValue());
+		assertEquals(4, table.removeValue(other).intValue());
+		assertEquals(1, table.removeValue(other).intValue());
+		assertNull(table.getValue(target));
+		sizes(table, 1, 1);
+		
+		Log.info(Log.FAC_TEST, "Completed testMatchDigest");
+	}
 }
@@ -0,0 +1,69 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.test.impl;
+
+import org.ccnx.ccn.impl.LatencyHistogram;
+import org.ccnx.ccn.impl.support.Log;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test bucketing and percentiles of LatencyHistogram
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		Log.info(Log.FAC_TEST, "Starting testBuckets");
+
+		Assert.assertEquals(0, LatencyHistogram.bucket(0));
+		Assert.assertEquals(0, LatencyHistogram.bucket(999));
+		Assert.assertEquals(1, LatencyHistogram.bucket(1000));
+		Assert.assertEquals(2, LatencyHistogram.bucket(2000));
+		Assert.assertEquals(2, LatencyHistogram.bucket(3999));
+		Assert.assertEquals(3, LatencyHistogram.bucket(4000));
+		Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+		for (int i = 0; i < LatencyHistogram.BUCKETS - 1; i++)
+			Assert.assertEquals(i + 1, LatencyHistogram.bucket(LatencyHistogram.bucketLimit(i) * 1000));
+
+		Log.info(Log.FAC_TEST, "Completed testBuckets");
+	}
+
+	@Test
+	public void testPercentiles() {
+		Log.info(Log.FAC_TEST, "Starting testPercentiles");
+
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		Assert.assertEquals(0, histogram.getPercentile(50));
+		for (int i = 0; i < 98; i++)
+			histogram.record(1500);		// 1.5us
+		histogram.record(100000);		// 100us
+		histogram.record(5000000);		// 5ms
+		Assert.assertEquals(100, histogram.getTotal());
+		Assert.assertEquals(98, histogram.getCount(1));
+		Assert.assertEquals(2, histogram.getPercentile(50));
+		Assert.assertEquals(128, histogram.getPercentile(99));
+		Assert.assertEquals(8192, histogram.getPercentile(100));
+		Assert.assertTrue(histogram.toString().startsWith("test: 100 samples"));
+
+		histogram.clear();
+		Assert.assertEquals(0, histogram.getTotal());
+
+		Log.info(Log.FAC_TEST, "Completed testPercentiles");
+	}
+}
@@ -1,6 +1,9 @@
 package org.ccnx.ccn.test.impl.encoding;
 
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.util.Random;
 
 import junit.framework.Assert;
@@ -12,6 +15,9 @@ import org.ccnx.ccn.io.content.ContentDecodingException;
 import org.ccnx.ccn.protocol.ContentName;
 import org.ccnx.ccn.protocol.ContentObject;
 import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.SignedInfo;
 import org.junit.Test;
 
 public class DecoderTest {
@@ -43,6 +49,61 @@ public class DecoderTest {
 		Assert.assertEquals(((ContentObject)packet).name(), contentName);
 	}
 
+	@Test
+	public void testBufferDecoding() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testBufferDecoding");
+
+		ContentName interestName = ContentName.fromNative(interestTest);
+		byte[] interestBytes = new Interest(interestName).encode();
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(512);
+		KeyPair pair = kpg.generateKeyPair();
+		ContentName contentName = ContentName.fromNative(contentTest);
+		SignedInfo si = new SignedInfo(new PublisherPublicKeyDigest(pair.getPublic()), new KeyLocator(contentName));
+		ContentObject co = new ContentObject(contentName, si, "test decoder".getBytes(), pair.getPrivate());
+		byte[] contentBytes = co.encode();
+
+		// Two packets back to back, as they arrive in the channel buffer
+		ByteBuffer buffer = ByteBuffer.allocateDirect(interestBytes.length + contentBytes.length + 1);
+		buffer.put(interestBytes);
+		buffer.put(contentBytes);
+		buffer.flip();
+		BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+		decoder.setRetainEncoding(true);
+		Assert.assertTrue(decoder.beginDecoding(buffer));
+		Assert.assertEquals(interestBytes.length, buffer.position());
+		XMLEncodable packet = decoder.getPacket();
+		Assert.assertTrue("Packet has incorrect type", packet instanceof Interest);
+		Assert.assertEquals(interestName, ((Interest)packet).name());
+		Assert.assertTrue(decoder.beginDecoding(buffer));
+		Assert.assertFalse(buffer.hasRemaining());
+		packet = decoder.getPacket();
+		Assert.assertTrue("Packet has incorrect type", packet instanceof ContentObject);
+		Assert.assertEquals(co, packet);
+		Assert.assertTrue(((ContentObject)packet).verify(pair.getPublic()));
+
+		// A packet cut short leaves the buffer alone for the stream decoder
+		for (int length = 1; length < contentBytes.length; length += 7) {
+			buffer.clear();
+			buffer.put(contentBytes, 0, length);
+			buffer.flip();
+			Assert.assertFalse(decoder.beginDecoding(buffer));
+			Assert.assertEquals(0, buffer.position());
+		}
+
+		// So does a bad one
+		buffer.clear();
+		buffer.put((byte)0x87);
+		buffer.flip();
+		try {
+			decoder.beginDecoding(buffer);
+			Assert.fail("Decoded an invalid type");
+		} catch (ContentDecodingException cde) {}
+		Assert.assertEquals(0, buffer.position());
+
+		Log.info(Log.FAC_TEST, "Completed testBufferDecoding");
+	}
+
 	@Test
 	public void testResync() throws Exception {
 		Log.info(Log.FAC_TEST, "Starting testResync");
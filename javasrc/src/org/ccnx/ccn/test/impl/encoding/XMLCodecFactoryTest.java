@@ -0,0 +1,107 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.test.impl.encoding;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.ccnx.ccn.impl.encoding.BinaryXMLCodec;
+import org.ccnx.ccn.impl.encoding.TextXMLCodec;
+import org.ccnx.ccn.impl.encoding.XMLCodecFactory;
+import org.ccnx.ccn.impl.encoding.XMLDecoder;
+import org.ccnx.ccn.impl.encoding.XMLEncoder;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.Interest;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test reuse of per-thread codecs and encoding to and decoding from ByteBuffers
+ */
+public class XMLCodecFactoryTest {
+
+	@Test
+	public void testAcquireRelease() {
+		Log.info(Log.FAC_TEST, "Starting testAcquireRelease");
+
+		XMLEncoder encoder = XMLCodecFactory.acquireEncoder(BinaryXMLCodec.CODEC_NAME);
+		// Acquiring again before release, as a nested encode would, gets another one
+		XMLEncoder nested = XMLCodecFactory.acquireEncoder(BinaryXMLCodec.CODEC_NAME);
+		Assert.assertNotSame(encoder, nested);
+		XMLCodecFactory.releaseEncoder(BinaryXMLCodec.CODEC_NAME, nested);
+		XMLCodecFactory.releaseEncoder(BinaryXMLCodec.CODEC_NAME, encoder);
+		Assert.assertSame(encoder, XMLCodecFactory.acquireEncoder(BinaryXMLCodec.CODEC_NAME));
+		XMLCodecFactory.releaseEncoder(BinaryXMLCodec.CODEC_NAME, encoder);
+
+		XMLDecoder decoder = XMLCodecFactory.acquireDecoder(TextXMLCodec.codecName());
+		XMLCodecFactory.releaseDecoder(TextXMLCodec.codecName(), decoder);
+		Assert.assertSame(decoder, XMLCodecFactory.acquireDecoder(TextXMLCodec.codecName()));
+		Assert.assertNotSame(decoder, XMLCodecFactory.acquireDecoder(BinaryXMLCodec.CODEC_NAME));
+
+		Log.info(Log.FAC_TEST, "Completed testAcquireRelease");
+	}
+
+	@Test
+	public void testByteBuffers() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testByteBuffers");
+
+		Interest interest = new Interest(new ContentName("test", "codec", "buffers"));
+		interest.maxSuffixComponents(3);
+		byte [] encoded = interest.encode(BinaryXMLCodec.CODEC_NAME);
+
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		buffer.put((byte)1);
+		interest.encode(buffer, BinaryXMLCodec.CODEC_NAME);
+		Assert.assertEquals(encoded.length + 1, buffer.position());
+		interest.encode(buffer, TextXMLCodec.codecName());
+		Assert.assertTrue(buffer.position() > encoded.length + 1);
+		byte [] copy = new byte[encoded.length];
+		buffer.flip();
+		buffer.get();
+		buffer.get(copy);
+		Assert.assertTrue(Arrays.equals(encoded, copy));
+
+		// Decode both back from the buffer
+		buffer.position(1);
+		Interest decoded = new Interest();
+		decoded.decode(buffer, BinaryXMLCodec.CODEC_NAME);
+		Assert.assertEquals(interest, decoded);
+		Assert.assertEquals(encoded.length + 1, buffer.position());
+		decoded = new Interest();
+		decoded.decode(buffer, TextXMLCodec.codecName());
+		Assert.assertEquals(interest, decoded);
+
+		// An encoding that doesn't fit leaves the buffer where it was
+		buffer = ByteBuffer.allocate(encoded.length - 1);
+		buffer.put((byte)1);
+		try {
+			interest.encode(buffer, BinaryXMLCodec.CODEC_NAME);
+			Assert.fail("Encoded past the end of the buffer");
+		} catch (BufferOverflowException boe) {}
+		Assert.assertEquals(1, buffer.position());
+		try {
+			interest.encode(buffer, TextXMLCodec.codecName());
+			Assert.fail("Encoded past the end of the buffer");
+		} catch (BufferOverflowException boe) {}
+		Assert.assertEquals(1, buffer.position());
+
+		Log.info(Log.FAC_TEST, "Completed testByteBuffers");
+	}
+}
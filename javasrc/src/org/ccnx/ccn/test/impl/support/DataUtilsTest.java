@@ -73,8 +73,43 @@ public class DataUtilsTest {
 	}
 	
 	
+	/**
+	 * The word at a time comparison must agree with comparing unsigned bytes one by one
+	 */
+	@Test
+	public void testCompareUnsigned() throws Exception {
+		for (int length = 0; length < 40; length++) {
+			for (int trial = 0; trial < 50; trial++) {
+				byte [] left = new byte[length];
+				_rnd.nextBytes(left);
+				byte [] right = left.clone();
+				if (length > 0) {
+					// Differ in one byte, often in the sign bit
+					int at = _rnd.nextInt(length);
+					right[at] = (byte)(_rnd.nextBoolean() ? right[at] ^ 0x80 : _rnd.nextInt());
+				}
+				int truth = Integer.signum(compareBytes(left, right));
+				Assert.assertEquals(truth, Integer.signum(DataUtils.compareUnsigned(left, right, length)));
+				Assert.assertEquals(truth, Integer.signum(DataUtils.compare(left, right)));
+				Assert.assertEquals(-truth, Integer.signum(DataUtils.compare(right, left)));
+			}
+		}
+		// Shortlex: a shorter array sorts first whatever its contents
+		Assert.assertEquals(-1, DataUtils.compare(new byte[]{(byte)0xff}, new byte[]{0, 0}));
+		Assert.assertEquals(0, DataUtils.compare(new byte[]{1, 2, 3}, new byte[]{1, 2, 3}));
+	}
+
 	// =========================
 	
+	private int compareBytes(byte [] left, byte [] right) {
+		for (int i = 0; i < left.length; i++) {
+			int diff = (left[i] & 0xff) - (right[i] & 0xff);
+			if (0 != diff)
+				return diff;
+		}
+		return 0;
+	}
+
 	private byte [] longToByteArray(long value) {
 		// We need to get this in a signum representation that's not 2's complement
 		byte [] b = BigInteger.valueOf(value).toByteArray();
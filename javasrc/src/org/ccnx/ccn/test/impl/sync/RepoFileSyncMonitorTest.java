@@ -0,0 +1,209 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.test.impl.sync;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Vector;
+
+import org.ccnx.ccn.CCNSyncHandler;
+import org.ccnx.ccn.impl.support.DataUtils;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.impl.sync.RepoFileSyncMonitor;
+import org.ccnx.ccn.io.content.ConfigSlice;
+import org.ccnx.ccn.io.content.ConfigSlice.Filter;
+import org.ccnx.ccn.profiles.SegmentationProfile;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test finding new names by following a repository file, without ccnr
+ */
+public class RepoFileSyncMonitorTest implements CCNSyncHandler {
+
+	static KeyPair pair;
+	static SignedInfo si;
+	static File directory;
+
+	ContentName topo = new ContentName("test", "topo");
+	Vector<ContentName> names = new Vector<ContentName>();
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(512);
+		pair = kpg.generateKeyPair();
+		si = new SignedInfo(new PublisherPublicKeyDigest(pair.getPublic()), new KeyLocator(ContentName.fromNative("/test/key")));
+		directory = File.createTempFile("RepoFileSyncMonitorTest", null);
+		directory.delete();
+		directory.mkdir();
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		DataUtils.deleteDirectory(directory);
+	}
+
+	public void handleContentName(ConfigSlice syncSlice, ContentName syncedContent) {
+		names.add(syncedContent);
+		synchronized (names) {
+			names.notifyAll();
+		}
+	}
+
+	byte [] encode(ContentName name) throws Exception {
+		return new ContentObject(name, si, "sync".getBytes(), pair.getPrivate()).encode();
+	}
+
+	void waitForNames(int count) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		synchronized (names) {
+			while (names.size() < count && System.currentTimeMillis() < end)
+				names.wait(100);
+		}
+	}
+
+	@Test
+	public void testSliceMatches() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSliceMatches");
+
+		ContentName prefix = ContentName.fromNative("/test/sync");
+		ConfigSlice all = new ConfigSlice(topo, prefix, null);
+		Assert.assertTrue(all.matches(prefix));
+		Assert.assertTrue(all.matches(new ContentName(prefix, "a", "b")));
+		Assert.assertFalse(all.matches(ContentName.fromNative("/test/other")));
+
+		ArrayList<Filter> filters = new ArrayList<Filter>();
+		filters.add(new Filter(ContentName.fromNative("/a")));
+		filters.add(new Filter(new ContentName(new byte[][] { { (byte)0xFF }, "c".getBytes() })));
+		filters.add(new Filter(new ContentName(new byte[][] { { (byte)0xFF, (byte)0xFF } })));
+		ConfigSlice filtered = new ConfigSlice(topo, prefix, filters);
+		Assert.assertFalse(filtered.matches(prefix));
+		Assert.assertTrue(filtered.matches(new ContentName(prefix, "a")));
+		Assert.assertTrue(filtered.matches(new ContentName(prefix, "a", "b")));
+		Assert.assertFalse(filtered.matches(new ContentName(prefix, "b")));
+		Assert.assertTrue(filtered.matches(new ContentName(prefix, "b", "c", "d")));
+		Assert.assertFalse(filtered.matches(new ContentName(prefix, "b", "d")));
+		// A leading 0xFF is dropped from a longer component before comparing
+		Assert.assertTrue(filtered.matches(new ContentName(prefix, new byte[] { (byte)0xFF })));
+
+		Log.info(Log.FAC_TEST, "Completed testSliceMatches");
+	}
+
+	@Test
+	public void testFollowRepoFile() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testFollowRepoFile");
+
+		ContentName prefix = ContentName.fromNative("/test/sync/follow");
+		File repoFile = new File(directory, RepoFileSyncMonitor.REPO_FILE);
+		FileOutputStream out = new FileOutputStream(repoFile, true);
+		// Content already there when the monitor starts isn't reported
+		out.write(encode(new ContentName(prefix, "before")));
+		out.flush();
+
+		RepoFileSyncMonitor monitor = new RepoFileSyncMonitor(directory.getPath(), 20);
+		ConfigSlice slice = new ConfigSlice(topo, prefix, null);
+		ConfigSlice other = new ConfigSlice(topo, ContentName.fromNative("/test/sync/other"), null);
+		monitor.registerCallback(this, slice);
+		monitor.registerCallback(this, other);
+
+		ArrayList<ContentName> expected = new ArrayList<ContentName>();
+		ContentName stream = new ContentName(prefix, "stream");
+		for (int i = 0; i < 20; i++) {
+			ContentName name = SegmentationProfile.segmentName(stream, i);
+			byte [] encoded = encode(name);
+			expected.add(name);
+			if (i == 10) {
+				// Half an object, as the monitor may see ccnr part way through writing one
+				out.write(encoded, 0, encoded.length / 2);
+				out.flush();
+				Thread.sleep(100);
+				out.write(encoded, encoded.length / 2, encoded.length - encoded.length / 2);
+			} else
+				out.write(encoded);
+			// Not in either slice
+			out.write(encode(new ContentName(ContentName.fromNative("/test/unsynced"), "n" + i)));
+		}
+		out.flush();
+		waitForNames(expected.size());
+		Assert.assertEquals(expected, new ArrayList<ContentName>(names));
+
+		// A removed slice no longer gets names, the others still do
+		monitor.removeCallback(this, slice);
+		names.clear();
+		out.write(encode(new ContentName(prefix, "removed")));
+		ContentName last = new ContentName(other.prefix, "last");
+		out.write(encode(last));
+		out.close();
+		waitForNames(1);
+		Thread.sleep(100);
+		Assert.assertEquals(Arrays.asList(last), new ArrayList<ContentName>(names));
+		monitor.removeCallback(this, other);
+
+		Log.info(Log.FAC_TEST, "Completed testFollowRepoFile");
+	}
+
+	@Test
+	public void testCorruptObject() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testCorruptObject");
+
+		File corruptDirectory = new File(directory, "corrupt");
+		corruptDirectory.mkdir();
+		ContentName prefix = ContentName.fromNative("/test/sync/corrupt");
+		RepoFileSyncMonitor monitor = new RepoFileSyncMonitor(corruptDirectory.getPath(), 20);
+		monitor.registerCallback(this, new ConfigSlice(topo, prefix, null));
+
+		ContentName first = new ContentName(prefix, "first");
+		ContentName second = new ContentName(prefix, "second");
+		ContentName third = new ContentName(prefix, "third");
+		// Well formed, but the Signature tag is wrong so it doesn't decode as a ContentObject
+		byte [] badTag = encode(new ContentName(prefix, "badtag"));
+		badTag[2]++;
+		// Not even well formed: 0x83 has an invalid type
+		byte [] garbage = new byte [] { (byte)0x83, 0x11, 0x22 };
+
+		// All in one write so the monitor sees them in one read
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		baos.write(encode(first));
+		baos.write(badTag);
+		baos.write(encode(second));
+		baos.write(garbage);
+		baos.write(encode(third));
+		FileOutputStream out = new FileOutputStream(new File(corruptDirectory, RepoFileSyncMonitor.REPO_FILE), true);
+		out.write(baos.toByteArray());
+		out.close();
+
+		waitForNames(3);
+		Assert.assertEquals(Arrays.asList(first, second, third), new ArrayList<ContentName>(names));
+		monitor.removeCallback(this, new ConfigSlice(topo, prefix, null));
+
+		Log.info(Log.FAC_TEST, "Completed testCorruptObject");
+	}
+}
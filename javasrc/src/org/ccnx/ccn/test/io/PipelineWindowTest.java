@@ -0,0 +1,116 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.test.io;
+
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.config.SystemConfiguration.PIPELINE_WINDOW_MODE;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.PipelineWindow;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test window growth, loss response and round trip estimation of PipelineWindow
+ */
+public class PipelineWindowTest {
+
+	@Test
+	public void testFixed() {
+		Log.info(Log.FAC_TEST, "Starting testFixed");
+
+		PipelineWindow window = new PipelineWindow(PIPELINE_WINDOW_MODE.FIXED);
+		for (int i = 0; i < 100; i++)
+			window.received(10);
+		window.lost();
+		Assert.assertEquals(SystemConfiguration.PIPELINE_SIZE, window.getWindow());
+		Assert.assertEquals(1, window.getLosses());
+
+		Log.info(Log.FAC_TEST, "Completed testFixed");
+	}
+
+	@Test
+	public void testAIMD() {
+		Log.info(Log.FAC_TEST, "Starting testAIMD");
+
+		PipelineWindow window = new PipelineWindow(PIPELINE_WINDOW_MODE.AIMD);
+		int start = window.getWindow();
+		Assert.assertEquals(SystemConfiguration.PIPELINE_SIZE, start);
+		Assert.assertEquals(-1, window.getRetransmitTimeout());
+
+		// slow start
+		for (int i = 0; i < 10; i++)
+			window.received(-1);
+		Assert.assertEquals(start + 10, window.getWindow());
+		Assert.assertEquals(0, window.getSamples());
+
+		window.lost();
+		int halved = (start + 10) / 2;
+		Assert.assertEquals(halved, window.getWindow());
+
+		// congestion avoidance: under one segment per window
+		for (int i = 0; i < 2 * halved; i++)
+			window.received(-1);
+		Assert.assertEquals(halved + 1, window.getWindow());
+
+		for (int i = 0; i < 10000; i++)
+			window.received(-1);
+		Assert.assertEquals(SystemConfiguration.PIPELINE_MAX_WINDOW, window.getWindow());
+
+		for (int i = 0; i < 20; i++) {
+			window.lost();
+			try {
+				Thread.sleep(1);	// no rtt sampled, so each loss cuts the window
+			} catch (InterruptedException e) {}
+		}
+		Assert.assertEquals(PipelineWindow.MIN_WINDOW, window.getWindow());
+		Assert.assertEquals(21, window.getLosses());
+
+		Log.info(Log.FAC_TEST, "Completed testAIMD");
+	}
+
+	@Test
+	public void testRetransmitTimeout() {
+		Log.info(Log.FAC_TEST, "Starting testRetransmitTimeout");
+
+		PipelineWindow window = new PipelineWindow(PIPELINE_WINDOW_MODE.AIMD);
+		window.received(100);
+		Assert.assertEquals(100, (long)window.getSmoothedRTT());
+		Assert.assertEquals(50, (long)window.getRTTVariation());
+		Assert.assertEquals(300, window.getRetransmitTimeout());
+
+		for (int i = 0; i < 100; i++)
+			window.received(100);
+		Assert.assertEquals(100, (long)window.getSmoothedRTT());
+		Assert.assertTrue(window.getRetransmitTimeout() < 110);
+
+		// losses back the timeout off, the next sample resets it
+		window.lost();
+		window.lost();
+		Assert.assertEquals(1, window.getDecreases());
+		Assert.assertTrue(window.getRetransmitTimeout() >= 400);
+		window.received(100);
+		Assert.assertTrue(window.getRetransmitTimeout() < 110);
+
+		// small round trips are bounded below
+		window = new PipelineWindow(PIPELINE_WINDOW_MODE.AIMD);
+		window.received(0);
+		Assert.assertEquals(PipelineWindow.MIN_RTO, window.getRetransmitTimeout());
+
+		Log.info(Log.FAC_TEST, "Completed testRetransmitTimeout");
+	}
+}
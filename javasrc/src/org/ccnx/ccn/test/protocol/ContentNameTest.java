@@ -30,11 +30,14 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.net.URISyntaxException;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 
 import org.ccnx.ccn.impl.support.DataUtils;
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.io.content.ContentDecodingException;
 import org.ccnx.ccn.io.content.ContentEncodingException;
+import org.ccnx.ccn.profiles.SegmentationProfile;
+import org.ccnx.ccn.profiles.VersioningProfile;
 import org.ccnx.ccn.profiles.versioning.VersionNumber;
 import org.ccnx.ccn.protocol.ContentName;
 import org.ccnx.ccn.protocol.MalformedContentNameStringException;
@@ -582,6 +585,80 @@ public class ContentNameTest {
 		Log.info(Log.FAC_TEST, "Completed testRelations");
 	}
 
+	/**
+	 * Test that cached hash codes don't outlive a decode, and the ordering of segment names
+	 * @throws Exception
+	 */
+	@Test
+	public void testHashAndOrder() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testHashAndOrder");
+
+		ContentName first = new ContentName(baseName, subName1);
+		ContentName second = new ContentName(baseName, subName2);
+		ContentName decoded = new ContentName();
+		decoded.decode(first.encode());
+		assertEquals(first.hashCode(), decoded.hashCode());
+		assertEquals(first, decoded);
+		decoded.decode(second.encode());
+		assertEquals(second.hashCode(), decoded.hashCode());
+		assertEquals(second, decoded);
+		assertFalse(first.equals(decoded));
+
+		// Segment numbers sort numerically whatever their high bits
+		ContentName version = new ContentName(baseName, document1);
+		ContentName previous = null;
+		for (long segment = 0; segment < 0x20000L; segment += 0x7f) {
+			ContentName name = SegmentationProfile.segmentName(version, segment);
+			if (null != previous) {
+				assertEquals(-1, previous.compareTo(name));
+				assertEquals(1, name.compareTo(previous));
+			}
+			assertEquals(0, name.compareTo(SegmentationProfile.segmentName(version, segment)));
+			previous = name;
+		}
+		assertEquals(-1, version.compareTo(previous));
+
+		Log.info(Log.FAC_TEST, "Completed testHashAndOrder");
+	}
+
+	/**
+	 * Test that names decoded one after another share their common prefix
+	 * @throws Exception
+	 */
+	@Test
+	public void testDecodeSharesPrefix() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testDecodeSharesPrefix");
+
+		ContentName version = VersioningProfile.addVersion(new ContentName(baseName, subName1, document1));
+		IdentityHashMap<byte [], byte []> arrays = new IdentityHashMap<byte [], byte []>();
+		ContentName previous = null;
+		for (long segment = 0; segment < 1000; segment++) {
+			ContentName name = SegmentationProfile.segmentName(version, segment);
+			ContentName decoded = new ContentName();
+			decoded.decode(name.encode());
+			assertEquals(name, decoded);
+			if (null != previous)
+				assertFalse(previous.equals(decoded));
+			for (byte [] component : decoded)
+				arrays.put(component, component);
+			previous = decoded;
+		}
+		// One copy of the prefix, and the segment numbers
+		assertEquals(version.count() + 1000, arrays.size());
+
+		// Sharing stops at the first component that differs
+		ContentName first = new ContentName(baseName, subName1, document1);
+		ContentName other = new ContentName();
+		other.decode(first.encode());
+		ContentName second = new ContentName();
+		second.decode(new ContentName(baseName, subName2, document1).encode());
+		assertTrue(other.component(0) == second.component(0));
+		assertFalse(other.component(2) == second.component(2));
+		assertTrue(Arrays.equals(other.component(2), second.component(2)));
+
+		Log.info(Log.FAC_TEST, "Completed testDecodeSharesPrefix");
+	}
+
 	@Test
 	public void testContentNameParsePerformance() {
 		Log.info(Log.FAC_TEST, "Starting testContentNameParsePerformance");
@@ -17,6 +17,7 @@
 
 package org.ccnx.ccn.test.protocol;
 
+import java.io.ByteArrayInputStream;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
@@ -26,6 +27,7 @@ import java.util.Arrays;
 import java.util.Date;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.ccnx.ccn.impl.encoding.BinaryXMLDecoder;
 import org.ccnx.ccn.impl.support.DataUtils;
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.protocol.CCNTime;
@@ -193,4 +195,40 @@ public class ContentObjectTest {
 		
 		Log.info(Log.FAC_TEST, "Completed testDigest");
 	}
+
+	@Test
+	public void testRetainedEncoding() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testRetainedEncoding");
+
+		ContentObject co = new ContentObject(name, auth, document3, pair.getPrivate());
+		byte [] encoded = co.encode();
+
+		BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+		decoder.setRetainEncoding(true);
+		decoder.beginDecoding(new ByteArrayInputStream(encoded));
+		ContentObject retained = new ContentObject();
+		retained.decode(decoder);
+		decoder.endDecoding();
+		Assert.assertTrue(retained.hasRetainedEncoding());
+		Assert.assertEquals(co, retained);
+		Assert.assertArrayEquals(encoded, retained.encode());
+		Assert.assertArrayEquals(co.digest(), retained.digest());
+		Assert.assertArrayEquals(co.prepareContent(), retained.prepareContent());
+		Assert.assertTrue(retained.verify(pair.getPublic()));
+
+		decoder.setRetainEncoding(false);
+		decoder.beginDecoding(new ByteArrayInputStream(encoded));
+		ContentObject notRetained = new ContentObject();
+		notRetained.decode(decoder);
+		decoder.endDecoding();
+		Assert.assertFalse(notRetained.hasRetainedEncoding());
+		Assert.assertArrayEquals(co.digest(), notRetained.digest());
+
+		// Changing the signature means the retained encoding is no longer valid
+		retained.setSignature(signature);
+		Assert.assertFalse(retained.hasRetainedEncoding());
+		Assert.assertFalse(Arrays.equals(co.digest(), retained.digest()));
+
+		Log.info(Log.FAC_TEST, "Completed testRetainedEncoding");
+	}
 }
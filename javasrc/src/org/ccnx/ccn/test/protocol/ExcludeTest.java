@@ -20,7 +20,12 @@ package org.ccnx.ccn.test.protocol;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
 
+import org.ccnx.ccn.impl.encoding.BinaryXMLCodec;
+import org.ccnx.ccn.impl.support.ByteArrayCompare;
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.io.content.ContentDecodingException;
 import org.ccnx.ccn.io.content.ContentEncodingException;
@@ -241,4 +246,73 @@ public class ExcludeTest {
 		
 		Log.info(Log.FAC_TEST, "Completed testEncodeDecode");
 	}
+
+	@Test
+	public void testAddMany() {
+		Log.info(Log.FAC_TEST, "Starting testAddMany");
+
+		// Build up a filter in batches, as a search for the latest version does, and check
+		// that it excludes exactly what was added
+		Random random = new Random(1);
+		TreeSet<byte []> added = new TreeSet<byte []>(new ByteArrayCompare());
+		ef = new Exclude();
+		for (int batch = 0; batch < 20; batch++) {
+			byte [][] omissions = new byte[random.nextInt(50) + 1][];
+			for (int i = 0; i < omissions.length; i++) {
+				omissions[i] = new byte[random.nextInt(3) + 1];
+				random.nextBytes(omissions[i]);
+				added.add(omissions[i]);
+			}
+			ef.add(omissions);
+			assertEquals(added.size(), ef.size());
+		}
+		// The components are in order with no duplicates, so this mustn't throw
+		ArrayList<Exclude.Element> elements = new ArrayList<Exclude.Element>();
+		for (int i = 0; i < ef.size(); i++)
+			elements.add(ef.value(i));
+		assertEquals(ef, new Exclude(elements));
+		for (int i = 0; i < 5000; i++) {
+			byte [] component = new byte[random.nextInt(3) + 1];
+			random.nextBytes(component);
+			assertEquals(added.contains(component), ef.match(component));
+		}
+		for (byte [] component : added)
+			assertTrue(ef.match(component));
+
+		ef = new Exclude(new byte [][] {b1});
+		ef.add(new byte [][] {b06});
+		ef.excludeUpto(b0);
+		assertEquals(4, ef.size());
+		assertTrue(ef.match(b0));
+		assertFalse(ef.match(b3));
+		// Components added after a trailing any are already excluded
+		al.add(c1);
+		al.add(any);
+		ef = new Exclude(al);
+		ef.add(new byte [][] {b3, b06});
+		assertEquals(2, ef.size());
+		assertTrue(ef.match(b06));
+		assertTrue(ef.match(b000));
+		assertFalse(ef.match(b0));
+
+		Log.info(Log.FAC_TEST, "Completed testAddMany");
+	}
+
+	@Test
+	public void testCachedEncoding() throws ContentEncodingException, ContentDecodingException {
+		Log.info(Log.FAC_TEST, "Starting testCachedEncoding");
+
+		ef = Exclude.uptoFactory(b1);
+		byte [] first = ef.encode(BinaryXMLCodec.CODEC_NAME);
+		assertTrue(Arrays.equals(first, ef.encode(BinaryXMLCodec.CODEC_NAME)));
+		// A change must be seen in the next encoding
+		ef.add(new byte [][] {b06});
+		Exclude ef2 = new Exclude();
+		ef2.decode(ef.encode(BinaryXMLCodec.CODEC_NAME), BinaryXMLCodec.CODEC_NAME);
+		assertEquals(ef, ef2);
+		assertEquals(3, ef2.size());
+		assertTrue(ef2.match(b06));
+
+		Log.info(Log.FAC_TEST, "Completed testCachedEncoding");
+	}
 }
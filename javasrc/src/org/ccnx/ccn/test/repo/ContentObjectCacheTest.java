@@ -0,0 +1,93 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.test.repo;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.impl.repo.ContentObjectCache;
+import org.ccnx.ccn.impl.repo.RepositoryServer;
+import org.ccnx.ccn.impl.repo.RepositoryServer.StatsEnum;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.protocol.CCNTime;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test eviction and statistics of the repository's content cache
+ */
+public class ContentObjectCacheTest {
+
+	static final int CONTENT_SIZE = 1000;
+	static final int OBJECT_SIZE = CONTENT_SIZE + ContentObjectCache.OBJECT_OVERHEAD;
+
+	@Test
+	public void testEviction() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testEviction");
+
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(512);
+		KeyPair pair = kpg.generateKeyPair();
+		SignedInfo si = new SignedInfo(new PublisherPublicKeyDigest(pair.getPublic()), CCNTime.now(),
+				SignedInfo.ContentType.DATA, new KeyLocator(new ContentName("key")));
+
+		CCNEnumStats<StatsEnum> stats = new CCNEnumStats<StatsEnum>(StatsEnum.HandleInterest);
+		ContentObjectCache cache = new ContentObjectCache(10 * OBJECT_SIZE);
+		cache.setStats(stats);
+
+		ContentObject [] objects = new ContentObject[12];
+		for (int i = 0; i < objects.length; i++)
+			objects[i] = new ContentObject(new ContentName("test", "cache", "o" + i), si, new byte[CONTENT_SIZE], pair.getPrivate());
+
+		for (int i = 0; i < 10; i++)
+			cache.put(objects[i].fullName(), objects[i]);
+		Assert.assertEquals(10, cache.count());
+		Assert.assertEquals(10 * OBJECT_SIZE, cache.size());
+
+		// Use the first object so the second is now the least recently used
+		Assert.assertSame(objects[0], cache.get(objects[0].fullName()));
+		cache.put(objects[10].fullName(), objects[10]);
+		cache.put(objects[11].fullName(), objects[11]);
+		Assert.assertEquals(10, cache.count());
+		Assert.assertNotNull(cache.get(objects[0].fullName()));
+		Assert.assertNull(cache.get(objects[1].fullName()));
+		Assert.assertNull(cache.get(objects[2].fullName()));
+		Assert.assertNotNull(cache.get(objects[11].fullName()));
+
+		Assert.assertEquals(3, stats.getCounter(RepositoryServer.StatsEnum.CacheHits.toString()));
+		Assert.assertEquals(2, stats.getCounter(RepositoryServer.StatsEnum.CacheMisses.toString()));
+		Assert.assertEquals(2, stats.getCounter(RepositoryServer.StatsEnum.CacheEvictions.toString()));
+
+		// Too big to be worth caching
+		ContentObject big = new ContentObject(new ContentName("test", "cache", "big"), si, new byte[2 * OBJECT_SIZE], pair.getPrivate());
+		cache.put(big.fullName(), big);
+		Assert.assertNull(cache.get(big.fullName()));
+
+		cache.remove(objects[0].fullName());
+		Assert.assertEquals(9, cache.count());
+		Assert.assertEquals(9 * OBJECT_SIZE, cache.size());
+
+		Log.info(Log.FAC_TEST, "Completed testEviction");
+	}
+}
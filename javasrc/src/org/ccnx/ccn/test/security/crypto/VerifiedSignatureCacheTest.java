@@ -0,0 +1,109 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2012 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.test.security.crypto;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+
+import org.ccnx.ccn.impl.security.crypto.CCNDigestHelper;
+import org.ccnx.ccn.impl.security.crypto.VerifiedSignatureCache;
+import org.ccnx.ccn.impl.support.Log;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test lookup, keying and eviction of VerifiedSignatureCache
+ */
+public class VerifiedSignatureCacheTest {
+
+	static PublicKey key1;
+	static PublicKey key2;
+	static final String alg = CCNDigestHelper.DEFAULT_DIGEST_ALGORITHM;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(512);
+		KeyPair pair = kpg.generateKeyPair();
+		key1 = pair.getPublic();
+		pair = kpg.generateKeyPair();
+		key2 = pair.getPublic();
+	}
+
+	static byte [] bytes(int seed) {
+		byte [] b = new byte[32];
+		for (int i = 0; i < b.length; i++)
+			b[i] = (byte)(seed + i);
+		return b;
+	}
+
+	@Test
+	public void testLookup() {
+		Log.info(Log.FAC_TEST, "Starting testLookup");
+
+		VerifiedSignatureCache cache = new VerifiedSignatureCache(10);
+		byte [] root = bytes(1);
+		byte [] signature = bytes(2);
+		Assert.assertFalse(cache.isVerified(root, signature, alg, key1));
+		cache.addVerified(root, signature, alg, key1);
+
+		// equal contents, different arrays
+		Assert.assertTrue(cache.isVerified(bytes(1), bytes(2), alg, key1));
+		// anything different is a miss
+		Assert.assertFalse(cache.isVerified(bytes(3), signature, alg, key1));
+		Assert.assertFalse(cache.isVerified(root, bytes(3), alg, key1));
+		Assert.assertFalse(cache.isVerified(root, signature, "SHA-1", key1));
+		Assert.assertFalse(cache.isVerified(root, signature, alg, key2));
+
+		// the caller changing its arrays doesn't change what was verified
+		root[0]++;
+		Assert.assertFalse(cache.isVerified(root, signature, alg, key1));
+		Assert.assertTrue(cache.isVerified(bytes(1), signature, alg, key1));
+
+		Assert.assertEquals(2, cache.getStats().getCounter("Hits"));
+		Assert.assertEquals(6, cache.getStats().getCounter("Misses"));
+
+		Log.info(Log.FAC_TEST, "Completed testLookup");
+	}
+
+	@Test
+	public void testEviction() {
+		Log.info(Log.FAC_TEST, "Starting testEviction");
+
+		VerifiedSignatureCache cache = new VerifiedSignatureCache(3);
+		for (int i = 0; i < 3; i++)
+			cache.addVerified(bytes(i), bytes(100), alg, key1);
+		// use the first so the second is the least recently used
+		Assert.assertTrue(cache.isVerified(bytes(0), bytes(100), alg, key1));
+		cache.addVerified(bytes(3), bytes(100), alg, key1);
+		Assert.assertEquals(3, cache.size());
+		Assert.assertEquals(1, cache.getStats().getCounter("Evictions"));
+		Assert.assertTrue(cache.isVerified(bytes(0), bytes(100), alg, key1));
+		Assert.assertFalse(cache.isVerified(bytes(1), bytes(100), alg, key1));
+		Assert.assertTrue(cache.isVerified(bytes(3), bytes(100), alg, key1));
+
+		VerifiedSignatureCache off = new VerifiedSignatureCache(0);
+		off.addVerified(bytes(0), bytes(100), alg, key1);
+		Assert.assertFalse(off.isVerified(bytes(0), bytes(100), alg, key1));
+		Assert.assertEquals(0, off.size());
+
+		Log.info(Log.FAC_TEST, "Completed testEviction");
+	}
+}
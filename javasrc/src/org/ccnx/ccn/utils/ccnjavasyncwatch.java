@@ -61,9 +61,6 @@ public class ccnjavasyncwatch implements Usage, CCNSyncHandler{
 				System.exit(1);
 			}
 			
-			if (filters != null)
-				Log.warning("Filters are not fully supported, sync will operate properly with the filters, but the java library sync api will not apply the filters");
-
 			if (hash != null)
 				Log.warning("The java library does not currently support a starting root hash for watching sync traffic.  This functionality will be part of a future release");
 			